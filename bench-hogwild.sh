@@ -0,0 +1,21 @@
+#!/bin/bash
+# compare serial stochastic backpropagation with asynchronous (hogwild)
+# training of the same network: epochs/s and final training/testing rmse.
+# usage: ./bench-hogwild.sh [threads] [dataset.csv] [output_nodes] [hidden]
+# (set EPOCHS to change the number of training epochs, default 2000.)
+threads=${1:-$(nproc)}
+file=${2:-test-data/iris.csv}
+outputs=${3:-3}
+hidden=${4:-64}
+
+run() {
+  ./train.sh --file=$file --output_nodes=$outputs --holdback=0.2 --k=0 \
+             --min_weight=-0.5 --max_weight=0.5 --learning_rate=0.05 \
+             --momentum=0.25 --epochs=${EPOCHS:-2000} --model_output=/tmp \
+             --hidden_nodes=$hidden "$@" \
+  |grep "training complete" \
+  |sed 's/.*training mse = \([^ ]*\) testing mse = \([^ ]*\).*epochs\/s = \(.*\)/epochs\/s = \3 final training rmse = \1 best testing rmse = \2/'
+}
+
+echo "serial:            $(run)"
+echo "hogwild ($threads threads): $(run --threads=$threads --hogwild=true)"
@@ -0,0 +1,17 @@
+#!/bin/bash
+# jmh benchmarks of the hot paths: transfer functions and square roots,
+# forward/backward passes by network structure, full epochs, k-fold
+# scheduling and csv loading. results are written as json (one record per
+# benchmark and parameter combination) for tracking across releases.
+#
+# any jmh options are passed through. for example:
+#   ./bench-jmh.sh NetworkBenchmark -p structure=4:10:3
+#   ./bench-jmh.sh -l   (list benchmarks)
+#   ./bench-jmh.sh -h   (jmh options)
+out=${JMH_RESULTS:-bench-results.json}
+
+if [[ ! -f bench/target/benchmarks.jar ]]; then
+  (cd bench && mvn -B -q package) || exit 1
+fi
+
+java -jar bench/target/benchmarks.jar -rf json -rff "$out" "$@"
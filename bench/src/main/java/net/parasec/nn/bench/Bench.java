@@ -0,0 +1,48 @@
+package net.parasec.nn.bench;
+
+import net.parasec.nn.logging.Level;
+import net.parasec.nn.logging.Logger;
+import net.parasec.nn.training.ArrayDataset;
+
+import java.util.Random;
+
+/**
+ * shared benchmark set-up.
+ */
+final class Bench {
+
+  private Bench() {
+  }
+
+  /**
+   * only warnings and errors: progress lines would be measured too.
+   */
+  static void quiet() {
+    Logger.setLevel(Level.WARN);
+  }
+
+  /**
+   * network structure from "in:hidden..:out".
+   */
+  static int[] structure(final String s) {
+    final String[] nodes = s.split(":");
+    final int[] structure = new int[nodes.length];
+    for(int i = nodes.length; --i >= 0; )
+      structure[i] = Integer.parseInt(nodes[i]);
+    return structure;
+  }
+
+  /**
+   * rows of uniform random inputs in [-1, 1] and 0/1 targets.
+   */
+  static ArrayDataset dataset(final int rows, final int inputs, 
+      final int outputs, final Random prng) {
+    final double[] in = new double[rows*inputs];
+    final double[] out = new double[rows*outputs];
+    for(int i = in.length; --i >= 0; )
+      in[i] = 2*prng.nextDouble()-1;
+    for(int i = out.length; --i >= 0; )
+      out[i] = prng.nextBoolean() ? 1 : 0;
+    return new ArrayDataset(in, out, inputs, outputs);
+  }
+}
@@ -0,0 +1,87 @@
+package net.parasec.nn.bench;
+
+import net.parasec.nn.training.DataLoader;
+import net.parasec.nn.training.Dataset;
+import net.parasec.nn.training.TrainingInstance;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * parsing a csv of rows rows of 16 inputs and 3 outputs, into a columnar
+ * dataset and into a list of training instances (loadCsv). the file is
+ * written once per trial, so it is most likely in the page cache: this
+ * measures parsing, not the disk.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"--add-modules", "jdk.incubator.vector"})
+public class DataLoaderBenchmark {
+  private static final int INPUTS = 16, OUTPUTS = 3;
+
+  @Param({"1000", "100000"})
+  public int rows;
+
+  @Param({"1", "4"})
+  public int threads;
+
+  private File file;
+  private DataLoader loader;
+
+
+  @Setup
+  public void setUp() throws IOException {
+    Bench.quiet();
+    final Random prng = new Random(1);
+    file = File.createTempFile("bench", ".csv");
+    final BufferedWriter out = new BufferedWriter(new FileWriter(file));
+    try {
+      for(int i = 0; i < rows; i++) {
+        for(int j = 0; j < INPUTS; j++)
+          out.write((2*prng.nextDouble()-1) + ",");
+        for(int j = 0; j < OUTPUTS; j++)
+          out.write((prng.nextBoolean() ? "1" : "0") + 
+              (j < OUTPUTS-1 ? "," : "\n"));
+      }
+    } finally {
+      out.close();
+    }
+    loader = new DataLoader(threads);
+  }
+
+  @TearDown
+  public void tearDown() {
+    file.delete();
+  }
+
+  @Benchmark
+  public Dataset loadDataset() {
+    return loader.loadDataset(file.getPath(), OUTPUTS);
+  }
+
+  @Benchmark
+  public List<TrainingInstance> loadCsv() {
+    return loader.loadCsv(file.getPath(), OUTPUTS);
+  }
+}
@@ -0,0 +1,66 @@
+package net.parasec.nn.bench;
+
+import net.parasec.nn.network.ANN;
+import net.parasec.nn.training.ArrayDataset;
+import net.parasec.nn.training.Trainer;
+import net.parasec.nn.training.TrainingParameters;
+import net.parasec.nn.training.TrainingReport;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * one full training epoch (Trainer.train with 1 epoch), over a training
+ * set of rows instances plus a test set of a quarter as many, with
+ * stochastic (batch = 1) and mini-batch backpropagation.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"--add-modules", "jdk.incubator.vector"})
+public class EpochBenchmark {
+
+  @Param({"4:10:3", "16:100:10", "64:1000:10"})
+  public String structure;
+
+  @Param({"150", "5000"})
+  public int rows;
+
+  @Param({"1", "32"})
+  public int batch;
+
+  private ANN ann;
+  private ArrayDataset training, testing;
+  private TrainingParameters params;
+
+
+  @Setup
+  public void setUp() {
+    Bench.quiet();
+    final Random prng = new Random(1);
+    final int[] s = Bench.structure(structure);
+    ann = new ANN(-0.5, 0.5, s, prng);
+    training = Bench.dataset(rows, s[0], s[s.length-1], prng);
+    testing = Bench.dataset(rows/4, s[0], s[s.length-1], prng);
+    params = new TrainingParameters(1, 0.01, 0.25).setBatchSize(batch);
+  }
+
+  @Benchmark
+  public TrainingReport epoch() {
+    return Trainer.train(ann, training, testing, params);
+  }
+}
@@ -0,0 +1,69 @@
+package net.parasec.nn.bench;
+
+import net.parasec.nn.training.ArrayDataset;
+import net.parasec.nn.training.Data;
+import net.parasec.nn.training.KFoldResults;
+import net.parasec.nn.training.KFoldTrainer;
+import net.parasec.nn.training.TrainingParameters;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * a k-fold run of EPOCHS epochs per fold: partitioning, scheduling the
+ * folds on the worker pool and training them. with more threads than
+ * folds, the spare threads go to data-parallel training within each fold.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"--add-modules", "jdk.incubator.vector"})
+public class KFoldBenchmark {
+  private static final int EPOCHS = 10;
+
+  @Param({"4:10:3", "16:100:10"})
+  public String structure;
+
+  @Param({"1000"})
+  public int rows;
+
+  @Param({"5"})
+  public int k;
+
+  @Param({"1", "4"})
+  public int threads;
+
+  private int[] s;
+  private ArrayDataset dataset;
+  private TrainingParameters params;
+
+
+  @Setup
+  public void setUp() {
+    Bench.quiet();
+    s = Bench.structure(structure);
+    dataset = Bench.dataset(rows, s[0], s[s.length-1], new Random(1));
+    params = new TrainingParameters(EPOCHS, 0.01, 0.25);
+  }
+
+  @Benchmark
+  public KFoldResults[] kfold() {
+    final Random prng = new Random(1);
+    return new KFoldTrainer(prng, -0.5, 0.5, s, EPOCHS, k)
+        .setThreads(threads).train(new Data(prng, dataset), params);
+  }
+}
@@ -0,0 +1,100 @@
+package net.parasec.nn.bench;
+
+import net.parasec.nn.util.MathUtil;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * transfer function and square root approximations against the exact
+ * versions. each invocation evaluates N arguments: scores are per call.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"--add-modules", "jdk.incubator.vector"})
+public class MathBenchmark {
+  private static final int N = 1024;
+
+  // sigmoid arguments in [-8, 8], square root arguments in (0, 100].
+  private final double[] x = new double[N];
+  private final double[] positive = new double[N];
+
+
+  @Setup
+  public void setUp() {
+    final Random prng = new Random(1);
+    for(int i = N; --i >= 0; ) {
+      x[i] = 16*prng.nextDouble()-8;
+      positive[i] = 100*(1-prng.nextDouble());
+    }
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(N)
+  public double sigmoid() {
+    double sum = 0;
+    for(int i = 0; i < N; i++)
+      sum += MathUtil.sigmoid(x[i]);
+    return sum;
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(N)
+  public double fastSigmoid() {
+    double sum = 0;
+    for(int i = 0; i < N; i++)
+      sum += MathUtil.fastSigmoid(x[i]);
+    return sum;
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(N)
+  public double invSqrt() {
+    double sum = 0;
+    for(int i = 0; i < N; i++)
+      sum += MathUtil.invSqrt(positive[i]);
+    return sum;
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(N)
+  public double inverseMathSqrt() {
+    double sum = 0;
+    for(int i = 0; i < N; i++)
+      sum += 1/Math.sqrt(positive[i]);
+    return sum;
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(N)
+  public double fastSqrt() {
+    double sum = 0;
+    for(int i = 0; i < N; i++)
+      sum += MathUtil.fastSqrt(positive[i]);
+    return sum;
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(N)
+  public double mathSqrt() {
+    double sum = 0;
+    for(int i = 0; i < N; i++)
+      sum += Math.sqrt(positive[i]);
+    return sum;
+  }
+}
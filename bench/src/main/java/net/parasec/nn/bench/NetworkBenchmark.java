@@ -0,0 +1,66 @@
+package net.parasec.nn.bench;
+
+import net.parasec.nn.network.ANN;
+import net.parasec.nn.training.ArrayDataset;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * a single instance through the network: the forward pass, and a forward
+ * plus backward pass (stochastic backpropagation needs the outputs of the
+ * forward pass). structures range from iris-sized to 2 hidden layers of
+ * 1000, so a regression can be tied to a layer width.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"--add-modules", "jdk.incubator.vector"})
+public class NetworkBenchmark {
+
+  @Param({"4:10:3", "16:100:10", "64:1000:10", "64:1000:1000:10"})
+  public String structure;
+
+  private ANN ann;
+  private double[] input, target;
+
+
+  @Setup
+  public void setUp() {
+    Bench.quiet();
+    final Random prng = new Random(1);
+    final int[] s = Bench.structure(structure);
+    ann = new ANN(-0.5, 0.5, s, prng);
+    final ArrayDataset row = Bench.dataset(1, s[0], s[s.length-1], prng);
+    input = new double[row.inputs()];
+    target = new double[row.outputs()];
+    row.copyInput(0, input, 0);
+    row.copyOutput(0, target, 0);
+  }
+
+  @Benchmark
+  public double[] forward() {
+    return ann.feedForward(input);
+  }
+
+  @Benchmark
+  public double[] forwardBackward() {
+    final double[] output = ann.feedForward(input);
+    ann.backPropagateError(target, 0.01, 0.25);
+    return output;
+  }
+}
@@ -0,0 +1,14 @@
+#!/bin/bash
+# convert a csv dataset into the binary (memory-mapped) dataset format.
+# e.g.,
+# ./convert.sh --file=test-data/iris.csv --output_nodes=3 --output=/tmp/iris.nnds
+#
+# the binary dataset can then be given to train.sh and run.sh in place of the
+# csv: it is mapped into memory instead of parsed, so startup takes
+# milliseconds regardless of its size.
+#
+#   --file=<dataset.csv>        csv to convert
+#   --output_nodes=<#>          number of output columns (end of each row)
+#   --output=<file>             binary dataset to write
+
+java -cp target/nn-light.jar net.parasec.nn.training.DatasetConverter "$@"
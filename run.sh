@@ -3,6 +3,17 @@
 # create a neural network with supplied weights and feed-forward some data.
 # e.g.,
 # ./run.sh /tmp/weights.bin test-data/iris.csv 
+#
+# batch scoring: stream the data through the network in blocks on all cores
+# and write the network outputs to a file:
+# ./run.sh /tmp/weights.bin test-data/iris.csv --output=/tmp/scores.csv
+#
+#   --output=<file>             write network outputs to file
+#   --format=<csv|binary>       csv, or raw little-endian doubles (default csv)
+#   --threads=<n>               loading and scoring threads (default #cores)
+#   --block=<n>                 rows scored together (default 256)
+#   --decimals=<n>              csv decimal places, 0-15 (default 6)
+#   --precision=<double|float>  float: single precision network, binary
+#                               output as little-endian floats
 
-java -cp target/nn-light.jar net.parasec.nn.network.Runner $@ 
-
+java --add-modules jdk.incubator.vector -cp target/nn-light.jar net.parasec.nn.network.Runner "$@"
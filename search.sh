@@ -0,0 +1,60 @@
+#!/bin/bash
+#
+# Hyperparameter search.
+# Example:
+# ./search.sh --file=test-data/iris.csv --output_nodes=3 --holdback=0.2 \
+#             --hidden_nodes=1..10 --learning_rate=0.01:0.5 \
+#             --momentum=0:0.5 --weight_range=0.1:1 --trials=27 \
+#             --epochs=270 --seed=1 --output=/tmp/search.csv
+#
+# Will load the iris data once, hold back 20% of it and train 27 random
+# configurations (1 to 10 hidden nodes, learning rate, momentum and initial
+# weight range) for 10 epochs, then the best 9 for 30 epochs, the best 3 for
+# 90 and the best for 270 (successive halving), printing the trials ranked
+# by their lowest testing rmse.
+
+usage() {
+  echo $0
+  cat << EOF2
+    --file=<dataset.csv|dir>    location of dataset (see train.sh)
+    --output_nodes=<#>          number of network output nodes
+    --holdback=<0:1>            ratio of data to holdback for the test set
+                                the trials are ranked on (default 0.2)
+    --hidden_nodes=<s1/s2..>    candidate hidden layers, separated by '/'.
+                                each is n1,n2..,N (as train.sh) where a layer
+                                may be a range a..b. e.g. 2..4,2/8
+                                (default: no hidden layers)
+    --learning_rate=<lo:hi>     learning rate range (log-uniform)
+    --momentum=<lo:hi>          momentum range
+    --optimizer=<o>             momentum (default), nesterov, rmsprop or adam
+    --lr_schedule=<s>           learning rate schedule over --epochs (as
+                                train.sh, default constant)
+    --weight_range=<lo:hi>      initial weights in [-r, r], r in range
+    --activation=<f>            hidden layer activation (default sigmoid)
+    --output_activation=<f>     output layer activation (default sigmoid)
+    --batch_size=<n>            instances per weight update (default 1 = sgd)
+    --reshuffle=<true|false>    reshuffle the training rows every epoch
+    --patience=<n>              stop a trial when its testing rmse has not
+                                improved for n epochs (default 0 = never)
+    --min_delta=<r>             smallest improvement counted (default 0)
+    --plateau=<r>               stop a trial when its training rmse falls by
+                                less than r over patience epochs (default 0)
+    --trials=<n>                configurations to try (default 27)
+    --min_epochs=<n>            epochs of the first round (default 10)
+    --epochs=<n>                max epochs of any trial (default 270)
+    --eta=<n>                   1/eta trials survive each round (default 3)
+    --threads=<n>               trials trained at once (default #cores)
+    --load_threads=<n>          threads parsing the dataset (default #cores)
+    --seed=<n>                  seed the prng (reproducible search)
+    --log_level=<l>             debug (every epoch), info, warn, error or off
+                                (default info)
+    --output=<file.csv>         save the ranked trials to file
+EOF2
+}
+
+if [[ $# -lt 2 ]]; then
+  usage
+  exit 0
+fi
+
+java --add-modules jdk.incubator.vector -cp target/nn-light.jar net.parasec.nn.training.Search "$@"
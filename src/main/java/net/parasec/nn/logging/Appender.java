@@ -0,0 +1,18 @@
+package net.parasec.nn.logging;
+
+/**
+ * destination of log events. an event is claimed, filled in by the logging
+ * thread and then published.
+ */
+abstract class Appender {
+
+  /**
+   * an event for the calling thread to fill in.
+   */
+  abstract Event claim();
+
+  /**
+   * write (or queue for writing) a claimed event.
+   */
+  abstract void publish(Event event);
+}
@@ -0,0 +1,125 @@
+package net.parasec.nn.logging;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * writes events to stdout (stderr for warnings and errors) on a background
+ * thread, so logging threads never wait on the console or its lock.
+ *
+ * events live in a preallocated ring buffer. a logging thread claims the
+ * next sequence number with a single atomic increment, fills in that slot
+ * and publishes it by setting the slot's sequence. the writer consumes
+ * slots in sequence order. if the ring is full, logging threads wait for the
+ * writer (events are never dropped).
+ */
+final class AsyncAppender extends Appender implements Runnable {
+
+  // how long the writer sleeps when there is nothing to write (it is woken
+  // as soon as an event is published) and how long a logging thread waits
+  // for a free slot.
+  private static final long IDLE = TimeUnit.MILLISECONDS.toNanos(10);
+  private static final long FULL = TimeUnit.MICROSECONDS.toNanos(50);
+
+  private final Event[] ring;
+  private final int mask;
+
+  // next sequence to claim and next sequence to write.
+  private final AtomicLong claimed = new AtomicLong();
+  private volatile long consumed = 0;
+
+  private volatile boolean sleeping = false;
+  private volatile boolean closed = false;
+
+  private final Writer out 
+      = new BufferedWriter(new OutputStreamWriter(System.out), 1 << 16);
+  private final Writer err = new OutputStreamWriter(System.err);
+  private final char[] buf = new char[1 << 10];
+  private final Thread writer;
+
+
+  /**
+   * a ring of (at least) capacity events, rounded up to a power of 2.
+   */
+  AsyncAppender(final int capacity) {
+    final int size = Integer.highestOneBit(Math.max(capacity, 2)-1) << 1;
+    ring = new Event[size];
+    for(int i = size; --i >= 0; )
+      ring[i] = new Event();
+    mask = size-1;
+    writer = new Thread(this, "log-writer");
+    writer.setDaemon(true);
+    writer.start();
+  }
+
+  Event claim() {
+    final long sequence = claimed.getAndIncrement();
+    // wait for the writer to free the slot.
+    while(sequence-consumed >= ring.length) {
+      wake();
+      LockSupport.parkNanos(this, FULL);
+    }
+    final Event event = ring[(int) sequence & mask];
+    event.claimed = sequence;
+    return event;
+  }
+
+  void publish(final Event event) {
+    event.sequence = event.claimed;
+    wake();
+  }
+
+  private void wake() {
+    if(sleeping)
+      LockSupport.unpark(writer);
+  }
+
+  /**
+   * write the events published so far and stop the writer.
+   */
+  void close() {
+    closed = true;
+    LockSupport.unpark(writer);
+    try {
+      writer.join(TimeUnit.SECONDS.toMillis(5));
+    } catch(final InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  public void run() {
+    try {
+      long next = 0;
+      for(;;) {
+        final Event event = ring[(int) next & mask];
+        if(event.sequence != next) {
+          if(closed && claimed.get() == next)
+            break;
+          // nothing to write: flush and sleep until an event is published.
+          out.flush();
+          sleeping = true;
+          if(event.sequence != next && !closed)
+            LockSupport.parkNanos(this, IDLE);
+          sleeping = false;
+          continue;
+        }
+        if(event.level.compareTo(Level.WARN) >= 0) {
+          out.flush();
+          event.write(err, buf);
+          err.flush();
+        } else {
+          event.write(out, buf);
+        }
+        consumed = ++next;
+      }
+      out.flush();
+    } catch(final IOException e) {
+      // the console has gone.
+    }
+  }
+}
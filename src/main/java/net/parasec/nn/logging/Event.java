@@ -0,0 +1,66 @@
+package net.parasec.nn.logging;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Formatter;
+
+/**
+ * a reusable log line: the header, message and error message are written
+ * straight into its buffer (formatted messages by its own Formatter) rather
+ * than concatenated into intermediate strings.
+ */
+final class Event {
+
+  // sequence number claimed by the logging thread, and the sequence number
+  // once the event has been filled in (see AsyncAppender).
+  long claimed = -1;
+  volatile long sequence = -1;
+
+  Level level;
+  final StringBuilder line = new StringBuilder(256);
+  private final Formatter formatter = new Formatter(line);
+
+
+  /**
+   * start a new line: [time logger thread]
+   */
+  Event start(final Level level, final String logger) {
+    this.level = level;
+    line.setLength(0);
+    line.append('[').append(System.currentTimeMillis()).append(' ')
+        .append(logger).append(' ').append(Thread.currentThread().getName())
+        .append("] ");
+    return this;
+  }
+
+  Event append(final Object o) {
+    line.append(o);
+    return this;
+  }
+
+  /**
+   * append a printf style message (see java.util.Formatter).
+   */
+  Event format(final String format, final Object... args) {
+    formatter.format(format, args);
+    return this;
+  }
+
+  Event end(final Throwable t) {
+    if(t != null)
+      line.append(' ').append(t.getMessage());
+    line.append('\n');
+    return this;
+  }
+
+  /**
+   * write the line via a char buffer.
+   */
+  void write(final Writer out, final char[] buf) throws IOException {
+    for(int i = 0, len = line.length(); i < len; i += buf.length) {
+      final int n = Math.min(buf.length, len-i);
+      line.getChars(i, i+n, buf, 0);
+      out.write(buf, 0, n);
+    }
+  }
+}
@@ -0,0 +1,15 @@
+package net.parasec.nn.logging;
+
+/**
+ * logging levels, least to most severe. OFF disables logging.
+ */
+public enum Level {
+  DEBUG, INFO, WARN, ERROR, OFF;
+
+  /**
+   * level by (case insensitive) name.
+   */
+  public static Level parse(final String name) {
+    return valueOf(name.trim().toUpperCase());
+  }
+}
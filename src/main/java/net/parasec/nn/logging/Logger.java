@@ -2,9 +2,43 @@ package net.parasec.nn.logging;
 
 /**
  * basic logging.
+ *
+ * lines below the level (-Dnn.log.level=debug|info|warn|error|off, default
+ * info, or setLevel) are discarded before any work is done. messages at or
+ * above the level are written to stdout (warnings and errors to stderr) by
+ * a background thread through a ring buffer (see AsyncAppender), unless
+ * -Dnn.log.async=false, in which case they are written on the logging
+ * thread. -Dnn.log.buffer sets the ring buffer size (default 1024 lines).
+ *
+ * the format methods take a printf style message which is only formatted if
+ * the level is enabled. hot loops should also guard calls with isEnabled,
+ * so that the arguments are not boxed either.
  */
 public final class Logger {
 
+  private static volatile Level level 
+      = Level.parse(System.getProperty("nn.log.level", "info"));
+
+  private static volatile Appender appender;
+
+  static {
+    if(Boolean.parseBoolean(System.getProperty("nn.log.async", "true"))) {
+      final AsyncAppender async 
+          = new AsyncAppender(Integer.getInteger("nn.log.buffer", 1024));
+      appender = async;
+      // write whatever is queued at exit, and anything logged afterwards
+      // (by other shutdown hooks) directly.
+      Runtime.getRuntime().addShutdownHook(new Thread("log-flush") {
+        public void run() {
+          appender = new SyncAppender();
+          async.close();
+        }
+      });
+    } else {
+      appender = new SyncAppender();
+    }
+  }
+
   private final String className;
 
 
@@ -12,18 +46,93 @@ public final class Logger {
     className = c.getSimpleName();
   }
 
-  public void info(final Object o) {
-    System.out.println("[" +System.currentTimeMillis() + " " + className + " "
-        + Thread.currentThread().getName() + "] " + o);
+  public static Level getLevel() {
+    return level;
   }
 
-  public void error(final Object o, final Throwable t) {
-    System.err.print("[" +System.currentTimeMillis() + " " + className + " " +
-        Thread.currentThread().getName() + "] " + o + " " + t.getMessage());
+  /**
+   * the level of every logger.
+   */
+  public static void setLevel(final Level level) {
+    Logger.level = level;
+  }
+
+  /**
+   * true if lines at level l are written.
+   */
+  public boolean isEnabled(final Level l) {
+    return l != Level.OFF && l.compareTo(level) >= 0;
+  }
+
+  public boolean isDebugEnabled() {
+    return isEnabled(Level.DEBUG);
+  }
+
+  public boolean isInfoEnabled() {
+    return isEnabled(Level.INFO);
+  }
+
+  public void log(final Level l, final Object o) {
+    if(!isEnabled(l))
+      return;
+    final Appender a = appender;
+    final Event e = a.claim();
+    try {
+      e.start(l, className).append(o).end(null);
+    } finally {
+      a.publish(e);
+    }
+  }
+
+  /**
+   * a printf style message (see java.util.Formatter).
+   */
+  public void log(final Level l, final String format, final Object... args) {
+    if(!isEnabled(l))
+      return;
+    final Appender a = appender;
+    final Event e = a.claim();
+    try {
+      e.start(l, className).format(format, args).end(null);
+    } finally {
+      a.publish(e);
+    }
   }
 
   public void debug(final Object o) {
-    info(o); 
+    log(Level.DEBUG, o);
+  }
+
+  public void debug(final String format, final Object... args) {
+    log(Level.DEBUG, format, args);
+  }
+
+  public void info(final Object o) {
+    log(Level.INFO, o);
+  }
+
+  public void info(final String format, final Object... args) {
+    log(Level.INFO, format, args);
+  }
+
+  public void warn(final Object o) {
+    log(Level.WARN, o);
+  }
+
+  public void warn(final String format, final Object... args) {
+    log(Level.WARN, format, args);
+  }
+
+  public void error(final Object o, final Throwable t) {
+    if(!isEnabled(Level.ERROR))
+      return;
+    final Appender a = appender;
+    final Event e = a.claim();
+    try {
+      e.start(Level.ERROR, className).append(o).end(t);
+    } finally {
+      a.publish(e);
+    }
   }
   
   public static Logger getLogger(final Class c) {
@@ -31,4 +140,3 @@ public final class Logger {
   }
 
 }
-
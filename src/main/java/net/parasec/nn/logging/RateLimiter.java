@@ -0,0 +1,44 @@
+package net.parasec.nn.logging;
+
+/**
+ * limits progress lines (e.g., one per epoch) to at most one per interval.
+ * not thread-safe: each loop has its own.
+ */
+public final class RateLimiter {
+
+  // interval between progress lines, from -Dnn.log.progress_ms.
+  private static final long DEFAULT_INTERVAL 
+      = Long.getLong("nn.log.progress_ms", 1000);
+
+  private final long interval;
+  private long last;
+  private boolean first = true;
+
+
+  public RateLimiter() {
+    this(DEFAULT_INTERVAL);
+  }
+
+  /**
+   * at most 1 line per interval ms. 0 = every line.
+   */
+  public RateLimiter(final long interval) {
+    this.interval = interval*1000000L;
+  }
+
+  /**
+   * true if the interval has passed since the last time this returned true
+   * (or this is the first call).
+   */
+  public boolean ready() {
+    if(interval <= 0)
+      return true;
+    final long now = System.nanoTime();
+    if(first || now-last >= interval) {
+      first = false;
+      last = now;
+      return true;
+    }
+    return false;
+  }
+}
@@ -0,0 +1,28 @@
+package net.parasec.nn.logging;
+
+import java.io.PrintStream;
+
+/**
+ * writes each event to stdout (stderr for warnings and errors) on the
+ * logging thread.
+ */
+final class SyncAppender extends Appender {
+
+  private final ThreadLocal<Event> events = new ThreadLocal<Event>() {
+    protected Event initialValue() {
+      return new Event();
+    }
+  };
+
+
+  Event claim() {
+    return events.get();
+  }
+
+  void publish(final Event event) {
+    final PrintStream out 
+        = event.level.compareTo(Level.WARN) >= 0 ? System.err : System.out;
+    out.append(event.line);
+    out.flush();
+  }
+}
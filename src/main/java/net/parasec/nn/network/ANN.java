@@ -1,73 +1,115 @@
 package net.parasec.nn.network;
 
 import net.parasec.nn.logging.Logger;
+import net.parasec.nn.util.Kernels;
 import net.parasec.nn.util.MathUtil;
 
+import java.util.Arrays;
 import java.util.Random;
 
 
 /**
  * feed-forward neural network.
- * note that this (matrix based) implementation is based on some of my old code 
+ * note that this (matrix based) implementation is based on some of my old code
  * from 2005. it is mathematically sound, however the implementation is quite
  * poor.
+ *
+ * weights are packed into a single contiguous array. the weights of layer i
+ * start at weightOffsets[i] and are stored row-major: one row per neuron,
+ * each row holding the bias weight followed by one weight per input
+ * (structure[i]+1 values). the [layer][neuron][weight] view is only
+ * materialised on request (getWeights, cloneWeights).
  */
 public final class ANN {
   private final static Logger LOG = Logger.getLogger(ANN.class);
 
+  // number of batch instances pushed through a layer together. the inputs
+  // of a block stay in cache while every weight row of the layer is applied
+  // to them, and each weight row is reused for the whole block.
+  private static final int BLOCK = 16;
 
-  // network weight matrix:
-  // [layer][neuron][weight]
-  // where each layer contains neurons with incomming weights.
-  private double[][][] weights; 
+
+  // packed network weights.
+  // [layer offset + neuron*(inputs+1) + weight]
+  private final double[] weights;
+
+  // start of each layer in the packed weight (and optimizer state) arrays.
+  private final int[] weightOffsets;
 
   // neuron outputs. output of each neuron after presenting a single instance.
+  // one contiguous array per layer.
   private final double[][] outputs;
 
   // neuron errors.
   private final double[][] deltas;
 
-  // previous weight change.
-  // needed for momentum calculation.
-  private double[][][] preDW;
+  // bias input of the weight updates.
+  private static final double[] ONE = {1.0};
+
+  // weight update rule and its per-weight state (momentum by default).
+  private Optimizer optimizer;
+
+  // activation function of each layer (excluding the input layer).
+  private final Activation[] activations;
 
   // network structure
   private final int[] structure;
   private final int nLayers, nOutputs, nInputs;
 
   // prng.
-  private final Random prng; 
+  private final Random prng;
 
 
-  public ANN(final double min, final double max, final int[] structure, 
+  public ANN(final double min, final double max, final int[] structure,
       final Random prng) {
+    this(min, max, structure, Activation.layers(structure, 
+        Activation.SIGMOID, Activation.SIGMOID), prng);
+  }
+
+  /**
+   * @param activations activation of each layer, excluding the input layer.
+   */
+  public ANN(final double min, final double max, final int[] structure,
+      final Activation[] activations, final Random prng) {
+    checkActivations(structure, activations);
     this.structure = structure;
+    this.activations = activations;
     this.prng = prng;
     nLayers = structure.length-1;
     nOutputs = structure[structure.length-1];
     nInputs = structure[0];
     outputs = new double[structure.length][];
-    LOG.info("initialising network with structure: " + 
-        java.util.Arrays.toString(structure));
+    LOG.info("initialising network with structure: " +
+        Arrays.toString(structure));
     for(int i = outputs.length; --i >= 0; )
       outputs[i] = new double[structure[i]];
     deltas = new double[structure.length-1][];
     for(int i = deltas.length; --i >= 0; )
       deltas[i] = new double[structure[i+1]];
-    final double[][][] weights = new double[nLayers][][];
-    for(int i = nLayers; --i >= 0; )
-      weights[i] = new double[structure[i+1]][structure[i]+1];
-    for(int i = weights.length; --i >= 0; )
-      for(int j = weights[i].length; --j >= 0; )
-        for(int k = weights[i][j].length; --k >= 0; )
-          weights[i][j][k] = MathUtil.getRandom(prng, min, max);
-    initialiseWeights(weights);
+    weightOffsets = weightOffsets(structure);
+    weights = new double[weightOffsets[nLayers]];
+    optimizer = Optimizer.create("momentum", weights.length);
+    // same draw order as the original [layer][neuron][weight] initialisation
+    // (all indices descending), so a seeded prng yields the same network.
+    for(int i = nLayers; --i >= 0; ) {
+      final int stride = structure[i]+1;
+      for(int j = structure[i+1]; --j >= 0; ) {
+        final int row = weightOffsets[i]+j*stride;
+        for(int k = stride; --k >= 0; )
+          weights[row+k] = MathUtil.getRandom(prng, min, max);
+      }
+    }
   }
 
   public ANN(final double[][][] weights) {
-    this.prng = new Random(); 
+    this(weights, Activation.parse(null, weights.length));
+  }
+
+  public ANN(final double[][][] weights, final Activation[] activations) {
+    this.prng = new Random();
+    this.activations = activations;
     nLayers = weights.length; // -input layer
-    nOutputs = weights[nLayers-1].length; 
+    nOutputs = weights[nLayers-1].length;
     // # incomming weights to first neuron in first layer -bias
     nInputs = weights[0][0].length-1;
     outputs = new double[nLayers+1][];
@@ -80,100 +122,363 @@ public final class ANN {
       outputs[i] = new double[neurons];
     }
     deltas = new double[structure.length-1][];
-    for(int i = 0, len = deltas.length; i < len; i++) 
+    for(int i = 0, len = deltas.length; i < len; i++)
       deltas[i] = new double[structure[i+1]];
+    checkActivations(structure, activations);
     LOG.info("initialising network with structure: " +
-        java.util.Arrays.toString(structure));
+        Arrays.toString(structure));
+    weightOffsets = weightOffsets(structure);
+    this.weights = new double[weightOffsets[nLayers]];
+    optimizer = Optimizer.create("momentum", this.weights.length);
     initialiseWeights(weights);
   }
 
   public double[] feedForward(final double[] instance) {
+    final double[] weights = this.weights;
     // initialise 1st outputs to be inputs,
     // since input neurons have no activation function
     outputs[0] = instance;
     // for each layer i
     for(int i = 1; i < outputs.length; i++) {
+      final double[] in = outputs[i-1];
+      final double[] out = outputs[i];
+      final int inputs = in.length;
+      final int stride = inputs+1;
+      int row = weightOffsets[i-1];
       // for each neuron j in this layer
-      for(int j =0; j <outputs[i].length; j++) {
-        // bias weight (1) first.
-        double sum = weights[i-1][j][0];
-        // for each input to this neuron
-        for(int k = 1; k < weights[i-1][j].length; k++) {
-          sum += weights[i-1][j][k]*outputs[i-1][k-1];
-        }
-        outputs[i][j] = MathUtil.fastSigmoid(sum);
+      for(int j = 0, len = out.length; j < len; j++, row += stride) {
+        // bias weight (1) first, then each input to this neuron.
+        out[j] = weights[row]+Kernels.dot(weights, row+1, in, 0, inputs);
       }
+      activations[i-1].apply(out, 0, out.length);
     }
     return outputs[nLayers];
   }
 
-  public void backPropagateError(final double[] desiredOutput, 
+  public void backPropagateError(final double[] desiredOutput,
       final double learningRate, final double momentum) {
     calculateError(desiredOutput);
+    final double[] weights = this.weights;
+    final Optimizer optimizer = this.optimizer;
+    optimizer.step();
     // for each layer
-    for(int i = weights.length; --i >= 0; ) {
+    for(int i = nLayers; --i >= 0; ) {
+      final double[] in = outputs[i];
+      final double[] delta = deltas[i];
+      final int inputs = structure[i];
+      final int stride = inputs+1;
       // for each neuron
-      for(int j = weights[i].length; --j >= 0; ) {
+      for(int j = delta.length; --j >= 0; ) {
+        final int row = weightOffsets[i]+j*stride;
+        final double d = delta[j];
         // bias weight (1) first.
-        final double dwBias 
-            = (learningRate*deltas[i][j])+(momentum*preDW[i][j][0]);
-        weights[i][j][0] += dwBias;
-        preDW[i][j][0] = dwBias;
-        //LOG.info("w[" + i + "][" + j + "][0] = " + String.format("%.10f", weights[i][j][0]) + 
-        //         " dw = " + String.format("%.10f", dwBias));
+        optimizer.update(learningRate, momentum, d, ONE, 0, weights, row, 1);
         // for each weight connected to this neuron
-        for(int k = weights[i][j].length; --k > 0; ) {
-          final double dw = (learningRate*(deltas[i][j]*outputs[i][k-1]))
-              + (momentum*preDW[i][j][k]);
-          weights[i][j][k] += dw;
-          //LOG.info("w[" + i + "][" + j + "][" + k + "] = " + String.format("%.10f", weights[i][j][k]) +
-          //         " dw = " + String.format("%.10f", dw));
-          preDW[i][j][k] = dw;
+        optimizer.update(learningRate, momentum, d, in, 0, weights, row+1,
+            inputs);
+      }
+    }
+  }
+
+  /**
+   * feed-forward the first count instances of a batch.
+   * each layer is computed as a blocked matrix-matrix product of the layer
+   * weights and the previous layer's outputs for the whole batch.
+   */
+  public void feedForward(final Batch batch, final int count) {
+    final double[] weights = this.weights;
+    final double[][] outputs = batch.getOutputs();
+    for(int i = 1; i < outputs.length; i++) {
+      final double[] in = outputs[i-1];
+      final double[] out = outputs[i];
+      final int inputs = structure[i-1];
+      final int neurons = structure[i];
+      final int stride = inputs+1;
+      final int offset = weightOffsets[i-1];
+      for(int b = 0; b < count; b += BLOCK) {
+        final int end = Math.min(b+BLOCK, count);
+        for(int j = 0, row = offset; j < neurons; j++, row += stride) {
+          final double bias = weights[row];
+          for(int n = b; n < end; n++)
+            out[n*neurons+j]
+                = bias+Kernels.dot(weights, row+1, in, n*inputs, inputs);
         }
       }
+      activations[i-1].apply(out, 0, count*neurons);
     }
   }
 
+  /**
+   * backpropagate the error of the first count instances of a batch (after
+   * feedForward(batch, count)) and add the resulting weight gradients to the
+   * batch gradient. the network weights are not modified: see applyGradient.
+   */
+  public void backPropagateError(final Batch batch, final int count) {
+    calculateError(batch, count);
+    final double[][] outputs = batch.getOutputs();
+    final double[][] deltas = batch.getDeltas();
+    final double[] gradient = batch.getGradient();
+    // gradient: sum over the batch of the outer product delta x input.
+    for(int i = nLayers; --i >= 0; ) {
+      final double[] in = outputs[i];
+      final double[] delta = deltas[i];
+      final int inputs = structure[i];
+      final int neurons = structure[i+1];
+      final int stride = inputs+1;
+      final int offset = weightOffsets[i];
+      for(int b = 0; b < count; b += BLOCK) {
+        final int end = Math.min(b+BLOCK, count);
+        for(int j = 0, row = offset; j < neurons; j++, row += stride) {
+          for(int n = b; n < end; n++) {
+            final double d = delta[n*neurons+j];
+            gradient[row] += d;
+            Kernels.axpy(d, in, n*inputs, gradient, row+1, inputs);
+          }
+        }
+      }
+    }
+  }
+
+  /**
+   * stochastic backpropagation of the first instance of a batch (after
+   * feedForward(batch, 1)), applied directly to the network weights.
+   *
+   * the errors are calculated in the batch, so several threads may train the
+   * same network concurrently, each with its own batch. no locking is done:
+   * concurrent updates to the same weight may overwrite each other (hogwild).
+   * nor is the optimizer step advanced: the caller advances it (once, from
+   * one thread) with getOptimizer().step().
+   */
+  public void update(final Batch batch, final double learningRate,
+      final double momentum) {
+    calculateError(batch, 1);
+    final double[] weights = this.weights;
+    final Optimizer optimizer = this.optimizer;
+    final double[][] outputs = batch.getOutputs();
+    final double[][] deltas = batch.getDeltas();
+    for(int i = nLayers; --i >= 0; ) {
+      final double[] in = outputs[i];
+      final double[] delta = deltas[i];
+      final int inputs = structure[i];
+      final int stride = inputs+1;
+      for(int j = structure[i+1]; --j >= 0; ) {
+        final int row = weightOffsets[i]+j*stride;
+        final double d = delta[j];
+        optimizer.update(learningRate, momentum, d, ONE, 0, weights, row, 1);
+        optimizer.update(learningRate, momentum, d, in, 0, weights, row+1,
+            inputs);
+      }
+    }
+  }
+
+  /**
+   * apply a (summed) gradient with the update rule used by
+   * backPropagateError(double[], double, double).
+   */
+  public void applyGradient(final double[] gradient,
+      final double learningRate, final double momentum) {
+    optimizer.step();
+    optimizer.update(learningRate, momentum, 1, gradient, 0, weights, 0,
+        weights.length);
+  }
+
+  /**
+   * [layer][neuron][weight] copy of the network weights.
+   * the packed representation is authoritative: changes made to the returned
+   * matrix do not affect the network. use initialiseWeights to load them.
+   */
   public double[][][] getWeights() {
-    return weights;
+    return cloneWeights();
   }
 
   public double[][][] cloneWeights() {
     final double[][][] networkWeights = new double[nLayers][][];
-    for(int i = nLayers; --i>= 0; )
-      networkWeights[i] = new double[structure[i+1]][structure[i]+1];
-      for(int i = networkWeights.length; --i>= 0; )
-        for(int j = networkWeights[i].length; --j>= 0; )
-          for(int k = networkWeights[i][j].length; --k >= 0; )
-            networkWeights[i][j][k] = weights[i][j][k];
+    for(int i = nLayers; --i >= 0; ) {
+      final int stride = structure[i]+1;
+      final double[][] layer = new double[structure[i+1]][];
+      for(int j = layer.length; --j >= 0; ) {
+        final int row = weightOffsets[i]+j*stride;
+        layer[j] = Arrays.copyOfRange(weights, row, row+stride);
+      }
+      networkWeights[i] = layer;
+    }
     return networkWeights;
   }
 
+  /**
+   * load a [layer][neuron][weight] matrix into the packed weights and reset
+   * the optimizer state. the matrix must match the network structure.
+   */
   public void initialiseWeights(final double[][][] weights) {
-    this.weights = weights;
-    preDW = new double[nLayers][][];
-    for(int i = nLayers; --i >= 0; )
-      preDW[i] = new double[structure[i+1]][structure[i]+1];    
+    for(int i = nLayers; --i >= 0; ) {
+      final int stride = structure[i]+1;
+      for(int j = structure[i+1]; --j >= 0; )
+        System.arraycopy(weights[i][j], 0, this.weights,
+            weightOffsets[i]+j*stride, stride);
+    }
+    optimizer.reset();
+  }
+
+  /**
+   * copy the packed weights into snapshot (at least as long as the packed
+   * weight array). nothing is allocated, so a trainer can keep the best
+   * weights so far in one preallocated buffer.
+   */
+  public void snapshotWeights(final double[] snapshot) {
+    System.arraycopy(weights, 0, snapshot, 0, weights.length);
+  }
+
+  /**
+   * load packed weights taken with snapshotWeights and reset the optimizer
+   * state, in place.
+   */
+  public void restoreWeights(final double[] snapshot) {
+    System.arraycopy(snapshot, 0, weights, 0, weights.length);
+    optimizer.reset();
+  }
+
+  /**
+   * the weight update rule and its state (see Optimizer.snapshot, restore).
+   */
+  public Optimizer getOptimizer() {
+    return optimizer;
+  }
+
+  /**
+   * switch to the named update rule (see Optimizer.create), with fresh
+   * state. not safe while training.
+   */
+  public void setOptimizer(final String name) {
+    optimizer = Optimizer.create(name, weights.length);
+  }
+
+  /**
+   * the live packed weight array. see class comment for the layout.
+   */
+  public double[] getPackedWeights() {
+    return weights;
+  }
+
+  /**
+   * offset of each layer in the packed weight array. the final element is
+   * the total number of weights.
+   */
+  public int[] getWeightOffsets() {
+    return weightOffsets;
+  }
+
+  public int[] getStructure() {
+    return structure;
+  }
+
+  public Activation[] getActivations() {
+    return activations;
   }
 
   // 2nd hotspot.
   private void calculateError(final double[] desiredOutput) {
+    final double[] weights = this.weights;
     // output layer
-    for(int i = nOutputs; --i >=0; ) {
-      final double sd = MathUtil.sigmoidDerivative(outputs[nLayers][i]);
-      deltas[nLayers-1][i] = sd*(desiredOutput[i]-outputs[nLayers][i]);
-    }
+    final double[] out = outputs[nLayers];
+    final double[] outDelta = deltas[nLayers-1];
+    for(int i = nOutputs; --i >=0; )
+      outDelta[i] = desiredOutput[i]-out[i];
+    activations[nLayers-1].derive(out, 0, outDelta, 0, nOutputs);
     // for each hidden layer
     for(int i = nLayers-1; --i >= 0; ) {
-      for(int j = deltas[i].length; --j >= 0; ) {
-        double sum = 0;
-        // for each outgoing weight to neurons in layer +1, sum
-        // outgoingWeight*delta(layer +1)
-        for(int k = deltas[i+1].length; --k >= 0; )
-          sum += weights[i+1][k][j+1]*deltas[i+1][k];
-        deltas[i][j] = MathUtil.sigmoidDerivative(outputs[i+1][j]) * sum;
+      final double[] delta = deltas[i];
+      final double[] next = deltas[i+1];
+      final double[] o = outputs[i+1];
+      final int neurons = delta.length;
+      final int stride = neurons+1;
+      // weights of layer i+1 hold the outgoing weights of this layer.
+      // for each neuron in layer +1, add outgoingWeight*delta(layer +1) to
+      // the error of every neuron in this layer (one contiguous weight row).
+      final int offset = weightOffsets[i+1];
+      Arrays.fill(delta, 0);
+      for(int k = next.length; --k >= 0; )
+        Kernels.axpy(next[k], weights, offset+k*stride+1, delta, 0, neurons);
+      activations[i].derive(o, 0, delta, 0, neurons);
+    }
+  }
+
+  /**
+   * errors of the first count instances of a batch.
+   */
+  private void calculateError(final Batch batch, final int count) {
+    final double[] weights = this.weights;
+    final double[][] outputs = batch.getOutputs();
+    final double[][] deltas = batch.getDeltas();
+    // output layer
+    final double[] out = outputs[nLayers];
+    final double[] outDelta = deltas[nLayers-1];
+    final double[] targets = batch.getTargets();
+    for(int i = count*nOutputs; --i >= 0; )
+      outDelta[i] = targets[i]-out[i];
+    activations[nLayers-1].derive(out, 0, outDelta, 0, count*nOutputs);
+    // hidden layers: delta = f'(o) * (W^T next), accumulated one outgoing
+    // weight row at a time so that the weights are read contiguously.
+    for(int i = nLayers-1; --i >= 0; ) {
+      final double[] delta = deltas[i];
+      final double[] next = deltas[i+1];
+      final double[] o = outputs[i+1];
+      final int neurons = structure[i+1];
+      final int nextNeurons = structure[i+2];
+      final int stride = neurons+1;
+      final int offset = weightOffsets[i+1];
+      Arrays.fill(delta, 0, count*neurons, 0);
+      for(int n = 0; n < count; n++) {
+        final int d = n*neurons;
+        final int e = n*nextNeurons;
+        for(int k = nextNeurons; --k >= 0; )
+          Kernels.axpy(next[e+k], weights, offset+k*stride+1, delta, d,
+              neurons);
       }
+      activations[i].derive(o, 0, delta, 0, count*neurons);
     }
   }
-}
 
+  static void checkActivations(final int[] structure,
+      final Activation[] activations) {
+    if(activations.length != structure.length-1)
+      throw new IllegalArgumentException(activations.length + 
+          " activations for " + (structure.length-1) + " layers");
+  }
+
+  /**
+   * network structure of a [layer][neuron][weight] matrix.
+   */
+  static int[] structure(final double[][][] weights) {
+    final int[] structure = new int[weights.length+1];
+    structure[0] = weights[0][0].length-1;
+    for(int i = 0, len = weights.length; i < len; i++)
+      structure[i+1] = weights[i].length;
+    return structure;
+  }
+
+  /**
+   * pack a [layer][neuron][weight] matrix.
+   */
+  static double[] pack(final double[][][] weights, final int[] structure) {
+    final int[] offsets = weightOffsets(structure);
+    final double[] packed = new double[offsets[offsets.length-1]];
+    for(int i = weights.length; --i >= 0; ) {
+      final int stride = structure[i]+1;
+      for(int j = structure[i+1]; --j >= 0; )
+        System.arraycopy(weights[i][j], 0, packed, offsets[i]+j*stride,
+            stride);
+    }
+    return packed;
+  }
+
+  /**
+   * packed weight offsets for a given structure.
+   */
+  static int[] weightOffsets(final int[] structure) {
+    final int layers = structure.length-1;
+    final int[] offsets = new int[layers+1];
+    for(int i = 0; i < layers; i++)
+      offsets[i+1] = offsets[i]+structure[i+1]*(structure[i]+1);
+    return offsets;
+  }
+}
@@ -0,0 +1,231 @@
+package net.parasec.nn.network;
+
+import net.parasec.nn.util.MathUtil;
+
+/**
+ * neuron activation (transfer) functions.
+ *
+ * each activation implements its own whole-layer forward and fused
+ * derivative loops, so that a network calls one activation per layer and the
+ * jit compiles each loop for a single, inlined transfer function.
+ *
+ * derivatives are expressed in terms of the activation output y = f(x),
+ * which is what the network keeps after a feed-forward.
+ */
+public enum Activation {
+
+  /**
+   * logistic sigmoid, using the fast exp approximation (see MathUtil).
+   */
+  SIGMOID {
+    public double apply(final double x) {
+      return MathUtil.fastSigmoid(x);
+    }
+
+    public double derivative(final double y) {
+      return MathUtil.sigmoidDerivative(y);
+    }
+
+    public void apply(final double[] x, final int off, final int n) {
+      for(int i = off, end = off+n; i < end; i++)
+        x[i] = MathUtil.fastSigmoid(x[i]);
+    }
+
+    public void derive(final double[] y, final int yOff, final double[] delta,
+        final int dOff, final int n) {
+      for(int i = 0; i < n; i++)
+        delta[dOff+i] *= MathUtil.sigmoidDerivative(y[yOff+i]);
+    }
+
+    public void apply(final float[] x, final int off, final int n) {
+      for(int i = off, end = off+n; i < end; i++)
+        x[i] = MathUtil.fastSigmoid(x[i]);
+    }
+
+    public void derive(final float[] y, final int yOff, final float[] delta,
+        final int dOff, final int n) {
+      for(int i = 0; i < n; i++)
+        delta[dOff+i] *= MathUtil.sigmoidDerivative(y[yOff+i]);
+    }
+  },
+
+  /**
+   * hyperbolic tangent.
+   */
+  TANH {
+    public double apply(final double x) {
+      return MathUtil.tanh(x);
+    }
+
+    public double derivative(final double y) {
+      return MathUtil.tanhDerivative(y);
+    }
+
+    public void apply(final double[] x, final int off, final int n) {
+      for(int i = off, end = off+n; i < end; i++)
+        x[i] = MathUtil.tanh(x[i]);
+    }
+
+    public void derive(final double[] y, final int yOff, final double[] delta,
+        final int dOff, final int n) {
+      for(int i = 0; i < n; i++)
+        delta[dOff+i] *= MathUtil.tanhDerivative(y[yOff+i]);
+    }
+
+    public void apply(final float[] x, final int off, final int n) {
+      for(int i = off, end = off+n; i < end; i++)
+        x[i] = (float) MathUtil.tanh(x[i]);
+    }
+
+    public void derive(final float[] y, final int yOff, final float[] delta,
+        final int dOff, final int n) {
+      for(int i = 0; i < n; i++) {
+        final float o = y[yOff+i];
+        delta[dOff+i] *= 1-o*o;
+      }
+    }
+  },
+
+  /**
+   * rectified linear unit: max(0, x). no exp at all.
+   */
+  RELU {
+    public double apply(final double x) {
+      return x > 0 ? x : 0;
+    }
+
+    public double derivative(final double y) {
+      return y > 0 ? 1 : 0;
+    }
+
+    public void apply(final double[] x, final int off, final int n) {
+      for(int i = off, end = off+n; i < end; i++)
+        x[i] = x[i] > 0 ? x[i] : 0;
+    }
+
+    public void derive(final double[] y, final int yOff, final double[] delta,
+        final int dOff, final int n) {
+      for(int i = 0; i < n; i++)
+        if(y[yOff+i] <= 0)
+          delta[dOff+i] = 0;
+    }
+
+    public void apply(final float[] x, final int off, final int n) {
+      for(int i = off, end = off+n; i < end; i++)
+        x[i] = x[i] > 0 ? x[i] : 0;
+    }
+
+    public void derive(final float[] y, final int yOff, final float[] delta,
+        final int dOff, final int n) {
+      for(int i = 0; i < n; i++)
+        if(y[yOff+i] <= 0)
+          delta[dOff+i] = 0;
+    }
+  },
+
+  /**
+   * leaky relu: x if x > 0, otherwise LEAK*x. avoids dead units.
+   */
+  LEAKY_RELU {
+    public double apply(final double x) {
+      return x > 0 ? x : LEAK*x;
+    }
+
+    public double derivative(final double y) {
+      return y > 0 ? 1 : LEAK;
+    }
+
+    public void apply(final double[] x, final int off, final int n) {
+      for(int i = off, end = off+n; i < end; i++)
+        x[i] = x[i] > 0 ? x[i] : LEAK*x[i];
+    }
+
+    public void derive(final double[] y, final int yOff, final double[] delta,
+        final int dOff, final int n) {
+      for(int i = 0; i < n; i++)
+        if(y[yOff+i] <= 0)
+          delta[dOff+i] *= LEAK;
+    }
+
+    public void apply(final float[] x, final int off, final int n) {
+      for(int i = off, end = off+n; i < end; i++)
+        x[i] = x[i] > 0 ? x[i] : FLOAT_LEAK*x[i];
+    }
+
+    public void derive(final float[] y, final int yOff, final float[] delta,
+        final int dOff, final int n) {
+      for(int i = 0; i < n; i++)
+        if(y[yOff+i] <= 0)
+          delta[dOff+i] *= FLOAT_LEAK;
+    }
+  };
+
+  // negative slope of LEAKY_RELU.
+  private static final double LEAK = 0.01;
+  private static final float FLOAT_LEAK = (float) LEAK;
+
+
+  /**
+   * f(x).
+   */
+  public abstract double apply(double x);
+
+  /**
+   * f'(x), given y = f(x).
+   */
+  public abstract double derivative(double y);
+
+  /**
+   * in-place f(x) of n values from off.
+   */
+  public abstract void apply(double[] x, int off, int n);
+
+  /**
+   * fused derivative: delta[dOff+i] *= f'(y[yOff+i]) for i in [0, n).
+   */
+  public abstract void derive(double[] y, int yOff, double[] delta, int dOff,
+      int n);
+
+  public abstract void apply(float[] x, int off, int n);
+
+  public abstract void derive(float[] y, int yOff, float[] delta, int dOff,
+      int n);
+
+  /**
+   * activation by (case insensitive) name. "leaky-relu" and "leaky_relu" are
+   * equivalent.
+   */
+  public static Activation parse(final String name) {
+    return valueOf(name.trim().toUpperCase().replace('-', '_'));
+  }
+
+  /**
+   * activation of each layer of a network with structure.length-1 layers:
+   * hidden for each hidden layer and output for the output layer.
+   */
+  public static Activation[] layers(final int[] structure,
+      final Activation hidden, final Activation output) {
+    final Activation[] activations = new Activation[structure.length-1];
+    for(int i = activations.length; --i >= 0; )
+      activations[i] = hidden;
+    activations[activations.length-1] = output;
+    return activations;
+  }
+
+  /**
+   * activations by name. null names (an old weights file) are all sigmoid.
+   */
+  public static Activation[] parse(final String[] names, final int layers) {
+    final Activation[] activations = new Activation[layers];
+    for(int i = layers; --i >= 0; )
+      activations[i] = names == null ? SIGMOID : parse(names[i]);
+    return activations;
+  }
+
+  public static String[] names(final Activation[] activations) {
+    final String[] names = new String[activations.length];
+    for(int i = names.length; --i >= 0; )
+      names[i] = activations[i].name();
+    return names;
+  }
+}
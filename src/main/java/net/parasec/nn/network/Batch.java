@@ -0,0 +1,90 @@
+package net.parasec.nn.network;
+
+import java.util.Arrays;
+
+/**
+ * scratch space for pushing a mini-batch of instances through a network.
+ *
+ * each layer holds a row-major [instance][neuron] matrix of activations and
+ * errors for up to capacity instances. the gradient has the same packed
+ * layout as the network weights and is accumulated (summed) over the batch.
+ *
+ * a batch belongs to one thread. any number of batches may be used against
+ * the same network.
+ */
+public final class Batch {
+  private final int capacity;
+  private final int[] structure;
+
+  // [layer][instance*neurons+neuron]. layer 0 = inputs.
+  private final double[][] outputs;
+
+  // [layer-1][instance*neurons+neuron]
+  private final double[][] deltas;
+
+  // desired output for each instance.
+  private final double[] targets;
+
+  // summed gradient. same layout as packed network weights.
+  private final double[] gradient;
+
+
+  public Batch(final int[] structure, final int capacity) {
+    this.structure = structure;
+    this.capacity = capacity;
+    outputs = new double[structure.length][];
+    for(int i = outputs.length; --i >= 0; )
+      outputs[i] = new double[capacity*structure[i]];
+    deltas = new double[structure.length-1][];
+    for(int i = deltas.length; --i >= 0; )
+      deltas[i] = new double[capacity*structure[i+1]];
+    targets = new double[capacity*structure[structure.length-1]];
+    gradient = new double[ANN.weightOffsets(structure)[structure.length-1]];
+  }
+
+  public int capacity() {
+    return capacity;
+  }
+
+  public int[] getStructure() {
+    return structure;
+  }
+
+  /**
+   * input matrix: instance n starts at n*structure[0].
+   */
+  public double[] getInputs() {
+    return outputs[0];
+  }
+
+  /**
+   * desired output matrix: instance n starts at n*#outputs.
+   */
+  public double[] getTargets() {
+    return targets;
+  }
+
+  /**
+   * network output matrix after a feed-forward: instance n starts at
+   * n*#outputs.
+   */
+  public double[] getNetworkOutputs() {
+    return outputs[outputs.length-1];
+  }
+
+  public double[] getGradient() {
+    return gradient;
+  }
+
+  public void clearGradient() {
+    Arrays.fill(gradient, 0);
+  }
+
+  double[][] getOutputs() {
+    return outputs;
+  }
+
+  double[][] getDeltas() {
+    return deltas;
+  }
+}
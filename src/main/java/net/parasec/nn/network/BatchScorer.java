@@ -0,0 +1,310 @@
+package net.parasec.nn.network;
+
+import net.parasec.nn.logging.Logger;
+import net.parasec.nn.training.Dataset;
+import net.parasec.nn.util.CsvParser;
+import net.parasec.nn.util.Util;
+
+import java.io.BufferedOutputStream;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * high-throughput scoring of a csv file with a model.
+ *
+ * rows are parsed from the input file (see CsvParser) into a small set of
+ * reused blocks. each block is fed forward as a single matrix-matrix
+ * product on a pool of worker threads, and the network outputs are written,
+ * in input order, to an output file: either as csv (one row per input row)
+ * or as raw little-endian doubles (row-major [row][output]). a single
+ * precision model writes raw little-endian floats.
+ *
+ * only the first #inputs columns of each row are used, so a labelled
+ * dataset (inputs followed by outputs) can be scored directly. binary
+ * datasets (see MappedDataset) are scored straight from the mapping.
+ */
+public final class BatchScorer {
+  private static final Logger LOG = Logger.getLogger(BatchScorer.class);
+  private static final char DELIMITER = ',';
+
+  // exactly one of model and floatModel is set.
+  private final Model model;
+  private final FloatModel floatModel;
+  private final int nInputs, nOutputs;
+  private final int threads;
+  private final int blockSize;
+  private final boolean binary;
+  private final int decimals;
+
+  // per worker thread buffers.
+  private final ThreadLocal<Work> work = new ThreadLocal<Work>() {
+    protected Work initialValue() {
+      return new Work();
+    }
+  };
+
+  private final class Work {
+    private final Model.Scratch scratch;
+    private final FloatModel.Scratch floatScratch;
+    private final double[] inputs, outputs;
+    private final float[] floatInputs, floatOutputs;
+
+    private Work() {
+      if(model != null) {
+        scratch = model.newScratch(blockSize);
+        inputs = new double[blockSize*nInputs];
+        outputs = new double[blockSize*nOutputs];
+        floatScratch = null;
+        floatInputs = floatOutputs = null;
+      } else {
+        floatScratch = floatModel.newScratch(blockSize);
+        floatInputs = new float[blockSize*nInputs];
+        floatOutputs = new float[blockSize*nOutputs];
+        scratch = null;
+        // staging for dataset rows, and widened outputs for csv formatting.
+        inputs = new double[blockSize*nInputs];
+        outputs = new double[blockSize*nOutputs];
+      }
+    }
+  }
+
+
+  /**
+   * @param threads number of scoring threads.
+   * @param blockSize number of rows scored together.
+   * @param binary write raw little-endian doubles instead of csv.
+   * @param decimals number of decimal places in csv output (0-15).
+   */
+  public BatchScorer(final Model model, final int threads,
+      final int blockSize, final boolean binary, final int decimals) {
+    this(model, null, model.getInputs(), model.getOutputs(), threads,
+        blockSize, binary, decimals);
+  }
+
+  /**
+   * single precision scoring. binary output is written as little-endian
+   * floats.
+   */
+  public BatchScorer(final FloatModel model, final int threads,
+      final int blockSize, final boolean binary, final int decimals) {
+    this(null, model, model.getInputs(), model.getOutputs(), threads,
+        blockSize, binary, decimals);
+  }
+
+  private BatchScorer(final Model model, final FloatModel floatModel,
+      final int nInputs, final int nOutputs, final int threads,
+      final int blockSize, final boolean binary, final int decimals) {
+    // see Util.formatFixed.
+    if(decimals < 0 || decimals > 15)
+      throw new IllegalArgumentException("decimals must be in [0, 15]");
+    this.model = model;
+    this.floatModel = floatModel;
+    this.nInputs = nInputs;
+    this.nOutputs = nOutputs;
+    this.threads = threads;
+    this.blockSize = blockSize;
+    this.binary = binary;
+    this.decimals = decimals;
+  }
+
+  /**
+   * score every row of the input csv into the output file.
+   * returns the number of rows scored.
+   */
+  public long score(final String input, final String output)
+      throws IOException {
+    final ExecutorService pool = Executors.newFixedThreadPool(threads);
+    // bounds the number of blocks in memory and keeps the output in order.
+    final Queue<Future<ByteBuffer>> pending
+        = new ArrayDeque<Future<ByteBuffer>>();
+    final int maxPending = 2*threads;
+    // parsed input blocks, reused in turn: by the time a block is refilled,
+    // the block submitted maxPending+1 blocks before has been scored and
+    // written (see submit).
+    final double[][] blocks = new double[maxPending+1][blockSize*nInputs];
+    final long l = System.currentTimeMillis();
+    long rows = 0;
+    try {
+      // as DataLoader, lines without a delimiter (e.g., blank lines) are
+      // skipped.
+      final CsvParser in = new CsvParser(new FileInputStream(input));
+      try {
+        final OutputStream out = new BufferedOutputStream(
+            new FileOutputStream(output), 1 << 16);
+        try {
+          int b = 0;
+          double[] block = blocks[b];
+          int count = 0;
+          int n;
+          while((n = in.next()) >= 0) {
+            if(n < nInputs)
+              throw new IllegalArgumentException("expected " + nInputs +
+                  " values at line " + in.lines() + " of " + input);
+            System.arraycopy(in.row(), 0, block, count*nInputs, nInputs);
+            if(++count == blockSize) {
+              submit(pool, pending, maxPending, task(block, count), out);
+              rows += count;
+              b = (b+1)%blocks.length;
+              block = blocks[b];
+              count = 0;
+            }
+          }
+          if(count > 0) {
+            submit(pool, pending, maxPending, task(block, count), out);
+            rows += count;
+          }
+          while(!pending.isEmpty())
+            write(pending.remove(), out);
+        } finally {
+          out.close();
+        }
+      } finally {
+        in.close();
+      }
+    } finally {
+      pool.shutdownNow();
+    }
+    final long t = Math.max(1, System.currentTimeMillis()-l);
+    LOG.info("scored " + rows + " rows in " + t + "ms. (" +
+        (rows*1000/t) + " rows/s)");
+    return rows;
+  }
+
+  /**
+   * score every row of a dataset (e.g., a MappedDataset) into the output
+   * file. returns the number of rows scored.
+   */
+  public long score(final Dataset dataset, final String output)
+      throws IOException {
+    if(dataset.inputs() != nInputs)
+      throw new IllegalArgumentException("dataset has " + dataset.inputs() +
+          " inputs, model has " + nInputs);
+    final ExecutorService pool = Executors.newFixedThreadPool(threads);
+    final Queue<Future<ByteBuffer>> pending
+        = new ArrayDeque<Future<ByteBuffer>>();
+    final int maxPending = 2*threads;
+    final long l = System.currentTimeMillis();
+    final int rows = dataset.size();
+    try {
+      final OutputStream out = new BufferedOutputStream(
+          new FileOutputStream(output), 1 << 16);
+      try {
+        for(int from = 0; from < rows; from += blockSize)
+          submit(pool, pending, maxPending,
+              task(dataset, from, Math.min(blockSize, rows-from)), out);
+        while(!pending.isEmpty())
+          write(pending.remove(), out);
+      } finally {
+        out.close();
+      }
+    } finally {
+      pool.shutdownNow();
+    }
+    final long t = Math.max(1, System.currentTimeMillis()-l);
+    LOG.info("scored " + rows + " rows in " + t + "ms. (" +
+        (rows*1000L/t) + " rows/s)");
+    return rows;
+  }
+
+  // bounds the number of blocks in memory: waits for (and writes) the
+  // oldest block once maxPending are queued.
+  private static void submit(final ExecutorService pool,
+      final Queue<Future<ByteBuffer>> pending, final int maxPending,
+      final Callable<ByteBuffer> task, final OutputStream out)
+      throws IOException {
+    if(pending.size() == maxPending)
+      write(pending.remove(), out);
+    pending.add(pool.submit(task));
+  }
+
+  private static void write(final Future<ByteBuffer> f,
+      final OutputStream out) throws IOException {
+    try {
+      final ByteBuffer bb = f.get();
+      out.write(bb.array(), 0, bb.limit());
+    } catch(final InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException(e);
+    } catch(final ExecutionException e) {
+      throw new IOException(e.getCause());
+    }
+  }
+
+  private Callable<ByteBuffer> task(final double[] block, final int count) {
+    return new Callable<ByteBuffer>() {
+      public ByteBuffer call() {
+        final Work w = work.get();
+        if(floatModel == null)
+          return score(w, block, count);
+        for(int i = count*nInputs; --i >= 0; )
+          w.floatInputs[i] = (float) block[i];
+        return score(w, null, count);
+      }
+    };
+  }
+
+  private Callable<ByteBuffer> task(final Dataset dataset, final int from,
+      final int count) {
+    return new Callable<ByteBuffer>() {
+      public ByteBuffer call() {
+        final Work w = work.get();
+        for(int i = 0; i < count; i++)
+          dataset.copyInput(from+i, w.inputs, i*nInputs);
+        if(floatModel != null)
+          for(int i = count*nInputs; --i >= 0; )
+            w.floatInputs[i] = (float) w.inputs[i];
+        return score(w, w.inputs, count);
+      }
+    };
+  }
+
+  // score a block of count rows. a single precision model reads its
+  // inputs from w.floatInputs.
+  private ByteBuffer score(final Work w, final double[] inputs,
+      final int count) {
+    final int values = count*nOutputs;
+    if(floatModel != null) {
+      floatModel.predict(w.floatInputs, w.floatOutputs, count,
+          w.floatScratch);
+      if(binary) {
+        final ByteBuffer bb = ByteBuffer.allocate(values*4)
+            .order(ByteOrder.LITTLE_ENDIAN);
+        bb.asFloatBuffer().put(w.floatOutputs, 0, values);
+        return bb;
+      }
+      for(int i = values; --i >= 0; )
+        w.outputs[i] = w.floatOutputs[i];
+    } else {
+      model.predict(inputs, w.outputs, count, w.scratch);
+      if(binary) {
+        final ByteBuffer bb = ByteBuffer.allocate(values*8)
+            .order(ByteOrder.LITTLE_ENDIAN);
+        bb.asDoubleBuffer().put(w.outputs, 0, values);
+        return bb;
+      }
+    }
+    final byte[] buf = new byte[values*(Util.MAX_FIXED_LENGTH+1)];
+    int pos = 0;
+    for(int i = 0; i < count; i++) {
+      final int o = i*nOutputs;
+      for(int j = 0; j < nOutputs; j++) {
+        if(j > 0)
+          buf[pos++] = DELIMITER;
+        pos = Util.formatFixed(w.outputs[o+j], decimals, buf, pos);
+      }
+      buf[pos++] = '\n';
+    }
+    return ByteBuffer.wrap(buf, 0, pos);
+  }
+}
@@ -0,0 +1,234 @@
+package net.parasec.nn.network;
+
+import net.parasec.nn.logging.Logger;
+import net.parasec.nn.util.Kernels;
+import net.parasec.nn.util.MathUtil;
+
+import java.util.Arrays;
+import java.util.Random;
+
+
+/**
+ * single precision (float32) feed-forward neural network.
+ *
+ * same packed layout and stochastic backpropagation as ANN, with weights,
+ * momentum and neuron outputs held as floats: half the memory and memory
+ * bandwidth, and twice the simd lanes per kernel operation.
+ */
+public final class FloatANN {
+  private final static Logger LOG = Logger.getLogger(FloatANN.class);
+
+
+  // packed network weights. see ANN.
+  private final float[] weights;
+  private final int[] weightOffsets;
+
+  // neuron outputs. one contiguous array per layer.
+  private final float[][] outputs;
+
+  // neuron errors.
+  private final float[][] deltas;
+
+  // previous weight change. same layout as weights.
+  private final float[] preDW;
+
+  // activation function of each layer (excluding the input layer).
+  private final Activation[] activations;
+
+  // network structure
+  private final int[] structure;
+  private final int nLayers, nOutputs;
+
+
+  public FloatANN(final double min, final double max, final int[] structure,
+      final Random prng) {
+    this(min, max, structure, Activation.layers(structure,
+        Activation.SIGMOID, Activation.SIGMOID), prng);
+  }
+
+  public FloatANN(final double min, final double max, final int[] structure,
+      final Activation[] activations, final Random prng) {
+    this(structure, activations);
+    for(int i = nLayers; --i >= 0; ) {
+      final int stride = structure[i]+1;
+      for(int j = structure[i+1]; --j >= 0; ) {
+        final int row = weightOffsets[i]+j*stride;
+        for(int k = stride; --k >= 0; )
+          weights[row+k] = (float) MathUtil.getRandom(prng, min, max);
+      }
+    }
+  }
+
+  public FloatANN(final float[][][] weights) {
+    this(weights, Activation.parse(null, weights.length));
+  }
+
+  public FloatANN(final float[][][] weights,
+      final Activation[] activations) {
+    this(structure(weights), activations);
+    initialiseWeights(weights);
+  }
+
+  private FloatANN(final int[] structure, final Activation[] activations) {
+    ANN.checkActivations(structure, activations);
+    this.structure = structure;
+    this.activations = activations;
+    nLayers = structure.length-1;
+    nOutputs = structure[nLayers];
+    LOG.info("initialising float network with structure: " +
+        Arrays.toString(structure));
+    outputs = new float[structure.length][];
+    for(int i = outputs.length; --i >= 0; )
+      outputs[i] = new float[structure[i]];
+    deltas = new float[nLayers][];
+    for(int i = deltas.length; --i >= 0; )
+      deltas[i] = new float[structure[i+1]];
+    weightOffsets = ANN.weightOffsets(structure);
+    weights = new float[weightOffsets[nLayers]];
+    preDW = new float[weights.length];
+  }
+
+  public float[] feedForward(final float[] instance) {
+    final float[] weights = this.weights;
+    outputs[0] = instance;
+    for(int i = 1; i < outputs.length; i++) {
+      final float[] in = outputs[i-1];
+      final float[] out = outputs[i];
+      final int inputs = structure[i-1];
+      final int stride = inputs+1;
+      int row = weightOffsets[i-1];
+      for(int j = 0, len = out.length; j < len; j++, row += stride)
+        out[j] = weights[row]+Kernels.dot(weights, row+1, in, 0, inputs);
+      activations[i-1].apply(out, 0, out.length);
+    }
+    return outputs[nLayers];
+  }
+
+  public void backPropagateError(final float[] desiredOutput,
+      final float learningRate, final float momentum) {
+    calculateError(desiredOutput);
+    final float[] weights = this.weights;
+    final float[] preDW = this.preDW;
+    for(int i = nLayers; --i >= 0; ) {
+      final float[] in = outputs[i];
+      final float[] delta = deltas[i];
+      final int inputs = structure[i];
+      final int stride = inputs+1;
+      for(int j = delta.length; --j >= 0; ) {
+        final int row = weightOffsets[i]+j*stride;
+        final float d = delta[j];
+        final float dwBias = (learningRate*d)+(momentum*preDW[row]);
+        weights[row] += dwBias;
+        preDW[row] = dwBias;
+        Kernels.update(learningRate, d, in, 0, momentum, preDW, weights,
+            row+1, inputs);
+      }
+    }
+  }
+
+  /**
+   * [layer][neuron][weight] copy of the network weights.
+   */
+  public float[][][] getWeights() {
+    return cloneWeights();
+  }
+
+  public float[][][] cloneWeights() {
+    final float[][][] networkWeights = new float[nLayers][][];
+    for(int i = nLayers; --i >= 0; ) {
+      final int stride = structure[i]+1;
+      final float[][] layer = new float[structure[i+1]][];
+      for(int j = layer.length; --j >= 0; ) {
+        final int row = weightOffsets[i]+j*stride;
+        layer[j] = Arrays.copyOfRange(weights, row, row+stride);
+      }
+      networkWeights[i] = layer;
+    }
+    return networkWeights;
+  }
+
+  /**
+   * load a [layer][neuron][weight] matrix into the packed weights and reset
+   * the momentum state.
+   */
+  public void initialiseWeights(final float[][][] weights) {
+    for(int i = nLayers; --i >= 0; ) {
+      final int stride = structure[i]+1;
+      for(int j = structure[i+1]; --j >= 0; )
+        System.arraycopy(weights[i][j], 0, this.weights,
+            weightOffsets[i]+j*stride, stride);
+    }
+    Arrays.fill(preDW, 0);
+  }
+
+  /**
+   * copy the packed weights into snapshot (at least as long as the packed
+   * weight array). nothing is allocated, so a trainer can keep the best
+   * weights so far in one preallocated buffer.
+   */
+  public void snapshotWeights(final float[] snapshot) {
+    System.arraycopy(weights, 0, snapshot, 0, weights.length);
+  }
+
+  /**
+   * load packed weights taken with snapshotWeights and reset the momentum
+   * state, in place.
+   */
+  public void restoreWeights(final float[] snapshot) {
+    System.arraycopy(snapshot, 0, weights, 0, weights.length);
+    Arrays.fill(preDW, 0);
+  }
+
+  public float[] getPackedWeights() {
+    return weights;
+  }
+
+  public int[] getStructure() {
+    return structure;
+  }
+
+  public Activation[] getActivations() {
+    return activations;
+  }
+
+  private void calculateError(final float[] desiredOutput) {
+    final float[] weights = this.weights;
+    final float[] out = outputs[nLayers];
+    final float[] outDelta = deltas[nLayers-1];
+    for(int i = nOutputs; --i >= 0; )
+      outDelta[i] = desiredOutput[i]-out[i];
+    activations[nLayers-1].derive(out, 0, outDelta, 0, nOutputs);
+    for(int i = nLayers-1; --i >= 0; ) {
+      final float[] delta = deltas[i];
+      final float[] next = deltas[i+1];
+      final float[] o = outputs[i+1];
+      final int neurons = delta.length;
+      final int stride = neurons+1;
+      final int offset = weightOffsets[i+1];
+      Arrays.fill(delta, 0);
+      for(int k = next.length; --k >= 0; )
+        Kernels.axpy(next[k], weights, offset+k*stride+1, delta, 0, neurons);
+      activations[i].derive(o, 0, delta, 0, neurons);
+    }
+  }
+
+  static float[] pack(final float[][][] weights, final int[] structure) {
+    final int[] offsets = ANN.weightOffsets(structure);
+    final float[] packed = new float[offsets[offsets.length-1]];
+    for(int i = weights.length; --i >= 0; ) {
+      final int stride = structure[i]+1;
+      for(int j = structure[i+1]; --j >= 0; )
+        System.arraycopy(weights[i][j], 0, packed, offsets[i]+j*stride, 
+            stride);
+    }
+    return packed;
+  }
+
+  static int[] structure(final float[][][] weights) {
+    final int[] structure = new int[weights.length+1];
+    structure[0] = weights[0][0].length-1;
+    for(int i = 0, len = weights.length; i < len; i++)
+      structure[i+1] = weights[i].length;
+    return structure;
+  }
+}
@@ -0,0 +1,188 @@
+package net.parasec.nn.network;
+
+import net.parasec.nn.util.IO;
+import net.parasec.nn.util.Kernels;
+import net.parasec.nn.util.ModelFile;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * immutable, read-only single precision network for inference.
+ * the float32 counterpart of Model: same thread-safety and scratch space
+ * rules, half the weight and activation footprint.
+ */
+public final class FloatModel {
+
+  // instances pushed through a layer together (see ANN).
+  private static final int BLOCK = 16;
+
+  // packed weights. see ANN for the layout.
+  private final float[] weights;
+  private final int[] weightOffsets;
+  private final int[] structure;
+  private final Activation[] activations;
+  private final int nLayers;
+
+  private final ThreadLocal<Scratch> scratch = new ThreadLocal<Scratch>() {
+    protected Scratch initialValue() {
+      return newScratch();
+    }
+  };
+
+
+  /**
+   * per-thread intermediate layer outputs for up to capacity instances.
+   */
+  public static final class Scratch {
+    private final int capacity;
+    private final float[][] outputs;
+
+    private Scratch(final int[] structure, final int capacity) {
+      this.capacity = capacity;
+      outputs = new float[structure.length-1][];
+      for(int i = 1, len = structure.length-1; i < len; i++)
+        outputs[i] = new float[capacity*structure[i]];
+    }
+
+    public int capacity() {
+      return capacity;
+    }
+  }
+
+  /**
+   * snapshot of the current weights of a network.
+   */
+  public FloatModel(final FloatANN ann) {
+    this(ann.getStructure().clone(), ann.getPackedWeights().clone(),
+        ann.getActivations().clone());
+  }
+
+  /**
+   * sigmoid model from a [layer][neuron][weight] matrix.
+   */
+  public FloatModel(final float[][][] weights) {
+    this(weights, Activation.parse(null, weights.length));
+  }
+
+  public FloatModel(final float[][][] weights,
+      final Activation[] activations) {
+    this(FloatANN.structure(weights),
+        FloatANN.pack(weights, FloatANN.structure(weights)),
+        activations.clone());
+  }
+
+  private FloatModel(final int[] structure, final float[] weights,
+      final Activation[] activations) {
+    ANN.checkActivations(structure, activations);
+    this.structure = structure;
+    this.weights = weights;
+    this.activations = activations;
+    weightOffsets = ANN.weightOffsets(structure);
+    nLayers = structure.length-1;
+  }
+
+  /**
+   * load a model from a weights file (see IO). double precision weights are
+   * narrowed.
+   */
+  public static FloatModel load(final String file) {
+    // a model file is mapped (and checksummed) and its packed weights
+    // copied out in one block, narrowed if need be.
+    if(ModelFile.isModel(file)) {
+      try {
+        final ModelFile model = ModelFile.open(file);
+        final int[] structure = model.getStructure();
+        return new FloatModel(structure, model.getFloatWeights(),
+            Activation.parse(model.getActivations(), structure.length-1));
+      } catch(final IOException e) {
+        throw new IllegalArgumentException("could not load weights: " + 
+            file, e);
+      }
+    }
+    // the old format: weights and names read with one open.
+    final IO.Weights model = IO.loadModel(file);
+    if(model == null)
+      throw new IllegalArgumentException("could not load weights: " + file);
+    final float[][][] weights = model.getFloatWeights();
+    return new FloatModel(weights,
+        Activation.parse(model.getActivations(), weights.length));
+  }
+
+  public int[] getStructure() {
+    return structure.clone();
+  }
+
+  public Activation[] getActivations() {
+    return activations.clone();
+  }
+
+  public int getInputs() {
+    return structure[0];
+  }
+
+  public int getOutputs() {
+    return structure[nLayers];
+  }
+
+  public Scratch newScratch() {
+    return newScratch(1);
+  }
+
+  /**
+   * scratch space for predicting blocks of up to capacity instances.
+   */
+  public Scratch newScratch(final int capacity) {
+    return new Scratch(structure, capacity);
+  }
+
+  /**
+   * feed-forward an input vector using a thread-local scratch space.
+   * the network output is written to output, which is returned.
+   */
+  public float[] predict(final float[] input, final float[] output) {
+    return predict(input, output, 1, scratch.get());
+  }
+
+  /**
+   * feed-forward a block of count instances (see Model).
+   */
+  public float[] predict(final float[] inputs, final float[] outputs,
+      final int count, final Scratch scratch) {
+    if(count > scratch.capacity)
+      throw new IllegalArgumentException("block of " + count +
+          " instances > scratch capacity " + scratch.capacity);
+    final float[][] layers = scratch.outputs;
+    float[] in = inputs;
+    for(int i = 1; i <= nLayers; i++) {
+      final float[] out = i == nLayers ? outputs : layers[i];
+      layer(i, in, out, count);
+      in = out;
+    }
+    return outputs;
+  }
+
+  // layer i for count instances from the previous layer's outputs.
+  private void layer(final int i, final float[] in, final float[] out,
+      final int count) {
+    final float[] weights = this.weights;
+    final int inputs = structure[i-1];
+    final int neurons = structure[i];
+    final int stride = inputs+1;
+    final int offset = weightOffsets[i-1];
+    for(int b = 0; b < count; b += BLOCK) {
+      final int end = Math.min(b+BLOCK, count);
+      for(int j = 0, row = offset; j < neurons; j++, row += stride) {
+        final float bias = weights[row];
+        for(int n = b; n < end; n++)
+          out[n*neurons+j]
+              = bias+Kernels.dot(weights, row+1, in, n*inputs, inputs);
+      }
+    }
+    activations[i-1].apply(out, 0, count*neurons);
+  }
+
+  public String toString() {
+    return "float model " + Arrays.toString(structure);
+  }
+}
@@ -0,0 +1,206 @@
+package net.parasec.nn.network;
+
+import net.parasec.nn.util.IO;
+import net.parasec.nn.util.Kernels;
+import net.parasec.nn.util.ModelFile;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * immutable, read-only feed-forward network for inference.
+ *
+ * unlike ANN, a model holds no per-call state: predictions are written to a
+ * caller supplied output buffer and intermediate layer outputs go to a
+ * scratch space owned by the caller (or a thread-local one). a single model
+ * can therefore be shared by any number of threads without copying the
+ * weights, allocating or locking.
+ */
+public final class Model {
+
+  // instances pushed through a layer together (see ANN).
+  private static final int BLOCK = 16;
+
+  // packed weights. see ANN for the layout.
+  private final double[] weights;
+  private final int[] weightOffsets;
+  private final int[] structure;
+  private final Activation[] activations;
+  private final int nLayers;
+
+  private final ThreadLocal<Scratch> scratch = new ThreadLocal<Scratch>() {
+    protected Scratch initialValue() {
+      return newScratch();
+    }
+  };
+
+
+  /**
+   * per-thread intermediate layer outputs for up to capacity instances.
+   */
+  public static final class Scratch {
+    private final int capacity;
+    private final double[][] outputs;
+
+    private Scratch(final int[] structure, final int capacity) {
+      this.capacity = capacity;
+      outputs = new double[structure.length-1][];
+      for(int i = 1, len = structure.length-1; i < len; i++)
+        outputs[i] = new double[capacity*structure[i]];
+    }
+
+    public int capacity() {
+      return capacity;
+    }
+  }
+
+  /**
+   * snapshot of the current weights of a network.
+   */
+  public Model(final ANN ann) {
+    this(ann.getStructure().clone(), ann.getPackedWeights().clone(),
+        ann.getActivations().clone());
+  }
+
+  /**
+   * sigmoid model from a [layer][neuron][weight] matrix.
+   */
+  public Model(final double[][][] weights) {
+    this(weights, Activation.parse(null, weights.length));
+  }
+
+  /**
+   * model from a [layer][neuron][weight] matrix with the given activation
+   * for each layer.
+   */
+  public Model(final double[][][] weights, final Activation[] activations) {
+    this(ANN.structure(weights), 
+        ANN.pack(weights, ANN.structure(weights)), activations.clone());
+  }
+
+  private Model(final int[] structure, final double[] weights,
+      final Activation[] activations) {
+    ANN.checkActivations(structure, activations);
+    this.structure = structure;
+    this.weights = weights;
+    this.activations = activations;
+    weightOffsets = ANN.weightOffsets(structure);
+    nLayers = structure.length-1;
+  }
+
+  /**
+   * load a model from a weights file (see IO).
+   */
+  public static Model load(final String file) {
+    // a model file is mapped (and checksummed) and its packed weights
+    // copied out in one block.
+    if(ModelFile.isModel(file)) {
+      try {
+        final ModelFile model = ModelFile.open(file);
+        final int[] structure = model.getStructure();
+        return new Model(structure, model.getWeights(), Activation.parse(
+            model.getActivations(), structure.length-1));
+      } catch(final IOException e) {
+        throw new IllegalArgumentException("could not load weights: " + 
+            file, e);
+      }
+    }
+    // the old format: weights and names read with one open.
+    final IO.Weights model = IO.loadModel(file);
+    if(model == null)
+      throw new IllegalArgumentException("could not load weights: " + file);
+    final double[][][] weights = model.getWeights();
+    return new Model(weights, 
+        Activation.parse(model.getActivations(), weights.length));
+  }
+
+  public int[] getStructure() {
+    return structure.clone();
+  }
+
+  public Activation[] getActivations() {
+    return activations.clone();
+  }
+
+  public int getInputs() {
+    return structure[0];
+  }
+
+  public int getOutputs() {
+    return structure[nLayers];
+  }
+
+  public Scratch newScratch() {
+    return newScratch(1);
+  }
+
+  /**
+   * scratch space for predicting blocks of up to capacity instances.
+   */
+  public Scratch newScratch(final int capacity) {
+    return new Scratch(structure, capacity);
+  }
+
+  /**
+   * feed-forward an input vector using a thread-local scratch space.
+   * the network output is written to output, which is returned.
+   */
+  public double[] predict(final double[] input, final double[] output) {
+    return predict(input, output, 1, scratch.get());
+  }
+
+  /**
+   * feed-forward an input vector using the given scratch space, which must
+   * not be used concurrently by another thread.
+   */
+  public double[] predict(final double[] input, final double[] output,
+      final Scratch scratch) {
+    return predict(input, output, 1, scratch);
+  }
+
+  /**
+   * feed-forward a block of count instances.
+   * inputs is a row-major [instance][input] matrix, the network outputs are
+   * written row-major to outputs. each layer is computed as a blocked
+   * matrix-matrix product. the scratch space must hold count instances and
+   * must not be used concurrently by another thread.
+   */
+  public double[] predict(final double[] inputs, final double[] outputs,
+      final int count, final Scratch scratch) {
+    if(count > scratch.capacity)
+      throw new IllegalArgumentException("block of " + count + 
+          " instances > scratch capacity " + scratch.capacity);
+    final double[][] layers = scratch.outputs;
+    double[] in = inputs;
+    for(int i = 1; i <= nLayers; i++) {
+      final double[] out = i == nLayers ? outputs : layers[i];
+      layer(i, in, out, count);
+      in = out;
+    }
+    return outputs;
+  }
+
+  // layer i for count instances from the previous layer's outputs.
+  private void layer(final int i, final double[] in, final double[] out,
+      final int count) {
+    final double[] weights = this.weights;
+    final int inputs = structure[i-1];
+    final int neurons = structure[i];
+    final int stride = inputs+1;
+    final int offset = weightOffsets[i-1];
+    for(int b = 0; b < count; b += BLOCK) {
+      final int end = Math.min(b+BLOCK, count);
+      for(int j = 0, row = offset; j < neurons; j++, row += stride) {
+        final double bias = weights[row];
+        for(int n = b; n < end; n++)
+          out[n*neurons+j]
+              = bias+Kernels.dot(weights, row+1, in, n*inputs, inputs);
+      }
+    }
+    activations[i-1].apply(out, 0, count*neurons);
+  }
+
+  public String toString() {
+    return "model " + Arrays.toString(structure);
+  }
+}
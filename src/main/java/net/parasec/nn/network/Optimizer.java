@@ -0,0 +1,245 @@
+package net.parasec.nn.network;
+
+import net.parasec.nn.util.Kernels;
+
+import java.util.Arrays;
+
+/**
+ * weight update rule of a network, with its per-weight state.
+ *
+ * the state is allocated once, as a single contiguous array of states
+ * blocks of one value per weight, in the packed weight layout (state s of
+ * weight k is at s*size+k). updates allocate nothing.
+ *
+ * an update is given the descent direction of each weight: learning
+ * rate * scale * x[i] is the plain gradient descent step (see Kernels). the
+ * momentum argument is only used by the momentum rules.
+ *
+ *   momentum  classical momentum (the default): dw = lr*g + mo*dw.
+ *   nesterov  nesterov momentum: v = mo*v + lr*g, dw = mo*v + lr*g.
+ *   rmsprop   g scaled by a running rms of g (decay 0.9).
+ *   adam      bias corrected running mean of g over running rms of g
+ *             (beta1 0.9, beta2 0.999). typically lr ~ 0.001.
+ */
+public abstract class Optimizer {
+
+  // numerical stability term of the adaptive rules.
+  static final double EPSILON = 1e-8;
+
+  protected final int size;
+  protected final double[] state;
+
+  // number of updates (instances, batches or hogwild passes) so far.
+  protected long step;
+
+
+  protected Optimizer(final int size, final int states) {
+    this.size = size;
+    state = new double[states*size];
+  }
+
+  /**
+   * the rule by (case insensitive) name for a network of size weights.
+   * "sgd" is the momentum rule.
+   */
+  public static Optimizer create(final String name, final int size) {
+    final String rule = name.trim().toLowerCase();
+    if(rule.equals("momentum") || rule.equals("sgd"))
+      return new Momentum(size);
+    if(rule.equals("nesterov"))
+      return new Nesterov(size);
+    if(rule.equals("rmsprop"))
+      return new RMSProp(size);
+    if(rule.equals("adam"))
+      return new Adam(size);
+    throw new IllegalArgumentException("unknown optimizer: " + name);
+  }
+
+  public abstract String getName();
+
+  /**
+   * start an update (of one instance or one batch, or of a whole hogwild
+   * pass: see ANN.update(Batch, double, double)).
+   */
+  public void step() {
+    step++;
+  }
+
+  /**
+   * update w[wOff+i] for i in [0, n), given the descent direction
+   * scale*x[xOff+i].
+   */
+  public abstract void update(double learningRate, double momentum,
+      double scale, double[] x, int xOff, double[] w, int wOff, int n);
+
+  /**
+   * forget the state (e.g., when the weights are replaced).
+   */
+  public void reset() {
+    Arrays.fill(state, 0);
+    step = 0;
+  }
+
+  /**
+   * number of state values (a multiple of the number of weights).
+   */
+  public int getStateSize() {
+    return state.length;
+  }
+
+  public long getStep() {
+    return step;
+  }
+
+  /**
+   * copy the state into snapshot, e.g., to checkpoint training.
+   */
+  public void snapshot(final double[] snapshot) {
+    System.arraycopy(state, 0, snapshot, 0, state.length);
+  }
+
+  /**
+   * load a state taken with snapshot after step updates.
+   */
+  public void restore(final double[] snapshot, final long step) {
+    System.arraycopy(snapshot, 0, state, 0, state.length);
+    this.step = step;
+  }
+
+  public String toString() {
+    return getName();
+  }
+
+  /**
+   * classical momentum. the state is the last weight change.
+   */
+  static final class Momentum extends Optimizer {
+
+    Momentum(final int size) {
+      super(size, 1);
+    }
+
+    public String getName() {
+      return "momentum";
+    }
+
+    public void update(final double learningRate, final double momentum,
+        final double scale, final double[] x, final int xOff,
+        final double[] w, final int wOff, final int n) {
+      Kernels.update(learningRate, scale, x, xOff, momentum, state, w, wOff,
+          n);
+    }
+  }
+
+  /**
+   * nesterov momentum, in the form which only needs the gradient at the
+   * current weights (sutskever et al. 2013). the state is the velocity.
+   */
+  static final class Nesterov extends Optimizer {
+
+    Nesterov(final int size) {
+      super(size, 1);
+    }
+
+    public String getName() {
+      return "nesterov";
+    }
+
+    public void update(final double learningRate, final double momentum,
+        final double scale, final double[] x, final int xOff,
+        final double[] w, final int wOff, final int n) {
+      final double[] v = state;
+      for(int i = 0; i < n; i++) {
+        final int k = wOff+i;
+        final double g = learningRate*(scale*x[xOff+i]);
+        final double vk = momentum*v[k]+g;
+        v[k] = vk;
+        w[k] += momentum*vk+g;
+      }
+    }
+  }
+
+  /**
+   * rmsprop (hinton). the state is the running mean of g^2.
+   */
+  static final class RMSProp extends Optimizer {
+    private static final double DECAY = 0.9;
+
+    RMSProp(final int size) {
+      super(size, 1);
+    }
+
+    public String getName() {
+      return "rmsprop";
+    }
+
+    public void update(final double learningRate, final double momentum,
+        final double scale, final double[] x, final int xOff,
+        final double[] w, final int wOff, final int n) {
+      final double[] s = state;
+      for(int i = 0; i < n; i++) {
+        final int k = wOff+i;
+        final double g = scale*x[xOff+i];
+        final double sk = DECAY*s[k]+(1-DECAY)*g*g;
+        s[k] = sk;
+        w[k] += learningRate*g/(Math.sqrt(sk)+EPSILON);
+      }
+    }
+  }
+
+  /**
+   * adam (kingma and ba 2014). the state is the running mean of g followed
+   * by the running mean of g^2.
+   */
+  static final class Adam extends Optimizer {
+    private static final double BETA1 = 0.9, BETA2 = 0.999;
+
+    // bias corrections 1/(1-beta^step).
+    private double c1 = 1, c2 = 1;
+
+    Adam(final int size) {
+      super(size, 2);
+    }
+
+    public String getName() {
+      return "adam";
+    }
+
+    public void step() {
+      super.step();
+      corrections();
+    }
+
+    public void reset() {
+      super.reset();
+      c1 = c2 = 1;
+    }
+
+    public void restore(final double[] snapshot, final long step) {
+      super.restore(snapshot, step);
+      corrections();
+    }
+
+    private void corrections() {
+      c1 = 1/(1-Math.pow(BETA1, step));
+      c2 = 1/(1-Math.pow(BETA2, step));
+    }
+
+    public void update(final double learningRate, final double momentum,
+        final double scale, final double[] x, final int xOff,
+        final double[] w, final int wOff, final int n) {
+      final double[] m = state;
+      final int v = size;
+      final double c1 = this.c1, c2 = this.c2;
+      for(int i = 0; i < n; i++) {
+        final int k = wOff+i;
+        final double g = scale*x[xOff+i];
+        final double mk = BETA1*m[k]+(1-BETA1)*g;
+        final double vk = BETA2*m[v+k]+(1-BETA2)*g*g;
+        m[k] = mk;
+        m[v+k] = vk;
+        w[k] += learningRate*(mk*c1)/(Math.sqrt(vk*c2)+EPSILON);
+      }
+    }
+  }
+}
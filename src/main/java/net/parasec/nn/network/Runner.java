@@ -1,32 +1,107 @@
 package net.parasec.nn.network;
 
 import net.parasec.nn.logging.Logger;
-import net.parasec.nn.util.IO;
+import net.parasec.nn.util.Options;
 import net.parasec.nn.util.Util;
 import net.parasec.nn.training.DataLoader;
-import net.parasec.nn.training.TrainingInstance;
+import net.parasec.nn.training.Dataset;
+import net.parasec.nn.training.FloatTrainingInstance;
+import net.parasec.nn.training.MappedDataset;
 
-import java.util.List;
+import java.io.IOException;
+import java.util.Arrays;
 
 
 public final class Runner {
   private static final Logger LOG = Logger.getLogger(Runner.class);
   public static void main(String[] args) {
-    final String weightFile = args[0];
-    final String dataFile = args[1];
-    final double[][][] weights = IO.loadWeights(weightFile); 
-    final ANN ann = new ANN(weights);
-    final int outputNodes = weights[weights.length-1].length;
-    final DataLoader dl = new DataLoader();
-    final List<TrainingInstance> tiList = dl.loadCsv(dataFile, outputNodes);
-    for(final TrainingInstance trainingInstance : tiList) { 
-      final double[] inputVector = trainingInstance.getInputVector();
-      final double[] outputVector = trainingInstance.getOutputVector();
-      final double[] networkOutput = ann.feedForward(inputVector);
-      LOG.info("in = " + Util.vectorToString(inputVector) + 
-               " out = " + Util.vectorToString(outputVector) + 
-               " net = " + Util.vectorToString(networkOutput));
+    final Options options = new Options(args, "weights", "file")
+        .accept("output", "format", "block", "threads", "precision",
+            "decimals");
+    final String weightFile = options.getString("weights");
+    final String dataFile = options.getString("file");
+    final boolean single = "float".equals(options.getString("precision",
+        "double"));
+    if(single) {
+      runFloat(options, weightFile, dataFile);
+      return;
+    }
+    final Model model = Model.load(weightFile);
+    if(options.has("output")) {
+      // batch scoring: stream the data through the model into a file.
+      final BatchScorer scorer = new BatchScorer(model,
+          options.getInt("threads",
+              Runtime.getRuntime().availableProcessors()),
+          options.getInt("block", 256),
+          "binary".equals(options.getString("format", "csv")),
+          options.getInt("decimals", 6));
+      score(scorer, dataFile, options.getString("output"));
+      return;
+    }
+    final int outputNodes = model.getOutputs();
+    final double[] networkOutput = new double[outputNodes];
+    final DataLoader dl = new DataLoader(options.getInt("threads",
+        Runtime.getRuntime().availableProcessors()));
+    // a binary dataset is read straight from the mapping.
+    final Dataset dataset = dl.loadDataset(dataFile, outputNodes);
+    if(dataset == null)
+      return;
+    final double[] inputVector = new double[dataset.inputs()];
+    final double[] outputVector = new double[outputNodes];
+    for(int i = 0, len = dataset.size(); i < len; i++) {
+      dataset.copyInput(i, inputVector, 0);
+      dataset.copyOutput(i, outputVector, 0);
+      model.predict(inputVector, networkOutput);
+      if(LOG.isInfoEnabled())
+        LOG.info("in = " + Util.vectorToString(inputVector) +
+                 " out = " + Util.vectorToString(outputVector) +
+                 " net = " + Util.vectorToString(networkOutput));
+    }
+  }
+
+  /**
+   * single precision inference. either weights file format can be used.
+   */
+  private static void runFloat(final Options options, final String weightFile,
+      final String dataFile) {
+    final FloatModel model = FloatModel.load(weightFile);
+    if(options.has("output")) {
+      final BatchScorer scorer = new BatchScorer(model,
+          options.getInt("threads",
+              Runtime.getRuntime().availableProcessors()),
+          options.getInt("block", 256),
+          "binary".equals(options.getString("format", "csv")),
+          options.getInt("decimals", 6));
+      score(scorer, dataFile, options.getString("output"));
+      return;
+    }
+    final float[] networkOutput = new float[model.getOutputs()];
+    final DataLoader dl = new DataLoader(options.getInt("threads",
+        Runtime.getRuntime().availableProcessors()));
+    for(final FloatTrainingInstance trainingInstance
+        : dl.loadFloat(dataFile, model.getOutputs())) {
+      final float[] inputVector = trainingInstance.getInputVector();
+      model.predict(inputVector, networkOutput);
+      if(LOG.isInfoEnabled())
+        LOG.info("in = " + Arrays.toString(inputVector) +
+                 " out = " + 
+                 Arrays.toString(trainingInstance.getOutputVector()) +
+                 " net = " + Arrays.toString(networkOutput));
     }
   }
-}
 
+  /**
+   * score a csv or, straight from the mapping, a binary dataset.
+   */
+  private static void score(final BatchScorer scorer, final String dataFile,
+      final String output) {
+    try {
+      if(MappedDataset.isDataset(dataFile))
+        scorer.score(MappedDataset.open(dataFile), output);
+      else
+        scorer.score(dataFile, output);
+    } catch(final IOException e) {
+      LOG.error(e, e);
+    }
+  }
+}
@@ -0,0 +1,212 @@
+package net.parasec.nn.training;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * columnar in-memory dataset.
+ *
+ * the input vectors of all rows are packed into one double[] (row-major,
+ * stride inputs()) and the output vectors into another, rather than held as
+ * a TrainingInstance (an object and two arrays) per row. an epoch over the
+ * rows is a sequential scan of 2 arrays and the garbage collector has 2
+ * objects to trace instead of 3 per row.
+ *
+ * a dataset may be a window of rows [offset, offset+size) of its arrays,
+ * shared with other windows (see range).
+ */
+public final class ArrayDataset implements Dataset {
+  private final double[] inputData, outputData;
+  private final int offset, size, nInputs, nOutputs;
+
+
+  /**
+   * rows of packed input and output vectors.
+   */
+  public ArrayDataset(final double[] inputData, final double[] outputData,
+      final int inputs, final int outputs) {
+    this(inputData, outputData, 0, inputData.length/inputs, inputs, outputs);
+    if(inputData.length != size*inputs || outputData.length != size*outputs)
+      throw new IllegalArgumentException(inputData.length + " inputs and " +
+          outputData.length + " outputs are not whole rows of " + inputs +
+          "+" + outputs);
+  }
+
+  private ArrayDataset(final double[] inputData, final double[] outputData,
+      final int offset, final int size, final int inputs, final int outputs) {
+    this.inputData = inputData;
+    this.outputData = outputData;
+    this.offset = offset;
+    this.size = size;
+    this.nInputs = inputs;
+    this.nOutputs = outputs;
+  }
+
+  /**
+   * copy of the rows of any dataset.
+   */
+  public static ArrayDataset copyOf(final Dataset dataset) {
+    final int len = dataset.size();
+    final int inputs = dataset.inputs();
+    final int outputs = dataset.outputs();
+    final double[] in = new double[len*inputs];
+    final double[] out = new double[len*outputs];
+    for(int i = 0; i < len; i++) {
+      dataset.copyInput(i, in, i*inputs);
+      dataset.copyOutput(i, out, i*outputs);
+    }
+    return new ArrayDataset(in, out, 0, len, inputs, outputs);
+  }
+
+  /**
+   * copy of the rows of each dataset in turn.
+   */
+  public static ArrayDataset concat(final List<? extends Dataset> datasets) {
+    final Dataset first = datasets.get(0);
+    if(datasets.size() == 1 && first instanceof ArrayDataset &&
+        ((ArrayDataset) first).trimmed())
+      return (ArrayDataset) first;
+    final int inputs = first.inputs();
+    final int outputs = first.outputs();
+    int len = 0;
+    for(final Dataset d : datasets) {
+      if(d.inputs() != inputs || d.outputs() != outputs)
+        throw new IllegalArgumentException("rows of " + d.inputs() + "+" +
+            d.outputs() + " values, expected " + inputs + "+" + outputs);
+      len += d.size();
+    }
+    final double[] in = new double[len*inputs];
+    final double[] out = new double[len*outputs];
+    int row = 0;
+    for(final Dataset d : datasets) {
+      if(d instanceof ArrayDataset) {
+        final ArrayDataset a = (ArrayDataset) d;
+        System.arraycopy(a.inputData, a.offset*inputs, in, row*inputs,
+            a.size*inputs);
+        System.arraycopy(a.outputData, a.offset*outputs, out, row*outputs,
+            a.size*outputs);
+        row += a.size;
+      } else {
+        for(int i = 0, n = d.size(); i < n; i++, row++) {
+          d.copyInput(i, in, row*inputs);
+          d.copyOutput(i, out, row*outputs);
+        }
+      }
+    }
+    return new ArrayDataset(in, out, 0, len, inputs, outputs);
+  }
+
+  // the whole of its arrays.
+  private boolean trimmed() {
+    return offset == 0 && inputData.length == size*nInputs &&
+        outputData.length == size*nOutputs;
+  }
+
+  /**
+   * rows [from, to) of this dataset, sharing its arrays.
+   */
+  public ArrayDataset range(final int from, final int to) {
+    if(from < 0 || to > size || from > to)
+      throw new IndexOutOfBoundsException("[" + from + ", " + to +
+          ") of " + size + " rows");
+    return new ArrayDataset(inputData, outputData, offset+from, to-from,
+        nInputs, nOutputs);
+  }
+
+  /**
+   * shuffle the rows in place. the same permutation as Collections.shuffle
+   * of a list of the rows with the same prng.
+   */
+  public void shuffle(final Random prng) {
+    for(int i = size; i > 1; i--)
+      swap(i-1, prng.nextInt(i));
+  }
+
+  /**
+   * reverse the order of the rows in place.
+   */
+  public void reverse() {
+    for(int i = 0, j = size-1; i < j; i++, j--)
+      swap(i, j);
+  }
+
+  private void swap(final int a, final int b) {
+    swap(inputData, (offset+a)*nInputs, (offset+b)*nInputs, nInputs);
+    swap(outputData, (offset+a)*nOutputs, (offset+b)*nOutputs, nOutputs);
+  }
+
+  private static void swap(final double[] v, final int a, final int b,
+      final int n) {
+    for(int i = n; --i >= 0; ) {
+      final double t = v[a+i];
+      v[a+i] = v[b+i];
+      v[b+i] = t;
+    }
+  }
+
+  public int size() {
+    return size;
+  }
+
+  public int inputs() {
+    return nInputs;
+  }
+
+  public int outputs() {
+    return nOutputs;
+  }
+
+  public void copyInput(final int row, final double[] dst, final int off) {
+    System.arraycopy(inputData, (offset+row)*nInputs, dst, off, nInputs);
+  }
+
+  public void copyOutput(final int row, final double[] dst, final int off) {
+    System.arraycopy(outputData, (offset+row)*nOutputs, dst, off, nOutputs);
+  }
+
+  /**
+   * appends rows to growing arrays.
+   */
+  public static final class Builder {
+    private final int nInputs, nOutputs;
+    private double[] inputData, outputData;
+    private int size;
+
+    public Builder(final int inputs, final int outputs) {
+      this.nInputs = inputs;
+      this.nOutputs = outputs;
+      inputData = new double[64*inputs];
+      outputData = new double[64*outputs];
+    }
+
+    /**
+     * append the row values[off..off+inputs+outputs): the input vector
+     * followed by the output vector.
+     */
+    public Builder add(final double[] values, final int off) {
+      if(size*nInputs == inputData.length) {
+        inputData = Arrays.copyOf(inputData, 2*inputData.length);
+        outputData = Arrays.copyOf(outputData, 2*outputData.length);
+      }
+      System.arraycopy(values, off, inputData, size*nInputs, nInputs);
+      System.arraycopy(values, off+nInputs, outputData, size*nOutputs,
+          nOutputs);
+      size++;
+      return this;
+    }
+
+    public int size() {
+      return size;
+    }
+
+    /**
+     * the rows so far. the arrays may have spare capacity: concat them to
+     * trim.
+     */
+    public ArrayDataset build() {
+      return new ArrayDataset(inputData, outputData, 0, size, nInputs,
+          nOutputs);
+    }
+  }
+}
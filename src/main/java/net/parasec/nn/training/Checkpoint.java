@@ -0,0 +1,342 @@
+package net.parasec.nn.training;
+
+import net.parasec.nn.network.ANN;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * the state of a training run after some number of epochs, from which it can
+ * be resumed: the weights and optimizer state, the best weights so far, the
+ * error history and, when reshuffling, the shuffle prng and the current
+ * order of the training rows.
+ *
+ * file format (java DataOutput):
+ *
+ *   int    magic    "NNCK"
+ *   int    version  2
+ *   int    layers, int [layers] structure
+ *   int    epochs trained
+ *   long   test set size
+ *   int    best epoch, double lowest testing rmse
+ *   int    weights, double [weights] weights
+ *   utf    optimizer, long optimizer steps
+ *   int    state length, double [state] optimizer state
+ *   bool   has best weights, double [weights] best weights
+ *   double [epochs] training rmse, testing rmse
+ *   int    prng state length (-1 none), byte [] serialised java.util.Random
+ *   int    rows (-1 none), int [rows] training row order
+ *   long   crc32 of everything before it
+ *
+ * a checkpoint is a preallocated buffer: the trainer copies its state into
+ * one (see Checkpointer) and a background thread writes it to a temporary
+ * file which is renamed over the last checkpoint, so a crash while writing
+ * leaves the previous checkpoint intact.
+ */
+final class Checkpoint {
+  static final int MAGIC = 0x4E4E434B;
+  static final int VERSION = 2;
+
+  private final int[] structure;
+  private final double[] weights, state, best;
+  private final double[] trainingError, testingError;
+  private int[] order;
+  private int epochs, bestEpoch, rows = -1;
+  private long testSize, steps;
+  private String optimizer;
+  private double lowestError;
+  private boolean hasBest;
+  private byte[] prng;
+
+
+  /**
+   * an empty checkpoint for a network, with room for the error history of
+   * maxEpochs epochs.
+   */
+  Checkpoint(final ANN ann, final int maxEpochs) {
+    this(ann.getStructure().clone(), ann.getPackedWeights().length,
+        ann.getOptimizer().getStateSize(), maxEpochs);
+    optimizer = ann.getOptimizer().getName();
+  }
+
+  private Checkpoint(final int[] structure, final int weights,
+      final int state, final int maxEpochs) {
+    this.structure = structure;
+    this.weights = new double[weights];
+    this.state = new double[state];
+    this.best = new double[weights];
+    trainingError = new double[maxEpochs];
+    testingError = new double[maxEpochs];
+  }
+
+  /**
+   * the file for fold f (1 based) of a k-fold run: name_ff.ext.
+   */
+  public static String fold(final String file, final int fold) {
+    final int dot = file.lastIndexOf('.');
+    final String suffix = "_" + String.format("%02d", fold);
+    return dot > file.lastIndexOf('/') ? file.substring(0, dot) + suffix +
+        file.substring(dot) : file + suffix;
+  }
+
+  /**
+   * copy the state after epochs epochs. nothing is allocated, other than for
+   * the prng state.
+   * @param best best weights so far, or null.
+   * @param order the training rows (when reshuffling), or null.
+   */
+  void save(final int epochs, final ANN ann, final double[] best,
+      final int bestEpoch, final double lowestError, final long testSize,
+      final double[] trainingError, final double[] testingError,
+      final Random prng, final DatasetView order) {
+    this.epochs = epochs;
+    ann.snapshotWeights(weights);
+    ann.getOptimizer().snapshot(state);
+    steps = ann.getOptimizer().getStep();
+    hasBest = best != null;
+    if(hasBest)
+      System.arraycopy(best, 0, this.best, 0, best.length);
+    this.bestEpoch = bestEpoch;
+    this.lowestError = lowestError;
+    this.testSize = testSize;
+    System.arraycopy(trainingError, 0, this.trainingError, 0, epochs);
+    System.arraycopy(testingError, 0, this.testingError, 0, epochs);
+    this.prng = prng != null ? serialise(prng) : null;
+    rows = order != null ? order.size() : -1;
+    if(order != null) {
+      if(this.order == null || this.order.length != rows)
+        this.order = new int[rows];
+      order.copyRows(this.order);
+    }
+  }
+
+  private static byte[] serialise(final Random prng) {
+    try {
+      final ByteArrayOutputStream b = new ByteArrayOutputStream(64);
+      final ObjectOutputStream out = new ObjectOutputStream(b);
+      out.writeObject(prng);
+      out.close();
+      return b.toByteArray();
+    } catch(final IOException e) {
+      throw new IllegalStateException("could not save prng state", e);
+    }
+  }
+
+  /**
+   * load weights and optimizer state into a network of the same structure
+   * and optimizer.
+   */
+  void restore(final ANN ann) {
+    if(!Arrays.equals(structure, ann.getStructure()))
+      throw new IllegalArgumentException("checkpoint of a " +
+          Arrays.toString(structure) + " network, not " +
+          Arrays.toString(ann.getStructure()));
+    if(!optimizer.equals(ann.getOptimizer().getName()))
+      throw new IllegalArgumentException("checkpoint trained with " +
+          optimizer + ", not " + ann.getOptimizer().getName());
+    ann.restoreWeights(weights);
+    ann.getOptimizer().restore(state, steps);
+  }
+
+  public int getEpochs() {
+    return epochs;
+  }
+
+  int getBestEpoch() {
+    return bestEpoch;
+  }
+
+  double getLowestError() {
+    return lowestError;
+  }
+
+  long getTestSize() {
+    return testSize;
+  }
+
+  /**
+   * best weights so far, or null.
+   */
+  double[] getBest() {
+    return hasBest ? best : null;
+  }
+
+  double[] getTrainingError() {
+    return trainingError;
+  }
+
+  double[] getTestingError() {
+    return testingError;
+  }
+
+  /**
+   * the shuffle prng in its saved state, or null.
+   */
+  Random getRandom() {
+    if(prng == null)
+      return null;
+    try {
+      final ObjectInputStream in
+          = new ObjectInputStream(new ByteArrayInputStream(prng));
+      try {
+        return (Random) in.readObject();
+      } finally {
+        in.close();
+      }
+    } catch(final IOException e) {
+      throw new IllegalStateException("bad prng state", e);
+    } catch(final ClassNotFoundException e) {
+      throw new IllegalStateException("bad prng state", e);
+    }
+  }
+
+  /**
+   * the order of the training rows, or null.
+   */
+  int[] getOrder() {
+    return rows >= 0 ? order : null;
+  }
+
+  /**
+   * write to file, atomically replacing any previous checkpoint.
+   */
+  void write(final String file) throws IOException {
+    final File dst = new File(file);
+    final File tmp = new File(file + ".tmp");
+    final CheckedOutputStream crc = new CheckedOutputStream(
+        new BufferedOutputStream(new FileOutputStream(tmp), 1 << 16),
+        new CRC32());
+    final DataOutputStream out = new DataOutputStream(crc);
+    try {
+      out.writeInt(MAGIC);
+      out.writeInt(VERSION);
+      out.writeInt(structure.length);
+      for(final int n : structure)
+        out.writeInt(n);
+      out.writeInt(epochs);
+      out.writeLong(testSize);
+      out.writeInt(bestEpoch);
+      out.writeDouble(lowestError);
+      out.writeInt(weights.length);
+      write(out, weights, weights.length);
+      out.writeUTF(optimizer);
+      out.writeLong(steps);
+      out.writeInt(state.length);
+      write(out, state, state.length);
+      out.writeBoolean(hasBest);
+      if(hasBest)
+        write(out, best, best.length);
+      write(out, trainingError, epochs);
+      write(out, testingError, epochs);
+      out.writeInt(prng != null ? prng.length : -1);
+      if(prng != null)
+        out.write(prng);
+      out.writeInt(rows);
+      for(int i = 0; i < rows; i++)
+        out.writeInt(order[i]);
+      out.writeLong(crc.getChecksum().getValue());
+    } finally {
+      out.close();
+    }
+    Files.move(tmp.toPath(), dst.toPath(),
+        StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+  }
+
+  private static void write(final DataOutputStream out, final double[] v,
+      final int n) throws IOException {
+    for(int i = 0; i < n; i++)
+      out.writeDouble(v[i]);
+  }
+
+  /**
+   * read a checkpoint. null if there is no such file (e.g., a k-fold run was
+   * stopped before this fold's first checkpoint).
+   */
+  public static Checkpoint read(final String file) throws IOException {
+    if(!new File(file).exists())
+      return null;
+    final CheckedInputStream crc = new CheckedInputStream(
+        new BufferedInputStream(new FileInputStream(file), 1 << 16),
+        new CRC32());
+    final DataInputStream in = new DataInputStream(crc);
+    try {
+      if(in.readInt() != MAGIC)
+        throw new IOException("not a checkpoint: " + file);
+      final int version = in.readInt();
+      if(version != VERSION)
+        throw new IOException("unsupported checkpoint version " + version +
+            ": " + file);
+      final int[] structure = new int[in.readInt()];
+      for(int i = 0; i < structure.length; i++)
+        structure[i] = in.readInt();
+      final int epochs = in.readInt();
+      final long testSize = in.readLong();
+      final int bestEpoch = in.readInt();
+      final double lowestError = in.readDouble();
+      final double[] weights = new double[in.readInt()];
+      read(in, weights);
+      final String optimizer = in.readUTF();
+      final long steps = in.readLong();
+      final Checkpoint c = new Checkpoint(structure, weights.length,
+          in.readInt(), epochs);
+      System.arraycopy(weights, 0, c.weights, 0, weights.length);
+      c.optimizer = optimizer;
+      c.steps = steps;
+      c.epochs = epochs;
+      c.testSize = testSize;
+      c.bestEpoch = bestEpoch;
+      c.lowestError = lowestError;
+      read(in, c.state);
+      c.hasBest = in.readBoolean();
+      if(c.hasBest)
+        read(in, c.best);
+      read(in, c.trainingError);
+      read(in, c.testingError);
+      final int prng = in.readInt();
+      if(prng >= 0) {
+        c.prng = new byte[prng];
+        in.readFully(c.prng);
+      }
+      c.rows = in.readInt();
+      if(c.rows >= 0) {
+        c.order = new int[c.rows];
+        for(int i = 0; i < c.rows; i++)
+          c.order[i] = in.readInt();
+      }
+      final long sum = crc.getChecksum().getValue();
+      if(in.readLong() != sum)
+        throw new IOException("checksum mismatch: " + file);
+      return c;
+    } finally {
+      in.close();
+    }
+  }
+
+  private static void read(final DataInputStream in, final double[] v)
+      throws IOException {
+    for(int i = 0; i < v.length; i++)
+      v[i] = in.readDouble();
+  }
+
+  public String toString() {
+    return "checkpoint " + Arrays.toString(structure) + " after " + epochs +
+        " epochs (best epoch = " + (bestEpoch+1) + ")";
+  }
+}
@@ -0,0 +1,103 @@
+package net.parasec.nn.training;
+
+import net.parasec.nn.logging.Logger;
+import net.parasec.nn.network.ANN;
+
+import java.io.IOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * writes checkpoints of a training run every interval epochs on a
+ * background thread, so the training loop never waits for the disk.
+ *
+ * there are 2 preallocated checkpoint buffers: the trainer copies its state
+ * into a free one and hands it to the writer. if both are still being
+ * written (the disk is slower than interval epochs), the checkpoint is
+ * skipped rather than waited for.
+ */
+final class Checkpointer implements Runnable {
+  private static final Logger LOG = Logger.getLogger(Checkpointer.class);
+
+  private final String file;
+  private final int interval;
+  private final BlockingQueue<Checkpoint> free
+      = new ArrayBlockingQueue<Checkpoint>(2);
+  private final BlockingQueue<Object> pending
+      = new ArrayBlockingQueue<Object>(3);
+  private final Thread writer;
+
+  // end of checkpoints marker.
+  private static final Object END = new Object();
+
+
+  Checkpointer(final String file, final int interval, final ANN ann,
+      final int maxEpochs) {
+    this.file = file;
+    this.interval = interval;
+    for(int i = 2; --i >= 0; )
+      free.add(new Checkpoint(ann, maxEpochs));
+    writer = new Thread(this, "checkpoint-writer");
+    writer.setDaemon(true);
+    writer.start();
+  }
+
+  /**
+   * true if a checkpoint is due after epoch (0 based).
+   */
+  boolean isDue(final int epoch) {
+    return (epoch+1)%interval == 0;
+  }
+
+  /**
+   * a free checkpoint buffer, or null if both are being written.
+   */
+  Checkpoint acquire() {
+    final Checkpoint c = free.poll();
+    if(c == null)
+      LOG.info("checkpoint writer busy. skipping checkpoint.");
+    return c;
+  }
+
+  /**
+   * write a filled checkpoint buffer.
+   */
+  void submit(final Checkpoint checkpoint) {
+    pending.add(checkpoint);
+  }
+
+  /**
+   * wait for the checkpoints so far to be written and stop the writer.
+   */
+  void close() {
+    pending.add(END);
+    try {
+      writer.join();
+    } catch(final InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  public void run() {
+    try {
+      Object c;
+      while((c = pending.take()) != END) {
+        write((Checkpoint) c);
+        free.add((Checkpoint) c);
+      }
+    } catch(final InterruptedException e) {
+      // abandoned.
+    }
+  }
+
+  private void write(final Checkpoint c) {
+    final long l = System.currentTimeMillis();
+    try {
+      c.write(file);
+      LOG.info("wrote " + c + " to " + file + " in " +
+          (System.currentTimeMillis()-l) + "ms.");
+    } catch(final IOException e) {
+      LOG.error(e, e);
+    }
+  }
+}
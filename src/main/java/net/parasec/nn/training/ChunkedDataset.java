@@ -0,0 +1,40 @@
+package net.parasec.nn.training;
+
+/**
+ * dataset read one pass at a time as a sequence of chunks, so that it never
+ * has to fit in memory (see StreamingDataset). a Dataset is a single chunk.
+ */
+public interface ChunkedDataset {
+
+  /**
+   * input vector length.
+   */
+  int inputs();
+
+  /**
+   * output vector length.
+   */
+  int outputs();
+
+  /**
+   * begin a pass over the rows. only one pass may be open at a time.
+   */
+  Pass pass();
+
+  /**
+   * one pass over the rows.
+   */
+  interface Pass {
+
+    /**
+     * the next chunk of rows, valid until the next call (or close). null at
+     * the end of the pass.
+     */
+    Dataset next();
+
+    /**
+     * end the pass, possibly before the last chunk.
+     */
+    void close();
+  }
+}
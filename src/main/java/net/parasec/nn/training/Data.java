@@ -9,6 +9,11 @@ import java.util.Random;
 
 /**
  * represents the data/subsets used in supervised learning.
+ *
+ * the subsets are either lists of training instances or, when constructed
+ * from a Dataset, index views of it (see getTrainingSet). the dataset itself
+ * is never modified or copied: shuffles, the holdback split and k-fold
+ * partitions are permutations of row indices.
  */ 
 public final class Data {
   private static final Logger LOG = Logger.getLogger(Data.class);  
@@ -17,21 +22,89 @@ public final class Data {
   private final List<TrainingInstance> testData = new ArrayList<TrainingInstance>();
   private final Random random;
 
+  // index views of a dataset. null when using the lists.
+  private DatasetView trainingSet, testSet;
+
 
   public Data(final Random random) {
     this.random = random;
   }
 
   /**
-   * training data subset.
-   */ 
+   * initially all of the dataset is training data.
+   */
+  public Data(final Random random, final Dataset dataset) {
+    this(random, DatasetView.all(dataset), null);
+    testSet = trainingSet.range(0, 0);
+  }
+
+  private Data(final Random random, final DatasetView training,
+      final DatasetView testing) {
+    this.random = random;
+    this.trainingSet = training;
+    this.testSet = testing;
+  }
+
+  /**
+   * the same subsets, shuffled with another prng (e.g., one per fold, so
+   * that concurrent folds do not share a prng). lists are copied.
+   */
+  public Data withRandom(final Random random) {
+    if(trainingSet != null)
+      return new Data(random, trainingSet, testSet);
+    final Data d = new Data(random);
+    d.trainingData.addAll(trainingData);
+    d.testData.addAll(testData);
+    return d;
+  }
+
+  /**
+   * true if the subsets are views of a dataset rather than lists.
+   */
+  public boolean isColumnar() {
+    return trainingSet != null;
+  }
+
+  /**
+   * training data subset as a dataset. the training-instance list is copied
+   * into a columnar dataset if the data is not a view.
+   */
+  public Dataset getTrainingSet() {
+    return trainingSet != null ? trainingSet : pack(trainingData);
+  }
+
+  /**
+   * testing data subset as a dataset. see getTrainingSet.
+   */
+  public Dataset getTestSet() {
+    return testSet != null ? testSet : pack(testData);
+  }
+
+  private ArrayDataset pack(final List<TrainingInstance> instances) {
+    final Dataset list = list();
+    return list == null ? new ArrayDataset(new double[0], new double[0], 1, 1)
+        : ArrayDataset.copyOf(new ListDataset(instances, list.inputs(),
+            list.outputs()));
+  }
+
+  // the training data as a dataset, null if there are no instances.
+  private ListDataset list() {
+    final TrainingInstance first = !trainingData.isEmpty() 
+        ? trainingData.get(0) : testData.isEmpty() ? null : testData.get(0);
+    return first == null ? null : new ListDataset(trainingData,
+        first.getInputVector().length, first.getOutputVector().length);
+  }
+
+  /**
+   * training data subset. (empty if the data is a dataset view.)
+   */
   public List<TrainingInstance> getTrainingData() {
     return trainingData;
   }
 
   /**
-   * testing data subset.
-   */ 
+   * testing data subset. (empty if the data is a dataset view.)
+   */
   public List<TrainingInstance> getTestData() {
     return testData;
   }
@@ -44,18 +117,18 @@ public final class Data {
    * partitions: 1: training [c,d,e,f] testing: [a,b]
    *             2: training [a,b,e,f] testing: [c,d]
    *             3: training [a,b,c,d] testing: [e,f] 
-   */ 
+   */
   public List<Data> dataPartitions(final List<List<TrainingInstance>> 
       partitions) {
     final List<Data> data = new ArrayList<Data>();
-    for(final List<TrainingInstance> partition : partitions) {
+    for(int i = 0, len = partitions.size(); i < len; i++) {
       final Data d = new Data(random);
       final List<TrainingInstance> training = d.getTrainingData();
       final List<TrainingInstance> testing = d.getTestData();
-      testing.addAll(partition);
-      for(final List<TrainingInstance> otherPartition : partitions)
-        if(!partition.equals(otherPartition)) 
-          training.addAll(otherPartition);
+      testing.addAll(partitions.get(i));
+      for(int j = 0; j < len; j++)
+        if(j != i)
+          training.addAll(partitions.get(j));
       data.add(d);
     }
     return data;
@@ -64,7 +137,7 @@ public final class Data {
   /**
    * shuffle, and return a list of n partitions.
    * each partition size is #training_size/#partitions.
-   */ 
+   */
   public List<List<TrainingInstance>> partition(final int partitions) {
     final List<List<TrainingInstance>> ret 
         = new ArrayList<List<TrainingInstance>>();
@@ -80,7 +153,7 @@ public final class Data {
       ret.add(partition);
       for(int j = 0; j < partitionSize; j++)
 	partition.add(copy.get(k++));
-    }				
+    }
     final List<TrainingInstance> partition = new ArrayList<TrainingInstance>();
     ret.add(partition);
     for(int len = copy.size(); k < len; k++) 
@@ -88,6 +161,42 @@ public final class Data {
     return ret;
   }
 
+  /**
+   * shuffle, and return a data object for each of k partitions, where the
+   * partition is the test set and the other partitions the training set.
+   * the remainder rows are spread over the partitions, so partition sizes
+   * differ by at most 1 and none is empty (k must be at most the number of
+   * rows).
+   *
+   * every fold is a view of one shuffled index array: no rows are copied
+   * and memory does not grow with k. training-instance lists are viewed
+   * as a dataset (and must not change while the folds are in use).
+   */
+  public List<Data> folds(final int k) {
+    final DatasetView perm;
+    if(trainingSet != null) {
+      perm = trainingSet.copy();
+    } else {
+      final ListDataset list = list();
+      if(list == null)
+        throw new IllegalStateException("no training data");
+      perm = DatasetView.all(list);
+    }
+    final int len = perm.size();
+    if(k > len)
+      throw new IllegalArgumentException(k + " folds of " + len + " rows");
+    perm.shuffle(random);
+    // partition bounds.
+    final int[] bounds = new int[k+1];
+    for(int i = 1; i <= k; i++)
+      bounds[i] = (int) ((long) i*len/k);
+    final List<Data> data = new ArrayList<Data>();
+    for(int i = 0; i < k; i++)
+      data.add(new Data(random, perm.without(bounds[i], bounds[i+1]),
+          perm.range(bounds[i], bounds[i+1])));
+    return data;
+  }
+
   /**
    * split data into training and test subsets. 
    * &gt; ratio = test data. 0.2 = 20% test data.
@@ -95,37 +204,53 @@ public final class Data {
    */
   public void split(final double ratio) {
     randomise();
-    final int tdSize = trainingData.size();
+    final int tdSize = trainingSize();
+    final int n = (int) Math.round((ratio * (double) tdSize));
     LOG.info("splitting data into training/testing subsets");
-    for(int i = (int) Math.round((ratio * (double) tdSize)); --i >= 0; )
-      testData.add(trainingData.remove(trainingData.size()-1));
+    if(trainingSet != null) {
+      // the last rows (in reverse, as the lists) become the test set.
+      final DatasetView test = trainingSet.range(tdSize-n, tdSize);
+      test.reverse();
+      trainingSet = trainingSet.range(0, tdSize-n);
+      testSet = test;
+      return;
+    }
+    final List<TrainingInstance> tail
+        = trainingData.subList(tdSize-n, tdSize);
+    for(int i = n; --i >= 0; )
+      testData.add(tail.get(i));
+    tail.clear();
   }
 
   /**
    * randomise the order of training data.
-   */ 
+   */
   public void randomise() {
     LOG.debug("randomising training data");
-    Collections.shuffle(trainingData, random);
+    if(trainingSet != null)
+      trainingSet.shuffle(random);
+    else
+      Collections.shuffle(trainingData, random);
   }
 
   public int trainingSize() {
-    return trainingData.size();
+    return trainingSet != null ? trainingSet.size() : trainingData.size();
   }
- 
+
   public int testSize() {
-    return testData.size();
+    return testSet != null ? testSet.size() : testData.size();
   }
 
   public void print() {
     LOG.info("training data");
     LOG.info("=============");
-    for(final TrainingInstance ti : trainingData)
+    for(final TrainingInstance ti : trainingSet != null 
+        ? ListDataset.instances(trainingSet) : trainingData)
       LOG.info(ti);
     LOG.info("testing data");
     LOG.info("============");	
-    for(final TrainingInstance ti : testData)
+    for(final TrainingInstance ti : testSet != null 
+        ? ListDataset.instances(testSet) : testData)
       LOG.info(ti);
   }
 }
-
@@ -1,63 +1,378 @@
 package net.parasec.nn.training;
 
 import net.parasec.nn.logging.Logger;
+import net.parasec.nn.util.CsvParser;
 
-import java.io.FileReader;
-import java.io.BufferedReader;
+import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
-import java.util.LinkedList;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
+/**
+ * load training instances from a csv, a binary dataset (see MappedDataset)
+ * or a directory of either.
+ *
+ * rows are parsed straight into a columnar ArrayDataset (see loadDataset),
+ * from which the training-instance lists are made. a single binary dataset
+ * is not loaded at all: it is returned as mapped, so its rows stay in (and
+ * are shared through) the page cache. binary datasets in a directory of
+ * several files are copied.
+ *
+ * with more than 1 thread, each csv is split into newline aligned byte
+ * ranges and the ranges (and files) are parsed concurrently. rows are always
+ * returned in file name, then file order, whatever the number of threads, so
+ * shuffling with a seeded prng is reproducible.
+ */
 public final class DataLoader {
   private static final Logger LOG = Logger.getLogger(DataLoader.class);
-  private static final String DELIMITER = ",";
+
+  // smallest byte range parsed by a single task.
+  private static final long MIN_CHUNK = 1 << 20;
+
+  // the rows of a file, or part of a file.
+  private interface Chunk {
+    ArrayDataset load() throws IOException;
+  }
+
+  private final int threads;
+
+
+  public DataLoader() {
+    this(1);
+  }
+
+  /**
+   * @param threads number of parsing threads.
+   */
+  public DataLoader(final int threads) {
+    if(threads < 1)
+      throw new IllegalArgumentException("threads must be >= 1");
+    this.threads = threads;
+  }
 
   /**
-   * load training-instance list from a csv. 
+   * load a training-instance list from a csv, a binary dataset or a
+   * directory of csv and/or binary dataset files (read in file name order).
    * @param outputLength output vector length. for example,
    * for instance [a,b,c,d,e], outputLength 2 =
    * input vector: [a,b,c] output vector: [d,e].
-   */ 
-  public List<TrainingInstance> loadCsv(final String file, 
+   */
+  public List<TrainingInstance> load(final String file,
+      final int outputLength) {
+    final Dataset dataset = loadDataset(file, outputLength);
+    return dataset == null ? null : ListDataset.instances(dataset);
+  }
+
+  /**
+   * single precision load into a packed float dataset. see loadDataset.
+   */
+  public FloatDataset loadFloatDataset(final String file,
+      final int outputLength) {
+    final Dataset dataset = loadDataset(file, outputLength);
+    return dataset == null ? null : FloatDataset.narrow(dataset);
+  }
+
+  /**
+   * single precision load. see load.
+   */
+  public List<FloatTrainingInstance> loadFloat(final String file,
+      final int outputLength) {
+    final Dataset dataset = loadDataset(file, outputLength);
+    if(dataset == null)
+      return null;
+    final int inputs = dataset.inputs();
+    final double[] in = new double[inputs];
+    final double[] out = new double[outputLength];
+    final List<FloatTrainingInstance> instances
+        = new ArrayList<FloatTrainingInstance>(dataset.size());
+    for(int i = 0, len = dataset.size(); i < len; i++) {
+      dataset.copyInput(i, in, 0);
+      dataset.copyOutput(i, out, 0);
+      instances.add(new FloatTrainingInstance(narrow(in), narrow(out)));
+    }
+    return instances;
+  }
+
+  /**
+   * load training-instance list from a csv (or directory). see load.
+   */
+  public List<TrainingInstance> loadCsv(final String file,
+      final int outputLength) {
+    return load(file, outputLength);
+  }
+
+  /**
+   * load single precision training-instance list from a csv.
+   * see loadCsv.
+   */
+  public List<FloatTrainingInstance> loadCsvFloat(final String file,
+      final int outputLength) {
+    return loadFloat(file, outputLength);
+  }
+
+  /**
+   * load a columnar dataset: no object is created per row. a single binary
+   * dataset is mapped rather than loaded. see load.
+   */
+  public Dataset loadDataset(final String file, 
       final int outputLength) {
     try {
-      final List<TrainingInstance> instances 
-          = new LinkedList<TrainingInstance>();
-      final BufferedReader in = new BufferedReader(new FileReader(file));
-      try {
-        final long l = System.currentTimeMillis();
-        String line;
-        while((line = in.readLine()) != null) {
-          if(line.contains(DELIMITER)) {
-            final String[] split = line.split(DELIMITER);
-            instances.add(parseInstance(split, outputLength));
-          }
+      final long l = System.currentTimeMillis();
+      final File[] files = files(file);
+      if(files.length == 1 && MappedDataset.isDataset(files[0].getPath())) {
+        final Dataset dataset = open(files[0].getPath(), outputLength);
+        if(dataset.size() == 0)
+          throw new IOException("no rows in " + file);
+        final long took = System.currentTimeMillis()-l;
+        Metrics.dataLoader().loaded(dataset.size(), took);
+        LOG.info("mapped " + dataset.size() + " training instances from " +
+            files[0] + " in " + took + "ms.");
+        return dataset;
+      }
+      final List<Chunk> chunks = new ArrayList<Chunk>();
+      for(final File f : files) {
+        if(MappedDataset.isDataset(f.getPath())) {
+          chunks.add(mapped(f, outputLength));
+          continue;
         }
-        LOG.info("loaded " + instances.size() + " training instances in " +
-            (System.currentTimeMillis()-l) + "ms.");
-        return instances;    
-      } finally {
-        in.close();
+        final long[] bounds = bounds(f);
+        for(int i = 1; i < bounds.length; i++)
+          if(bounds[i] > bounds[i-1])
+            chunks.add(csv(f, bounds[i-1], bounds[i], outputLength));
       }
+      final List<ArrayDataset> parts = threads > 1 && chunks.size() > 1
+          ? parallel(chunks) : sequential(chunks);
+      // ranges without a row.
+      for(int i = parts.size(); --i >= 0; )
+        if(parts.get(i) == null)
+          parts.remove(i);
+      if(parts.isEmpty())
+        throw new IOException("no rows in " + file);
+      final ArrayDataset dataset = ArrayDataset.concat(parts);
+      final long took = System.currentTimeMillis()-l;
+      Metrics.dataLoader().loaded(dataset.size(), took);
+      LOG.info("loaded " + dataset.size() + " training instances from " +
+          files.length + " file(s) in " + took + "ms. (" + threads + 
+          " threads)");
+      return dataset;
     } catch(IOException e) {
       LOG.error(e, e);
     }
     return null;
-  } 
+  }
+
+  private static List<ArrayDataset> sequential(final List<Chunk> chunks)
+      throws IOException {
+    final List<ArrayDataset> parts = new ArrayList<ArrayDataset>();
+    for(final Chunk chunk : chunks)
+      parts.add(chunk.load());
+    return parts;
+  }
+
+  // load the chunks concurrently, in order.
+  private List<ArrayDataset> parallel(final List<Chunk> chunks)
+      throws IOException {
+    final ExecutorService pool = Executors.newFixedThreadPool(threads);
+    try {
+      final List<Future<ArrayDataset>> results 
+          = new ArrayList<Future<ArrayDataset>>();
+      for(final Chunk chunk : chunks)
+        results.add(pool.submit(new Callable<ArrayDataset>() {
+          public ArrayDataset call() throws IOException {
+            return chunk.load();
+          }
+        }));
+      final List<ArrayDataset> parts = new ArrayList<ArrayDataset>();
+      for(final Future<ArrayDataset> result : results)
+        parts.add(result.get());
+      return parts;
+    } catch(final InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException(e);
+    } catch(final ExecutionException e) {
+      if(e.getCause() instanceof RuntimeException)
+        throw (RuntimeException) e.getCause();
+      throw new IOException(e.getCause());
+    } finally {
+      pool.shutdownNow();
+    }
+  }
+
+  // the file, or the (non-hidden) files of a directory in name order.
+  static File[] files(final String file) throws IOException {
+    final File f = new File(file);
+    if(!f.isDirectory())
+      return new File[] { f };
+    final File[] list = f.listFiles();
+    if(list == null)
+      throw new IOException("could not list " + file);
+    final List<File> files = new ArrayList<File>();
+    for(final File c : list)
+      if(c.isFile() && !c.isHidden())
+        files.add(c);
+    final File[] sorted = files.toArray(new File[files.size()]);
+    Arrays.sort(sorted);
+    return sorted;
+  }
 
   /**
-   * convert csv row into training-instance
-   */ 
-  private TrainingInstance parseInstance(final String[] line, 
-      final int outputLength) {
-    final double[] input = new double[line.length-outputLength];
-    final double[] output = new double[outputLength];
-    for(int i = 0, len = input.length; i < len; i++)
-      input[i] = Double.parseDouble(line[i]);
-    final int offset = input.length;
-    for(int i = offset, len = line.length; i < len; i++)
-      output[i-offset] = Double.parseDouble(line[i]);
-    return new TrainingInstance(input, output); 
+   * split a file into about 4 byte ranges per thread (of at least MIN_CHUNK
+   * bytes), each starting at the beginning of a line.
+   */
+  private long[] bounds(final File file) throws IOException {
+    final long size = file.length();
+    final int n = threads == 1 ? 1
+        : (int) Math.max(1, Math.min(4L*threads, size/MIN_CHUNK));
+    final long[] bounds = new long[n+1];
+    bounds[n] = size;
+    if(n == 1)
+      return bounds;
+    final RandomAccessFile raf = new RandomAccessFile(file, "r");
+    try {
+      final FileChannel channel = raf.getChannel();
+      final ByteBuffer buf = ByteBuffer.allocate(1 << 12);
+      for(int i = 1; i < n; i++) {
+        // first line starting at or after the target offset.
+        long p = Math.max(bounds[i-1], size*i/n-1);
+        long b = size;
+        search:
+        while(p < size) {
+          buf.clear();
+          final int r = channel.read(buf, p);
+          if(r <= 0)
+            break;
+          for(int j = 0; j < r; j++) {
+            if(buf.get(j) == '\n') {
+              b = p+j+1;
+              break search;
+            }
+          }
+          p += r;
+        }
+        bounds[i] = Math.max(bounds[i-1], b);
+      }
+    } finally {
+      raf.close();
+    }
+    return bounds;
+  }
+
+  // a byte range of a csv. loads null if the range has no rows.
+  private static Chunk csv(final File file, final long from,
+      final long to, final int outputLength) {
+    return new Chunk() {
+      public ArrayDataset load() throws IOException {
+        ArrayDataset.Builder rows = null;
+        int width = 0;
+        final CsvParser in
+            = new CsvParser(new RangeInputStream(file, from, to));
+        try {
+          int n;
+          while((n = in.next()) >= 0) {
+            if(rows == null) {
+              if(n <= outputLength)
+                throw new IllegalArgumentException(file + " (from byte " +
+                    from + ") line " + in.lines() + ": " + n + " values, " +
+                    outputLength + " outputs");
+              width = n;
+              rows = new ArrayDataset.Builder(n-outputLength, outputLength);
+            } else if(n != width) {
+              throw new IllegalArgumentException(file + " (from byte " +
+                  from + ") line " + in.lines() + ": " + n + 
+                  " values, expected " + width);
+            }
+            rows.add(in.row(), 0);
+          }
+        } finally {
+          in.close();
+        }
+        return rows == null ? null : rows.build();
+      }
+    };
   }
-}
 
+  /**
+   * map a binary dataset (see MappedDataset), whose rows must have
+   * outputLength outputs.
+   */
+  public static Dataset map(final String file, final int outputLength) {
+    try {
+      return open(file, outputLength);
+    } catch(final IOException e) {
+      throw new IllegalArgumentException("could not map dataset: " + file, e);
+    }
+  }
+
+  private static Dataset open(final String file, final int outputLength)
+      throws IOException {
+    final Dataset dataset = MappedDataset.open(file);
+    if(dataset.outputs() != outputLength)
+      throw new IllegalArgumentException(file + " has " +
+          dataset.outputs() + " outputs, not " + outputLength);
+    return dataset;
+  }
+
+  private static Chunk mapped(final File file, final int outputLength) {
+    return new Chunk() {
+      public ArrayDataset load() throws IOException {
+        final Dataset dataset = open(file.getPath(), outputLength);
+        return dataset.size() == 0 ? null : ArrayDataset.copyOf(dataset);
+      }
+    };
+  }
+
+  private static float[] narrow(final double[] v) {
+    final float[] f = new float[v.length];
+    for(int i = f.length; --i >= 0; )
+      f[i] = (float) v[i];
+    return f;
+  }
+
+  /**
+   * bytes [from, to) of a file, read with positional reads.
+   */
+  private static final class RangeInputStream extends InputStream {
+    private final RandomAccessFile raf;
+    private final FileChannel channel;
+    private final long to;
+    private long pos;
+
+    RangeInputStream(final File file, final long from, final long to)
+        throws IOException {
+      raf = new RandomAccessFile(file, "r");
+      channel = raf.getChannel();
+      this.pos = from;
+      this.to = to;
+    }
+
+    public int read() throws IOException {
+      final byte[] b = new byte[1];
+      return read(b, 0, 1) < 0 ? -1 : b[0] & 0xff;
+    }
+
+    public int read(final byte[] b, final int off, final int len)
+        throws IOException {
+      if(pos >= to)
+        return -1;
+      final int n = channel.read(ByteBuffer.wrap(b, off,
+          (int) Math.min(len, to-pos)), pos);
+      if(n > 0)
+        pos += n;
+      return n;
+    }
+
+    public void close() throws IOException {
+      raf.close();
+    }
+  }
+}
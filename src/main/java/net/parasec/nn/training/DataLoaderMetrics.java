@@ -0,0 +1,45 @@
+package net.parasec.nn.training;
+
+/**
+ * load times of every DataLoader in the jvm.
+ */
+public final class DataLoaderMetrics implements DataLoaderMetricsMXBean {
+  private int loads;
+  private long rows, loadTime, lastLoadTime, lastRows;
+
+
+  DataLoaderMetrics() {
+  }
+
+  synchronized void loaded(final long rows, final long millis) {
+    loads++;
+    this.rows += rows;
+    loadTime += millis;
+    lastRows = rows;
+    lastLoadTime = millis;
+  }
+
+  public synchronized int getLoads() {
+    return loads;
+  }
+
+  public synchronized long getRows() {
+    return rows;
+  }
+
+  public synchronized long getLoadTime() {
+    return loadTime;
+  }
+
+  public synchronized long getLastLoadTime() {
+    return lastLoadTime;
+  }
+
+  public synchronized long getLastRows() {
+    return lastRows;
+  }
+
+  public synchronized double getLastRowsPerSecond() {
+    return lastRows*1000.0/Math.max(lastLoadTime, 1);
+  }
+}
@@ -0,0 +1,25 @@
+package net.parasec.nn.training;
+
+/**
+ * datasets loaded by DataLoader, published over jmx (see Metrics).
+ */
+public interface DataLoaderMetricsMXBean {
+
+  int getLoads();
+
+  long getRows();
+
+  /**
+   * total time spent loading, in milliseconds.
+   */
+  long getLoadTime();
+
+  long getLastLoadTime();
+
+  long getLastRows();
+
+  /**
+   * rows per second of the last load.
+   */
+  double getLastRowsPerSecond();
+}
@@ -0,0 +1,123 @@
+package net.parasec.nn.training;
+
+import net.parasec.nn.network.ANN;
+import net.parasec.nn.network.Batch;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * data-parallel mini-batch backpropagation of a single network.
+ *
+ * each mini-batch is divided between a number of workers. every worker has
+ * its own batch scratch space (activations, deltas and gradient) and
+ * computes the gradient of its share of the batch against the shared,
+ * read-only weights. the worker gradients are then summed with a fork-join
+ * tree reduction and applied to the network with a single momentum update.
+ */
+final class DataParallel implements ParallelEpoch {
+  private final ANN ann;
+  private final Batch[] workers;
+  private final ForkJoinPool pool;
+  private final int batchSize;
+  private final int nInputs, nOutputs;
+
+
+  DataParallel(final ANN ann, final int batchSize, final int threads,
+      final TrainingMetrics metrics) {
+    this.ann = ann;
+    this.batchSize = batchSize;
+    final int[] structure = ann.getStructure();
+    nInputs = structure[0];
+    nOutputs = structure[structure.length-1];
+    final int share = (batchSize+threads-1)/threads;
+    workers = new Batch[threads];
+    for(int i = threads; --i >= 0; )
+      workers[i] = new Batch(structure, share);
+    pool = ParallelEpoch.pool(threads, metrics);
+  }
+
+  public double epoch(final Dataset instances,
+      final double learningRate, final double momentum) {
+    double sum = 0;
+    for(int i = 0, len = instances.size(); i < len; i += batchSize) {
+      final int count = Math.min(batchSize, len-i);
+      sum += update(instances, i, count, learningRate, momentum);
+    }
+    return sum;
+  }
+
+  public void shutdown() {
+    pool.shutdown();
+  }
+
+  private double update(final Dataset instances, final int from,
+      final int count, final double learningRate, final double momentum) {
+    final int share = workers[0].capacity();
+    // workers with nothing to do (small final batch) are left out.
+    final int active = (count+share-1)/share;
+    final double sum = pool.invoke(
+        new GradientTask(instances, from, count, 0, active));
+    ann.applyGradient(workers[0].getGradient(), learningRate, momentum);
+    return sum;
+  }
+
+  /**
+   * gradient of workers [lo, hi). the summed gradient ends up in worker lo.
+   */
+  private final class GradientTask extends RecursiveTask<Double> {
+    private static final long serialVersionUID = 1L;
+
+    private final Dataset instances;
+    private final int from, count, lo, hi;
+
+    GradientTask(final Dataset instances, final int from,
+        final int count, final int lo, final int hi) {
+      this.instances = instances;
+      this.from = from;
+      this.count = count;
+      this.lo = lo;
+      this.hi = hi;
+    }
+
+    protected Double compute() {
+      if(hi-lo == 1)
+        return gradient(lo);
+      final int mid = (lo+hi) >>> 1;
+      final GradientTask left
+          = new GradientTask(instances, from, count, lo, mid);
+      left.fork();
+      final double right
+          = new GradientTask(instances, from, count, mid, hi).compute();
+      final double sum = left.join()+right;
+      final double[] a = workers[lo].getGradient();
+      final double[] b = workers[mid].getGradient();
+      for(int i = 0, len = a.length; i < len; i++)
+        a[i] += b[i];
+      return sum;
+    }
+
+    private double gradient(final int worker) {
+      final Batch batch = workers[worker];
+      final int share = batch.capacity();
+      final int start = worker*share;
+      final int n = Math.min(share, count-start);
+      final double[] inputs = batch.getInputs();
+      final double[] targets = batch.getTargets();
+      for(int i = 0; i < n; i++) {
+        instances.copyInput(from+start+i, inputs, i*nInputs);
+        instances.copyOutput(from+start+i, targets, i*nOutputs);
+      }
+      ann.feedForward(batch, n);
+      batch.clearGradient();
+      ann.backPropagateError(batch, n);
+      final double[] out = batch.getNetworkOutputs();
+      double sum = 0;
+      for(int i = n*nOutputs; --i >= 0; ) {
+        final double diff = targets[i]-out[i];
+        sum += diff*diff;
+      }
+      return sum;
+    }
+  }
+}
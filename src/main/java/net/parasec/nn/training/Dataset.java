@@ -0,0 +1,37 @@
+package net.parasec.nn.training;
+
+/**
+ * row-addressable supervised learning dataset.
+ *
+ * each row is an input vector followed by an output (target) vector. rows
+ * are copied into caller supplied buffers, so a dataset can be backed by
+ * anything: TrainingInstance lists, a memory-mapped file, a view of another
+ * dataset. implementations must allow concurrent reads.
+ */
+public interface Dataset {
+
+  /**
+   * number of rows.
+   */
+  int size();
+
+  /**
+   * input vector length.
+   */
+  int inputs();
+
+  /**
+   * output vector length.
+   */
+  int outputs();
+
+  /**
+   * copy the input vector of row to dst[off..off+inputs()).
+   */
+  void copyInput(int row, double[] dst, int off);
+
+  /**
+   * copy the output vector of row to dst[off..off+outputs()).
+   */
+  void copyOutput(int row, double[] dst, int off);
+}
@@ -0,0 +1,102 @@
+package net.parasec.nn.training;
+
+import net.parasec.nn.logging.Logger;
+import net.parasec.nn.util.CsvParser;
+import net.parasec.nn.util.Options;
+
+import java.io.BufferedOutputStream;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+
+/**
+ * convert a csv dataset into the binary format read by MappedDataset.
+ * the csv is streamed: memory use does not depend on its size.
+ */
+public final class DatasetConverter {
+  private static final Logger LOG = Logger.getLogger(DatasetConverter.class);
+
+  /**
+   * convert csv to a binary dataset. outputLength is the number of output
+   * columns (at the end of each row), as in DataLoader.loadCsv.
+   * returns the number of rows written.
+   */
+  public static long convert(final String csv, final String output,
+      final int outputLength) throws IOException {
+    final long l = System.currentTimeMillis();
+    long rows = 0;
+    int width = -1;
+    final CsvParser in = new CsvParser(new FileInputStream(csv));
+    try {
+      final OutputStream out 
+          = new BufferedOutputStream(new FileOutputStream(output), 1 << 16);
+      try {
+        // header written with 0 rows, patched at the end.
+        out.write(header(0, 0, 0).array());
+        ByteBuffer row = null;
+        DoubleBuffer values = null;
+        int n;
+        while((n = in.next()) >= 0) {
+          if(width < 0) {
+            width = n;
+            if(width <= outputLength)
+              throw new IOException("line " + in.lines() + ": " + width + 
+                  " columns, " + outputLength + " outputs");
+            row = ByteBuffer.allocate(8*width)
+                .order(ByteOrder.LITTLE_ENDIAN);
+            values = row.asDoubleBuffer();
+          } else if(n != width) {
+            throw new IOException("line " + in.lines() + ": expected " + 
+                width + " columns, got " + n);
+          }
+          values.clear();
+          values.put(in.row(), 0, width);
+          out.write(row.array());
+          rows++;
+        }
+      } finally {
+        out.close();
+      }
+    } finally {
+      in.close();
+    }
+    final RandomAccessFile raf = new RandomAccessFile(output, "rw");
+    try {
+      raf.write(header(rows, Math.max(0, width-outputLength), 
+          outputLength).array());
+    } finally {
+      raf.close();
+    }
+    LOG.info("converted " + rows + " rows in " + 
+        (System.currentTimeMillis()-l) + "ms.");
+    return rows;
+  }
+
+  private static ByteBuffer header(final long rows, final int inputs, 
+      final int outputs) {
+    final ByteBuffer header = ByteBuffer.allocate(MappedDataset.HEADER)
+        .order(ByteOrder.LITTLE_ENDIAN);
+    header.putInt(MappedDataset.MAGIC);
+    header.putInt(MappedDataset.VERSION);
+    header.putLong(rows);
+    header.putInt(inputs);
+    header.putInt(outputs);
+    return header;
+  }
+
+  public static void main(String[] args) {
+    final Options options = new Options(args, "file", "output_nodes", 
+        "output").accept();
+    try {
+      convert(options.getString("file"), options.getString("output"), 
+          options.getInt("output_nodes"));
+    } catch(final IOException e) {
+      LOG.error(e, e);
+    }
+  }
+}
@@ -0,0 +1,178 @@
+package net.parasec.nn.training;
+
+import java.util.Random;
+
+/**
+ * a subset and/or reordering of the rows of another dataset: row i of the
+ * view is row rows[i] of the base dataset. no data is copied.
+ *
+ * views made by range and without share their index array with this view,
+ * so any number of subsets (e.g., k-fold partitions) of one permutation
+ * cost no more memory than the permutation itself. a view which could
+ * reorder rows seen by another view (one with a gap, or all the rows of
+ * this view) gets its own index array.
+ */
+public final class DatasetView implements Dataset {
+  private final Dataset base;
+  private int[] rows;
+
+  // this view is rows[from, from+size) of the index array, less the gap
+  // rows [skip, skip+gap) of the view.
+  private int from, size, skip, gap;
+
+
+  public DatasetView(final Dataset base, final int[] rows) {
+    this(base, rows, 0, rows.length, rows.length, 0);
+  }
+
+  private DatasetView(final Dataset base, final int[] rows, final int from,
+      final int size, final int skip, final int gap) {
+    this.base = base;
+    this.rows = rows;
+    this.from = from;
+    this.size = size;
+    this.skip = skip;
+    this.gap = gap;
+  }
+
+  /**
+   * all rows of a dataset, in order.
+   */
+  public static DatasetView all(final Dataset base) {
+    final int[] rows = new int[base.size()];
+    for(int i = rows.length; --i >= 0; )
+      rows[i] = i;
+    return new DatasetView(base, rows);
+  }
+
+  /**
+   * all rows of a dataset in a random order.
+   */
+  public static DatasetView shuffled(final Dataset base, final Random prng) {
+    final DatasetView view = all(base);
+    view.shuffle(prng);
+    return view;
+  }
+
+  /**
+   * rows [from, to) of this view.
+   */
+  public DatasetView range(final int from, final int to) {
+    check(from, to);
+    if(gap > 0)
+      return new DatasetView(base, indices(from, to));
+    return new DatasetView(base, rows, this.from+from, to-from, to-from, 0);
+  }
+
+  /**
+   * the rows of this view except [from, to).
+   */
+  public DatasetView without(final int from, final int to) {
+    check(from, to);
+    // nothing removed: shuffling a shared array in place would reorder
+    // the rows of every other view of it.
+    if(from == to)
+      return copy();
+    if(gap > 0) {
+      final int[] rows = new int[size-(to-from)];
+      System.arraycopy(indices(0, from), 0, rows, 0, from);
+      System.arraycopy(indices(to, size), 0, rows, from, size-to);
+      return new DatasetView(base, rows);
+    }
+    return new DatasetView(base, rows, this.from, size-(to-from), from,
+        to-from);
+  }
+
+  /**
+   * the rows of this view with its own index array, so that it can be
+   * reordered independently.
+   */
+  public DatasetView copy() {
+    return new DatasetView(base, indices(0, size));
+  }
+
+  /**
+   * copy the base row index of each row of this view into dst (e.g., to save
+   * a permutation: new DatasetView(base, dst) restores it).
+   */
+  public void copyRows(final int[] dst) {
+    for(int i = size; --i >= 0; )
+      dst[i] = rows[index(i)];
+  }
+
+  /**
+   * shuffle the rows of this view in place (the base dataset is untouched,
+   * other views sharing the index array see the new order).
+   * the same permutation as Collections.shuffle with the same prng.
+   */
+  public void shuffle(final Random prng) {
+    own();
+    // fisher-yates (as Collections.shuffle).
+    for(int i = size; i > 1; i--)
+      swap(from+i-1, from+prng.nextInt(i));
+  }
+
+  /**
+   * reverse the order of the rows of this view in place.
+   */
+  public void reverse() {
+    own();
+    for(int i = from, j = from+size-1; i < j; i++, j--)
+      swap(i, j);
+  }
+
+  // a view with a gap is given its own (contiguous) index array before it
+  // is reordered.
+  private void own() {
+    if(gap == 0)
+      return;
+    rows = indices(0, size);
+    from = 0;
+    skip = size;
+    gap = 0;
+  }
+
+  private void swap(final int i, final int j) {
+    final int t = rows[i];
+    rows[i] = rows[j];
+    rows[j] = t;
+  }
+
+  // base rows of view rows [from, to).
+  private int[] indices(final int from, final int to) {
+    final int[] indices = new int[to-from];
+    for(int i = indices.length; --i >= 0; )
+      indices[i] = rows[index(from+i)];
+    return indices;
+  }
+
+  private int index(final int row) {
+    return from+(row < skip ? row : row+gap);
+  }
+
+  private void check(final int from, final int to) {
+    if(from < 0 || to > size || from > to)
+      throw new IndexOutOfBoundsException("[" + from + ", " + to +
+          ") of " + size + " rows");
+  }
+
+  public int size() {
+    return size;
+  }
+
+  public int inputs() {
+    return base.inputs();
+  }
+
+  public int outputs() {
+    return base.outputs();
+  }
+
+  public void copyInput(final int row, final double[] dst, final int off) {
+    base.copyInput(rows[index(row)], dst, off);
+  }
+
+  public void copyOutput(final int row, final double[] dst, final int off) {
+    base.copyOutput(rows[index(row)], dst, off);
+  }
+}
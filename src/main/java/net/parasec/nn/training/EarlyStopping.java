@@ -0,0 +1,63 @@
+package net.parasec.nn.training;
+
+/**
+ * early stopping criteria of a training run (see TrainingParameters).
+ *
+ * patience: stop when the testing rmse (the training rmse if there is no test
+ * set) has not improved on its best by more than minDelta for patience
+ * epochs. plateau: stop when the training rmse has fallen by less than the
+ * threshold over the last patience epochs (the last epoch if patience is 0),
+ * i.e., training has converged.
+ */
+final class EarlyStopping {
+  private final int patience;
+  private final double minDelta, plateau;
+
+  // best monitored rmse and its epoch.
+  private double best = Double.MAX_VALUE;
+  private int bestEpoch;
+
+  // training rmse of the last window+1 epochs.
+  private final double[] history;
+
+
+  EarlyStopping(final TrainingParameters params) {
+    patience = params.getPatience();
+    minDelta = params.getMinDelta();
+    plateau = params.getPlateau();
+    history = new double[Math.max(patience, 1)+1];
+  }
+
+  /**
+   * true if any criterion is set.
+   */
+  boolean isEnabled() {
+    return patience > 0 || plateau > 0;
+  }
+
+  /**
+   * true if training should stop after this epoch (0 based).
+   * @param testing testing rmse, NaN if there is no test set.
+   */
+  boolean stop(final int epoch, final double training, final double testing) {
+    history[epoch%history.length] = training;
+    if(patience > 0) {
+      final double monitored = Double.isNaN(testing) ? training : testing;
+      if(monitored < best-minDelta) {
+        best = monitored;
+        bestEpoch = epoch;
+      } else if(epoch-bestEpoch >= patience) {
+        return true;
+      }
+    }
+    // fall over the window (the oldest entry is the one to be replaced next).
+    final int window = history.length-1;
+    return plateau > 0 && epoch >= window &&
+        history[(epoch-window)%history.length]-training < plateau;
+  }
+
+  public String toString() {
+    return "patience = " + patience + " min delta = " + minDelta +
+        " plateau = " + plateau;
+  }
+}
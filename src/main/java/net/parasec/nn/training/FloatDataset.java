@@ -0,0 +1,153 @@
+package net.parasec.nn.training;
+
+import java.util.List;
+import java.util.Random;
+
+/**
+ * columnar in-memory single precision dataset: the float counterpart of
+ * ArrayDataset. input and output vectors are packed into one float[] each
+ * (row-major), rather than held as a FloatTrainingInstance (an object and two
+ * arrays) per row, so a float dataset takes half the heap of a double one.
+ *
+ * a dataset may be a window of rows [offset, offset+size) of its arrays,
+ * shared with other windows (see range).
+ */
+public final class FloatDataset {
+  private final float[] inputData, outputData;
+  private final int offset, size, nInputs, nOutputs;
+
+
+  /**
+   * rows of packed input and output vectors.
+   */
+  public FloatDataset(final float[] inputData, final float[] outputData,
+      final int inputs, final int outputs) {
+    this(inputData, outputData, 0, inputData.length/inputs, inputs, outputs);
+    if(inputData.length != size*inputs || outputData.length != size*outputs)
+      throw new IllegalArgumentException(inputData.length + " inputs and " +
+          outputData.length + " outputs are not whole rows of " + inputs +
+          "+" + outputs);
+  }
+
+  private FloatDataset(final float[] inputData, final float[] outputData,
+      final int offset, final int size, final int inputs, final int outputs) {
+    this.inputData = inputData;
+    this.outputData = outputData;
+    this.offset = offset;
+    this.size = size;
+    this.nInputs = inputs;
+    this.nOutputs = outputs;
+  }
+
+  /**
+   * single precision copy of the rows of any dataset.
+   */
+  public static FloatDataset narrow(final Dataset dataset) {
+    final int len = dataset.size();
+    final int inputs = dataset.inputs();
+    final int outputs = dataset.outputs();
+    final float[] in = new float[len*inputs];
+    final float[] out = new float[len*outputs];
+    final double[] row = new double[Math.max(inputs, outputs)];
+    for(int i = 0; i < len; i++) {
+      dataset.copyInput(i, row, 0);
+      for(int j = inputs; --j >= 0; )
+        in[i*inputs+j] = (float) row[j];
+      dataset.copyOutput(i, row, 0);
+      for(int j = outputs; --j >= 0; )
+        out[i*outputs+j] = (float) row[j];
+    }
+    return new FloatDataset(in, out, 0, len, inputs, outputs);
+  }
+
+  /**
+   * packed copy of a training-instance list.
+   */
+  public static FloatDataset of(final List<FloatTrainingInstance> instances) {
+    final int len = instances.size();
+    final int inputs = len > 0 ? instances.get(0).getInputVector().length : 0;
+    final int outputs
+        = len > 0 ? instances.get(0).getOutputVector().length : 0;
+    final float[] in = new float[len*inputs];
+    final float[] out = new float[len*outputs];
+    for(int i = 0; i < len; i++) {
+      final FloatTrainingInstance instance = instances.get(i);
+      System.arraycopy(instance.getInputVector(), 0, in, i*inputs, inputs);
+      System.arraycopy(instance.getOutputVector(), 0, out, i*outputs,
+          outputs);
+    }
+    return new FloatDataset(in, out, 0, len, inputs, outputs);
+  }
+
+  /**
+   * rows [from, to) of this dataset, sharing its arrays.
+   */
+  public FloatDataset range(final int from, final int to) {
+    if(from < 0 || to > size || from > to)
+      throw new IndexOutOfBoundsException("[" + from + ", " + to +
+          ") of " + size + " rows");
+    return new FloatDataset(inputData, outputData, offset+from, to-from,
+        nInputs, nOutputs);
+  }
+
+  /**
+   * shuffle the rows in place (moving the packed values).
+   * the same permutation as Collections.shuffle with the same prng.
+   */
+  public void shuffle(final Random prng) {
+    for(int i = size; i > 1; i--)
+      swap(i-1, prng.nextInt(i));
+  }
+
+  /**
+   * reverse the order of the rows in place.
+   */
+  public void reverse() {
+    for(int i = 0, j = size-1; i < j; i++, j--)
+      swap(i, j);
+  }
+
+  private void swap(final int i, final int j) {
+    swap(inputData, nInputs, offset+i, offset+j);
+    swap(outputData, nOutputs, offset+i, offset+j);
+  }
+
+  private static void swap(final float[] data, final int stride,
+      final int i, final int j) {
+    for(int a = i*stride, b = j*stride, end = a+stride; a < end; a++, b++) {
+      final float t = data[a];
+      data[a] = data[b];
+      data[b] = t;
+    }
+  }
+
+  public int size() {
+    return size;
+  }
+
+  public boolean isEmpty() {
+    return size == 0;
+  }
+
+  public int inputs() {
+    return nInputs;
+  }
+
+  public int outputs() {
+    return nOutputs;
+  }
+
+  /**
+   * copy the input vector of a row into dst at off.
+   */
+  public void copyInput(final int row, final float[] dst, final int off) {
+    System.arraycopy(inputData, (offset+row)*nInputs, dst, off, nInputs);
+  }
+
+  /**
+   * copy the output vector of a row into dst at off.
+   */
+  public void copyOutput(final int row, final float[] dst, final int off) {
+    System.arraycopy(outputData, (offset+row)*nOutputs, dst, off, nOutputs);
+  }
+}
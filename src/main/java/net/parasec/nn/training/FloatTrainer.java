@@ -0,0 +1,190 @@
+package net.parasec.nn.training;
+
+import net.parasec.nn.logging.Level;
+import net.parasec.nn.logging.Logger;
+import net.parasec.nn.logging.RateLimiter;
+import net.parasec.nn.network.FloatANN;
+import net.parasec.nn.util.MathUtil;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * train a single precision network.
+ *
+ * stochastic backpropagation with the momentum optimizer only: the
+ * mini-batch, parallel, reshuffling and checkpointing modes of Trainer are
+ * not available in single precision, and asking for them is an error.
+ * errors are accumulated in double precision.
+ */
+public final class FloatTrainer {
+  private static final Logger LOG = Logger.getLogger(FloatTrainer.class);
+
+  /**
+   * stochastic backpropagation with an optional test/holdback set.
+   *
+   * note that supplied network is optimised in place. if testing is not
+   * empty, the network will be initialised with weights yielding best score
+   * on the test set.
+   */
+  public static TrainingReport train(final FloatANN ann,
+      final List<FloatTrainingInstance> training,
+      final List<FloatTrainingInstance> testing,
+      final TrainingParameters params) {
+    return train(ann, FloatDataset.of(training), FloatDataset.of(testing),
+        params);
+  }
+
+  /**
+   * stochastic backpropagation over packed datasets. see above.
+   */
+  public static TrainingReport train(final FloatANN ann,
+      final FloatDataset training, final FloatDataset testing,
+      final TrainingParameters params) {
+    check(params);
+    final int epochs = params.getEpochs();
+    final double baseRate = params.getLearningRate();
+    final Schedule schedule = params.getSchedule();
+    final float momentum = (float) params.getMomentum();
+    final long l = System.currentTimeMillis();
+    int bestEpoch = 0;
+    double lowestError = Double.MAX_VALUE;
+    // best weights so far, copied into the same buffer on each improvement.
+    float[] bestNetwork = null;
+
+    double[] trainingError = new double[epochs];
+    double[] testingError = new double[epochs];
+    final EarlyStopping stopping = new EarlyStopping(params);
+    int trained = epochs;
+
+    // row buffers.
+    final float[] inputVector = new float[training.inputs()];
+    final float[] outputVector = new float[training.outputs()];
+
+    final RateLimiter limiter = new RateLimiter();
+    for(int i = 0; i < epochs; i++) {
+      final float learningRate = (float) schedule.rate(baseRate, i, epochs);
+      double trainingSum = 0;
+      for(int r = 0, len = training.size(); r < len; r++) {
+        training.copyInput(r, inputVector, 0);
+        training.copyOutput(r, outputVector, 0);
+        final float[] networkOutput = ann.feedForward(inputVector);
+        ann.backPropagateError(outputVector, learningRate, momentum);
+        trainingSum += networkError(networkOutput, outputVector);
+      }
+      final double trainingMse
+          = MathUtil.fastSqrt(trainingSum/training.size());
+      trainingError[i] = trainingMse;
+
+      // rate limited progress, every epoch at debug level.
+      final Level progress = limiter.ready() ? Level.INFO : Level.DEBUG;
+      if(!testing.isEmpty()) {
+        final double testingMse = MathUtil.fastSqrt(testError(ann, testing,
+            inputVector, outputVector)/testing.size());
+        if(testingMse < lowestError) {
+          bestEpoch = i;
+          lowestError = testingMse;
+          if(bestNetwork == null)
+            bestNetwork = new float[ann.getPackedWeights().length];
+          ann.snapshotWeights(bestNetwork);
+        }
+        testingError[i] = testingMse;
+        if(LOG.isEnabled(progress))
+          LOG.log(progress, "epoch = %d training rmse = %.10f " +
+              "testing rmse = %.10f", i, trainingMse, testingMse);
+      } else {
+        if(LOG.isEnabled(progress))
+          LOG.log(progress, "epoch = %d rmse = %.10f", i, trainingMse);
+      }
+
+      if(stopping.isEnabled() && stopping.stop(i, trainingMse,
+          !testing.isEmpty() ? testingError[i] : Double.NaN)) {
+        LOG.info("stopping early at epoch = " + i + " (" + stopping + ")");
+        trained = i+1;
+        trainingError = Arrays.copyOf(trainingError, trained);
+        testingError = Arrays.copyOf(testingError, trained);
+        break;
+      }
+    }
+
+    double testingAverageError = 0;
+    double testingMinError = 0;
+    double testingMaxError = 0;
+    if(!testing.isEmpty() && bestNetwork != null) {
+      ann.restoreWeights(bestNetwork);
+      double sum = 0;
+      double min = 1;
+      double max = 0;
+      int n = 0;
+      for(int r = 0, rows = testing.size(); r < rows; r++) {
+        testing.copyInput(r, inputVector, 0);
+        testing.copyOutput(r, outputVector, 0);
+        final float[] networkOutput = ann.feedForward(inputVector);
+        final float[] desiredOutput = outputVector;
+        final int len = networkOutput.length;
+        n += len;
+        for(int j = 0; j < len; j++) {
+          final double diff = Math.abs(networkOutput[j]-desiredOutput[j]);
+          sum += diff;
+          if(diff < min)
+            min = diff;
+          if(diff > max)
+            max = diff;
+        }
+      }
+      testingAverageError = sum/n;
+      testingMinError = min;
+      testingMaxError = max;
+    } else {
+      bestEpoch = trained-1;
+    }
+    return new TrainingReport(bestEpoch+1,
+        trainingError[trainingError.length-1],
+        lowestError, testingAverageError, testingMinError, testingMaxError,
+        trainingError, testingError, System.currentTimeMillis()-l, trained,
+        epochs);
+  }
+
+  // parameters of Trainer with no single precision equivalent.
+  private static void check(final TrainingParameters params) {
+    if(params.getBatchSize() > 1 || params.getThreads() > 1 ||
+        params.isHogwild())
+      throw new IllegalArgumentException("single precision training is " +
+          "stochastic and single threaded: no batch size, threads or " +
+          "hogwild");
+    if(!params.getOptimizer().equals("momentum"))
+      throw new IllegalArgumentException("single precision training only " +
+          "supports the momentum optimizer, not " + params.getOptimizer());
+    if(params.getShuffle() != null)
+      throw new IllegalArgumentException("single precision training can " +
+          "not reshuffle");
+    if(params.getCheckpoint() != null || params.getResume() != null)
+      throw new IllegalArgumentException("single precision training can " +
+          "not checkpoint or resume");
+  }
+
+  private static double testError(final FloatANN ann,
+      final FloatDataset testing, final float[] inputVector,
+      final float[] outputVector) {
+    double sum = 0;
+    for(int r = 0, len = testing.size(); r < len; r++) {
+      testing.copyInput(r, inputVector, 0);
+      testing.copyOutput(r, outputVector, 0);
+      sum += networkError(ann.feedForward(inputVector), outputVector);
+    }
+    return sum;
+  }
+
+  /**
+   * sum of squares
+   */
+  private static double networkError(final float[] output,
+      final float[] desiredOutput) {
+    double sum = 0;
+    for(int i = 0, len = output.length; i < len; i++) {
+      final double diff = desiredOutput[i]-output[i];
+      sum += diff*diff;
+    }
+    return sum;
+  }
+}
@@ -0,0 +1,31 @@
+package net.parasec.nn.training;
+
+import java.util.Arrays;
+
+/**
+ * supervised learning: single precision training instance.
+ */
+public final class FloatTrainingInstance {
+  private final float[] inputVector;
+  private final float[] outputVector;
+
+ 
+  public FloatTrainingInstance(final float[] inputVector, 
+      final float[] outputVector) {
+    this.inputVector = inputVector;
+    this.outputVector = outputVector;
+  }
+
+  public float[] getInputVector() {
+    return inputVector;
+  }
+
+  public float[] getOutputVector() {
+    return outputVector;
+  }
+
+  public String toString() {
+    return Arrays.toString(inputVector) + " = " + 
+        Arrays.toString(outputVector);
+  }
+}
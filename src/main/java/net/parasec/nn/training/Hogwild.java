@@ -0,0 +1,105 @@
+package net.parasec.nn.training;
+
+import net.parasec.nn.network.ANN;
+import net.parasec.nn.network.Batch;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * asynchronous (hogwild) stochastic backpropagation of a single network.
+ * see: Niu, Recht, Re, Wright. Hogwild!: A Lock-Free Approach to
+ * Parallelizing Stochastic Gradient Descent. 2011.
+ *
+ * each epoch, the training data is divided into one disjoint shard per
+ * thread. every thread streams through its shard with its own activations
+ * and deltas and updates the shared weights (and momentum) after each
+ * instance without any locking. threads only synchronise at the end of an
+ * epoch.
+ */
+final class Hogwild implements ParallelEpoch {
+  private final ANN ann;
+  private final Batch[] workers;
+  private final ForkJoinPool pool;
+  private final int nOutputs;
+
+
+  Hogwild(final ANN ann, final int threads, final TrainingMetrics metrics) {
+    this.ann = ann;
+    final int[] structure = ann.getStructure();
+    nOutputs = structure[structure.length-1];
+    workers = new Batch[threads];
+    for(int i = threads; --i >= 0; )
+      workers[i] = new Batch(structure, 1);
+    pool = ParallelEpoch.pool(threads, metrics);
+  }
+
+  public double epoch(final Dataset instances,
+      final double learningRate, final double momentum) {
+    // one optimizer step per pass, from this thread only: a per instance
+    // step from every worker would race.
+    ann.getOptimizer().step();
+    return pool.invoke(new ShardTask(instances, learningRate, momentum, 0,
+        workers.length));
+  }
+
+  public void shutdown() {
+    pool.shutdown();
+  }
+
+  /**
+   * train on the shards of workers [lo, hi).
+   */
+  private final class ShardTask extends RecursiveTask<Double> {
+    private static final long serialVersionUID = 1L;
+
+    private final Dataset instances;
+    private final double learningRate, momentum;
+    private final int lo, hi;
+
+    ShardTask(final Dataset instances, final double learningRate,
+        final double momentum, final int lo, final int hi) {
+      this.instances = instances;
+      this.learningRate = learningRate;
+      this.momentum = momentum;
+      this.lo = lo;
+      this.hi = hi;
+    }
+
+    protected Double compute() {
+      if(hi-lo == 1)
+        return shard(lo);
+      final int mid = (lo+hi) >>> 1;
+      final ShardTask left
+          = new ShardTask(instances, learningRate, momentum, lo, mid);
+      left.fork();
+      final double right
+          = new ShardTask(instances, learningRate, momentum, mid, hi)
+              .compute();
+      return left.join()+right;
+    }
+
+    private double shard(final int worker) {
+      final int len = instances.size();
+      final int threads = workers.length;
+      final int from = (int) ((long) len*worker/threads);
+      final int to = (int) ((long) len*(worker+1)/threads);
+      final Batch batch = workers[worker];
+      final double[] inputs = batch.getInputs();
+      final double[] targets = batch.getTargets();
+      final double[] out = batch.getNetworkOutputs();
+      double sum = 0;
+      for(int i = from; i < to; i++) {
+        instances.copyInput(i, inputs, 0);
+        instances.copyOutput(i, targets, 0);
+        ann.feedForward(batch, 1);
+        ann.update(batch, learningRate, momentum);
+        for(int j = 0; j < nOutputs; j++) {
+          final double diff = targets[j]-out[j];
+          sum += diff*diff;
+        }
+      }
+      return sum;
+    }
+  }
+}
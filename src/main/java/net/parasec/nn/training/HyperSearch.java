@@ -0,0 +1,395 @@
+package net.parasec.nn.training;
+
+import net.parasec.nn.logging.Logger;
+import net.parasec.nn.network.ANN;
+import net.parasec.nn.network.Activation;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.SplittableRandom;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * random hyperparameter search with successive halving.
+ * see: Jamieson, Talwalkar. Non-stochastic Best Arm Identification and
+ * Hyperparameter Optimization. 2016.
+ *
+ * trials are random configurations (hidden layers, learning rate, momentum
+ * and initial weight range) trained on the same training and test sets. all
+ * trials are trained for minEpochs, then only the best 1/eta of them (by
+ * lowest testing rmse so far) are trained on for eta times as many epochs,
+ * and so on until maxEpochs. unpromising trials are stopped after a
+ * fraction of the full budget. the trials of each round are trained
+ * concurrently, each with its own prng (so a seeded search is reproducible)
+ * and its own shuffled index view of the training set.
+ */
+public final class HyperSearch {
+  private static final Logger LOG = Logger.getLogger(HyperSearch.class);
+
+  private final Dataset training, testing;
+  private final Random random;
+
+  private List<int[]> hidden = Collections.singletonList(new int[0]);
+  private double minLearningRate = 0.1, maxLearningRate = 0.1;
+  private double minMomentum = 0, maxMomentum = 0;
+  private double minWeight = 0.5, maxWeight = 0.5;
+  private Activation hiddenActivation = Activation.SIGMOID;
+  private Activation outputActivation = Activation.SIGMOID;
+  private int trials = 16;
+  private int minEpochs = 10;
+  private int maxEpochs = 1000;
+  private int eta = 3;
+  private int threads = Runtime.getRuntime().availableProcessors();
+  private TrainingParameters base = new TrainingParameters(0, 0, 0);
+
+  /**
+   * one configuration and its progress.
+   */
+  public static final class Trial {
+    private final int id;
+    private final int[] hidden;
+    private final double learningRate, momentum, weightRange;
+    private final Random prng;
+    private ANN ann;
+    private DatasetView training;
+    private int epochs, bestEpoch, rounds;
+    private boolean stopped;
+    private double bestError = Double.MAX_VALUE;
+
+    Trial(final int id, final int[] hidden, final double learningRate,
+        final double momentum, final double weightRange, final Random prng) {
+      this.id = id;
+      this.hidden = hidden;
+      this.learningRate = learningRate;
+      this.momentum = momentum;
+      this.weightRange = weightRange;
+      this.prng = prng;
+    }
+
+    public int getId() {
+      return id;
+    }
+
+    public int[] getHidden() {
+      return hidden.clone();
+    }
+
+    public double getLearningRate() {
+      return learningRate;
+    }
+
+    public double getMomentum() {
+      return momentum;
+    }
+
+    /**
+     * initial weights are drawn from [-weightRange, weightRange].
+     */
+    public double getWeightRange() {
+      return weightRange;
+    }
+
+    /**
+     * epochs trained before the trial was stopped (or completed).
+     */
+    public int getEpochs() {
+      return epochs;
+    }
+
+    /**
+     * epoch (1 based) of the lowest testing rmse.
+     */
+    public int getBestEpoch() {
+      return bestEpoch;
+    }
+
+    public double getBestError() {
+      return bestError;
+    }
+
+    /**
+     * number of rounds of successive halving the trial took part in.
+     */
+    public int getRounds() {
+      return rounds;
+    }
+
+    /**
+     * the network, with its best weights of the last round trained.
+     */
+    public ANN getANN() {
+      return ann;
+    }
+
+    public String toString() {
+      return "trial " + id + " hidden = " + Arrays.toString(hidden) +
+          " lr = " + String.format("%.5f", learningRate) +
+          " mo = " + String.format("%.5f", momentum) +
+          " w = " + String.format("%.5f", weightRange) +
+          " epochs = " + epochs + " best epoch = " + bestEpoch +
+          " testing rmse = " + String.format("%.5f", bestError);
+    }
+  }
+
+  /**
+   * @param training training set.
+   * @param testing non-empty test set used to rank the trials.
+   */
+  public HyperSearch(final Dataset training, final Dataset testing,
+      final Random random) {
+    if(testing.size() == 0)
+      throw new IllegalArgumentException("a search needs a test set");
+    this.training = training;
+    this.testing = testing;
+    this.random = random;
+  }
+
+  /**
+   * candidate hidden layer structures (each the number of nodes in each
+   * hidden layer), chosen uniformly.
+   */
+  public HyperSearch setHidden(final List<int[]> hidden) {
+    if(hidden.isEmpty())
+      throw new IllegalArgumentException("no hidden layer structures");
+    this.hidden = new ArrayList<int[]>(hidden);
+    return this;
+  }
+
+  /**
+   * learning rate range, sampled log-uniformly.
+   */
+  public HyperSearch setLearningRate(final double min, final double max) {
+    if(min <= 0 || max < min)
+      throw new IllegalArgumentException("bad learning rate range");
+    minLearningRate = min;
+    maxLearningRate = max;
+    return this;
+  }
+
+  /**
+   * momentum range, sampled uniformly.
+   */
+  public HyperSearch setMomentum(final double min, final double max) {
+    if(min < 0 || max < min)
+      throw new IllegalArgumentException("bad momentum range");
+    minMomentum = min;
+    maxMomentum = max;
+    return this;
+  }
+
+  /**
+   * range of r, sampled uniformly, for initial weights in [-r, r].
+   */
+  public HyperSearch setWeightRange(final double min, final double max) {
+    if(min <= 0 || max < min)
+      throw new IllegalArgumentException("bad weight range");
+    minWeight = min;
+    maxWeight = max;
+    return this;
+  }
+
+  public HyperSearch setActivations(final Activation hidden,
+      final Activation output) {
+    hiddenActivation = hidden;
+    outputActivation = output;
+    return this;
+  }
+
+  /**
+   * number of configurations sampled.
+   */
+  public HyperSearch setTrials(final int trials) {
+    if(trials < 1)
+      throw new IllegalArgumentException("trials must be >= 1");
+    this.trials = trials;
+    return this;
+  }
+
+  /**
+   * epochs of the first round, and the most epochs of any trial.
+   */
+  public HyperSearch setEpochs(final int minEpochs, final int maxEpochs) {
+    if(minEpochs < 1 || maxEpochs < minEpochs)
+      throw new IllegalArgumentException("bad epoch range");
+    this.minEpochs = minEpochs;
+    this.maxEpochs = maxEpochs;
+    return this;
+  }
+
+  /**
+   * 1/eta of the trials survive each round.
+   */
+  public HyperSearch setEta(final int eta) {
+    if(eta < 2)
+      throw new IllegalArgumentException("eta must be >= 2");
+    this.eta = eta;
+    return this;
+  }
+
+  /**
+   * batch size, threads per trial, hogwild, reshuffling and early stopping
+   * of every trial. (epochs, learning rate and momentum are ignored.) each
+   * trial reshuffles with its own prng.
+   */
+  public HyperSearch setParameters(final TrainingParameters params) {
+    base = params;
+    return this;
+  }
+
+  /**
+   * number of trials trained at once.
+   */
+  public HyperSearch setThreads(final int threads) {
+    if(threads < 1)
+      throw new IllegalArgumentException("threads must be >= 1");
+    this.threads = threads;
+    return this;
+  }
+
+  /**
+   * run the search. returns every trial, ranked: trials which survived more
+   * rounds first, then by lowest testing rmse.
+   */
+  public List<Trial> search() {
+    final SplittableRandom streams = new SplittableRandom(random.nextLong());
+    final List<Trial> all = new ArrayList<Trial>();
+    for(int i = 0; i < trials; i++)
+      all.add(sample(i+1, new Random(streams.split().nextLong())));
+
+    final ExecutorService executor = Executors.newFixedThreadPool(
+        Math.min(threads, trials), new ThreadFactory() {
+          private final AtomicInteger n = new AtomicInteger();
+          public Thread newThread(final Runnable r) {
+            final Thread t = new Thread(r, "search-" + n.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+          }
+        });
+    try {
+      List<Trial> alive = all;
+      int budget = minEpochs;
+      for(int round = 1; ; round++) {
+        LOG.info("round " + round + ": " + alive.size() + " trials to " +
+            budget + " epochs");
+        run(executor, alive, budget);
+        if(budget >= maxEpochs)
+          break;
+        alive = new ArrayList<Trial>(alive);
+        Collections.sort(alive, BY_ERROR);
+        alive = alive.subList(0, Math.max(1, alive.size()/eta));
+        budget = (int) Math.min(maxEpochs, (long) budget*eta);
+      }
+    } finally {
+      executor.shutdownNow();
+    }
+    final List<Trial> ranked = new ArrayList<Trial>(all);
+    Collections.sort(ranked, new Comparator<Trial>() {
+      public int compare(final Trial a, final Trial b) {
+        if(a.rounds != b.rounds)
+          return a.rounds > b.rounds ? -1 : 1;
+        return BY_ERROR.compare(a, b);
+      }
+    });
+    return ranked;
+  }
+
+  private static final Comparator<Trial> BY_ERROR = new Comparator<Trial>() {
+    public int compare(final Trial a, final Trial b) {
+      final int c = Double.compare(a.bestError, b.bestError);
+      return c != 0 ? c : a.id-b.id;
+    }
+  };
+
+  private Trial sample(final int id, final Random prng) {
+    final int[] h = hidden.get(random.nextInt(hidden.size()));
+    final double lr = minLearningRate*Math.exp(random.nextDouble()*
+        Math.log(maxLearningRate/minLearningRate));
+    final double mo = minMomentum+random.nextDouble()*(maxMomentum-minMomentum);
+    final double w = minWeight+random.nextDouble()*(maxWeight-minWeight);
+    return new Trial(id, h, lr, mo, w, prng);
+  }
+
+  // train every trial on to budget epochs.
+  private void run(final ExecutorService executor, final List<Trial> trials,
+      final int budget) {
+    final List<Future<Trial>> futures = new ArrayList<Future<Trial>>();
+    try {
+      for(final Trial trial : trials)
+        futures.add(executor.submit(new Callable<Trial>() {
+          public Trial call() {
+            return train(trial, budget);
+          }
+        }));
+      for(final Future<Trial> future : futures)
+        LOG.info(future.get());
+    } catch(final InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new CancellationException("search interrupted");
+    } catch(final ExecutionException e) {
+      final Throwable cause = e.getCause();
+      if(cause instanceof RuntimeException)
+        throw (RuntimeException) cause;
+      if(cause instanceof Error)
+        throw (Error) cause;
+      throw new IllegalStateException("trial failed", cause);
+    } finally {
+      for(final Future<Trial> future : futures)
+        future.cancel(true);
+    }
+  }
+
+  private Trial train(final Trial trial, final int budget) {
+    // stopped early in an earlier round: no better with more epochs.
+    if(trial.stopped) {
+      trial.rounds++;
+      return trial;
+    }
+    if(trial.ann == null) {
+      final int[] structure = new int[trial.hidden.length+2];
+      structure[0] = training.inputs();
+      System.arraycopy(trial.hidden, 0, structure, 1, trial.hidden.length);
+      structure[structure.length-1] = training.outputs();
+      trial.ann = new ANN(-trial.weightRange, trial.weightRange, structure,
+          Activation.layers(structure, hiddenActivation, outputActivation),
+          trial.prng);
+      trial.training = DatasetView.shuffled(training, trial.prng);
+    }
+    // carry on from the best weights of the last round.
+    final TrainingReport report = Trainer.train(trial.ann, trial.training,
+        testing, new TrainingParameters(budget-trial.epochs,
+            trial.learningRate, trial.momentum)
+                .setOptimizer(base.getOptimizer())
+                // over the whole budget, not each round.
+                .setSchedule(base.getSchedule().from(trial.epochs,
+                    maxEpochs))
+                .setBatchSize(base.getBatchSize())
+                .setThreads(base.getThreads())
+                .setHogwild(base.isHogwild())
+                .setShuffle(base.getShuffle() != null ? trial.prng : null)
+                .setPatience(base.getPatience())
+                .setMinDelta(base.getMinDelta())
+                .setPlateau(base.getPlateau()));
+    final double[] errors = report.getTestingError();
+    for(int i = 0; i < errors.length; i++) {
+      if(errors[i] < trial.bestError) {
+        trial.bestError = errors[i];
+        trial.bestEpoch = trial.epochs+i+1;
+      }
+    }
+    trial.epochs += report.getEpochs();
+    trial.stopped = report.isStoppedEarly();
+    trial.rounds++;
+    return trial;
+  }
+}
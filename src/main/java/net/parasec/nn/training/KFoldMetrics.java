@@ -0,0 +1,135 @@
+package net.parasec.nn.training;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * queue and occupancy of the k-fold worker pool. workers are numbered in
+ * the order they take their first fold.
+ */
+public final class KFoldMetrics implements KFoldMetricsMXBean {
+  private final int folds;
+  private final int workers;
+  private final long start = System.nanoTime();
+
+  private final AtomicInteger submitted = new AtomicInteger();
+  private final AtomicInteger started = new AtomicInteger();
+  private final AtomicInteger completed = new AtomicInteger();
+  private final AtomicInteger failed = new AtomicInteger();
+
+  private final AtomicInteger nextWorker = new AtomicInteger();
+  private final ThreadLocal<Integer> worker = new ThreadLocal<Integer>() {
+    protected Integer initialValue() {
+      return nextWorker.getAndIncrement();
+    }
+  };
+  private final AtomicIntegerArray fold, tasks;
+  // finished busy time and start of the current fold (0 = idle).
+  private final AtomicLongArray busy, since;
+
+
+  KFoldMetrics(final int folds, final int workers) {
+    this.folds = folds;
+    this.workers = workers;
+    fold = new AtomicIntegerArray(workers);
+    tasks = new AtomicIntegerArray(workers);
+    busy = new AtomicLongArray(workers);
+    since = new AtomicLongArray(workers);
+  }
+
+  void submitted() {
+    submitted.incrementAndGet();
+  }
+
+  /**
+   * the calling worker has started on fold f (1 based).
+   */
+  void begin(final int f) {
+    final int w = worker.get();
+    started.incrementAndGet();
+    fold.set(w, f);
+    tasks.incrementAndGet(w);
+    since.set(w, System.nanoTime());
+  }
+
+  /**
+   * the calling worker has finished its fold.
+   */
+  void end(final boolean ok) {
+    final int w = worker.get();
+    busy.addAndGet(w, System.nanoTime()-since.get(w));
+    since.set(w, 0);
+    fold.set(w, 0);
+    (ok ? completed : failed).incrementAndGet();
+  }
+
+  public int getFolds() {
+    return folds;
+  }
+
+  public int getWorkers() {
+    return workers;
+  }
+
+  public int getQueued() {
+    return submitted.get()-started.get();
+  }
+
+  public int getRunning() {
+    return started.get()-completed.get()-failed.get();
+  }
+
+  public int getCompleted() {
+    return completed.get();
+  }
+
+  public int getFailed() {
+    return failed.get();
+  }
+
+  public double getOccupancy() {
+    final long now = System.nanoTime();
+    long sum = 0;
+    for(int i = workers; --i >= 0; )
+      sum += busy(i, now);
+    return (double) sum/(workers*Math.max(now-start, 1));
+  }
+
+  public int[] getWorkerFold() {
+    final int[] v = new int[workers];
+    for(int i = workers; --i >= 0; )
+      v[i] = fold.get(i);
+    return v;
+  }
+
+  public int[] getWorkerTasks() {
+    final int[] v = new int[workers];
+    for(int i = workers; --i >= 0; )
+      v[i] = tasks.get(i);
+    return v;
+  }
+
+  public long[] getWorkerBusyTime() {
+    final long now = System.nanoTime();
+    final long[] v = new long[workers];
+    for(int i = workers; --i >= 0; )
+      v[i] = busy(i, now)/1000000;
+    return v;
+  }
+
+  public double[] getWorkerOccupancy() {
+    final long now = System.nanoTime();
+    final double elapsed = Math.max(now-start, 1);
+    final double[] v = new double[workers];
+    for(int i = workers; --i >= 0; )
+      v[i] = busy(i, now)/elapsed;
+    return v;
+  }
+
+  // busy time of worker i, including its current fold.
+  private long busy(final int i, final long now) {
+    final long s = since.get(i);
+    return busy.get(i)+(s != 0 ? now-s : 0);
+  }
+}
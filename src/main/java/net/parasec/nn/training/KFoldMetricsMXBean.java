@@ -0,0 +1,49 @@
+package net.parasec.nn.training;
+
+/**
+ * the worker pool of a k-fold run, published over jmx (see Metrics). each
+ * fold's progress is published separately (see TrainingMetricsMXBean).
+ */
+public interface KFoldMetricsMXBean {
+
+  int getFolds();
+
+  int getWorkers();
+
+  /**
+   * folds waiting for a worker.
+   */
+  int getQueued();
+
+  int getRunning();
+
+  int getCompleted();
+
+  int getFailed();
+
+  /**
+   * busy time of the pool as a fraction of its capacity (workers * elapsed
+   * time).
+   */
+  double getOccupancy();
+
+  /**
+   * per worker: fold being trained (1 based, 0 = idle).
+   */
+  int[] getWorkerFold();
+
+  /**
+   * per worker: folds trained, including the current one.
+   */
+  int[] getWorkerTasks();
+
+  /**
+   * per worker: time spent training, in milliseconds.
+   */
+  long[] getWorkerBusyTime();
+
+  /**
+   * per worker: busy time as a fraction of the elapsed time.
+   */
+  double[] getWorkerOccupancy();
+}
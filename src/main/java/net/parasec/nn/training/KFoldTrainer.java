@@ -2,20 +2,34 @@ package net.parasec.nn.training;
 
 import net.parasec.nn.logging.Logger;
 import net.parasec.nn.network.ANN;
+import net.parasec.nn.network.Activation;
 
-import java.util.concurrent.Executors;
-import java.util.concurrent.CountDownLatch;
-import java.util.concurrent.BlockingQueue;
-import java.util.concurrent.LinkedBlockingQueue;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Random;
-import java.util.Stack;
+import java.util.SplittableRandom;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * train network with k-fold cross validation.
  * see: T. Mitchell. Machine Learning. p112.
  *
- * this implementation trains networks concurrently.
+ * this implementation trains networks concurrently: one task per fold on a
+ * fixed pool of min(k, threads) threads. each fold has its own prng, split
+ * from a stream seeded by the supplied prng, so the folds of a seeded run
+ * are reproducible whatever the scheduling and no prng is shared between
+ * threads. if there are more threads than folds, the spare threads are
+ * shared out between the folds for data-parallel training (see
+ * TrainingParameters.setThreads).
  */
 public final class KFoldTrainer {
   private static final Logger LOG = Logger.getLogger(KFoldTrainer.class);
@@ -24,37 +38,68 @@ public final class KFoldTrainer {
    * internal: this just encapsulates a training-task: training over a training
    * set + evaluation over a test set.
    */ 
-  private final class TrainingTask {
+  private final class TrainingTask implements Callable<KFoldResults> {
     private final Data data;
-    private final int resultIndex;       
+    private final Random prng;
+    private final TrainingParameters params;
+    private final int fold;
+    private final KFoldMetrics metrics;
 
-    public TrainingTask(final Data data, final int resultIndex) {
+    public TrainingTask(final Data data, final Random prng, 
+        final TrainingParameters params, final int fold, 
+        final KFoldMetrics metrics) {
       this.data = data;
-      this.resultIndex = resultIndex;
-    }
-
-    public Data getData() {
-      return data;
+      this.prng = prng;
+      this.params = params;
+      this.fold = fold;
+      this.metrics = metrics;
     }
 
-    public int getResultIndex() {
-      return resultIndex;
+    public KFoldResults call() {
+      LOG.info("training. " + Thread.currentThread().getName() + 
+          " got task...");
+      if(metrics != null)
+        metrics.begin(fold);
+      boolean ok = false;
+      try {
+        final ANN ann = new ANN(minRandomWeight, maxRandomWeight, structure, 
+            activations, prng);
+        final TrainingReport report = Trainer.train(ann, data, params);
+        ok = true;
+        return new KFoldResults(ann, report);
+      } finally {
+        if(metrics != null)
+          metrics.end(ok);
+      }
     }
   }        
 
   private final double minRandomWeight;
   private final double maxRandomWeight; 
   private final int[] structure;
+  private final Activation[] activations;
   private final int maxEpochs;
   private final Random random;
 
   private final int k;
 
+  // threads shared between the folds.
+  private int threads = Runtime.getRuntime().availableProcessors();
+
 
   public KFoldTrainer(final Random random, final double minRandomWeight, 
       final double maxRandomWeight, final int[] structure, 
       final int maxEpochs, final int k) {
+    this(random, minRandomWeight, maxRandomWeight, structure, 
+        Activation.layers(structure, Activation.SIGMOID, Activation.SIGMOID),
+        maxEpochs, k);
+  }
+
+  public KFoldTrainer(final Random random, final double minRandomWeight, 
+      final double maxRandomWeight, final int[] structure, 
+      final Activation[] activations, final int maxEpochs, final int k) {
     this.random = random;
+    this.activations = activations;
     this.minRandomWeight = minRandomWeight;
     this.maxRandomWeight = maxRandomWeight;
     this.structure = structure;
@@ -62,6 +107,16 @@ public final class KFoldTrainer {
     this.k = k;
   }
 
+  /**
+   * number of threads used for training (default: 1 per core).
+   */
+  public KFoldTrainer setThreads(final int threads) {
+    if(threads < 1)
+      throw new IllegalArgumentException("threads must be >= 1");
+    this.threads = threads;
+    return this;
+  }
+
   /**
    * train K neural networks on K different splits of the data.
    *
@@ -81,75 +136,105 @@ public final class KFoldTrainer {
    */
   public KFoldResults[] train(final Data data, final double learningRate,
       final double momentum) {     
+    return train(data, 
+        new TrainingParameters(maxEpochs, learningRate, momentum));
+  }
+
+  /**
+   * as above, with the given training parameters for each fold.
+   * (the number of epochs is taken from the parameters.)
+   */
+  public KFoldResults[] train(final Data data, 
+      final TrainingParameters params) {
     final KFoldResults[] res = new KFoldResults[k];
     final int numberOfPartitions = k;
-    final List<List<TrainingInstance>> partitions 
-        = data.partition(numberOfPartitions);
     LOG.info("training. " + data.trainingSize() + " / number of partitions = " + 
         numberOfPartitions);
+    final List<Data> dataPartitions = data.folds(numberOfPartitions);
     int i = 1;
     int j = 0;
-    for(final List<TrainingInstance> p : partitions) {
-      final int size = p.size();
-      LOG.info("training. partition " + i + " size = " + size);
+    for(final Data d : dataPartitions) {
+      final int size = d.testSize();
+      LOG.debug("training. partition " + i + " size = " + size);
       j += size;
       i++;
     }
-    LOG.info("training. total = " + j);
-    final List<Data> dataPartitions = data.dataPartitions(partitions);
+    LOG.debug("training. total = " + j);
     LOG.info("training. data partitions = " + dataPartitions.size());
     for(final Data d : dataPartitions)
-      LOG.info("training. " + d.trainingSize() + " | " + d.testSize());
-
-    // queue for threads to wait on
-    final BlockingQueue<TrainingTask> queue
-        = new LinkedBlockingQueue<TrainingTask>();
-    final CountDownLatch signal = new CountDownLatch(dataPartitions.size());
-
-    // training task results
-    final Stack<Thread> threads = new Stack<Thread>();
-    final int cores = Runtime.getRuntime().availableProcessors();
-    LOG.info("using " + cores + " threads.");
-    for(int k = 0; k < cores; k++) {
-      final Thread t = Executors.defaultThreadFactory().newThread(new Runnable() {
-        public final void run() {
-          try {
-            for(;;) {
-              final TrainingTask tt = queue.take();
-              LOG.info("training. " + Thread.currentThread().toString() + 
-                  " got task from queue...");
-              final ANN ann = new ANN(minRandomWeight, maxRandomWeight, 
-                  structure, random);
-              final TrainingReport report = Trainer.train(ann, tt.getData(), 
-                  maxEpochs, learningRate, momentum);
-              res[tt.getResultIndex()] = new KFoldResults(ann, report);
-              signal.countDown();
-            }
-          } catch(final InterruptedException ie) {
-            Thread.currentThread().interrupt();
+      LOG.debug("training. " + d.trainingSize() + " | " + d.testSize());
+
+    // a prng stream per fold.
+    final SplittableRandom streams = new SplittableRandom(random.nextLong());
+    final int pool = Math.min(k, threads);
+    // spare threads go to data-parallel training within each fold.
+    final int foldThreads = params.getThreads() == 1 && threads > k 
+        ? threads/k : params.getThreads();
+    LOG.info("using " + pool + " threads. (" + foldThreads + 
+        " per fold)");
+    final ExecutorService executor = Executors.newFixedThreadPool(pool, 
+        new ThreadFactory() {
+          private final AtomicInteger n = new AtomicInteger();
+          public Thread newThread(final Runnable r) {
+            final Thread t = new Thread(r, "kfold-" + n.incrementAndGet());
+            t.setDaemon(true);
+            return t;
           }
-        }
-      });
-      threads.push(t);
-      t.start();
-    }
-    // put training tasks on queue
-    i = 0;
-    for(final Data d : dataPartitions)
-      queue.offer(new TrainingTask(d, i++));
-    // wait for tasks to be complete
+        });
+    final CompletionService<KFoldResults> completion
+        = new ExecutorCompletionService<KFoldResults>(executor);
+    // futures.get(f) is the task of fold f+1.
+    final List<Future<KFoldResults>> futures 
+        = new ArrayList<Future<KFoldResults>>();
+    // the pool, and each fold, published as run_fold_ff.
+    final String run = params.getMetrics();
+    final KFoldMetrics metrics = run != null 
+        ? Metrics.kfold(run, k, pool) : null;
     try {
+      int fold = 0;
+      for(final Data d : dataPartitions) {
+        final Random prng = new Random(streams.split().nextLong());
+        final TrainingParameters foldParams = params.copy()
+            .setThreads(foldThreads);
+        if(params.getShuffle() != null)
+          foldParams.setShuffle(prng);
+        // each fold has its own checkpoint file.
+        fold++;
+        if(params.getCheckpoint() != null)
+          foldParams.setCheckpoint(Checkpoint.fold(params.getCheckpoint(), 
+              fold), params.getCheckpointInterval());
+        if(params.getResume() != null)
+          foldParams.setResume(Checkpoint.fold(params.getResume(), fold));
+        if(run != null) {
+          foldParams.setMetrics(run + "_fold_" + String.format("%02d", fold));
+          metrics.submitted();
+        }
+        futures.add(completion.submit(new TrainingTask(d.withRandom(prng), 
+            prng, foldParams, fold, metrics)));
+      }
       LOG.info("waiting for k-fold tasks to complete");
-      signal.await();
+      // in completion order, so a failed fold stops the run at once.
+      for(int f = 0; f < k; f++) {
+        final Future<KFoldResults> done = completion.take();
+        res[futures.indexOf(done)] = done.get();
+      }
       LOG.info("k-fold tasks complete");
-      // kill'em..
-      // kill'em all!@#$%!@%
-      while(!threads.isEmpty())
-        threads.pop().interrupt();
     } catch(final InterruptedException ie) {
       Thread.currentThread().interrupt();
+      throw new CancellationException("k-fold training interrupted");
+    } catch(final ExecutionException e) {
+      // the first fold to fail. the others are cancelled (finally).
+      final Throwable cause = e.getCause();
+      if(cause instanceof RuntimeException)
+        throw (RuntimeException) cause;
+      if(cause instanceof Error)
+        throw (Error) cause;
+      throw new IllegalStateException("k-fold training failed", cause);
+    } finally {
+      for(final Future<KFoldResults> future : futures)
+        future.cancel(true);
+      executor.shutdownNow();
     }
     return res;
   }
 }
-
@@ -0,0 +1,60 @@
+package net.parasec.nn.training;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * dataset view of a list of training instances. the list should support
+ * constant time random access and must not change while the view is in use.
+ */
+public final class ListDataset implements Dataset {
+  private final List<TrainingInstance> instances;
+  private final int nInputs, nOutputs;
+
+
+  public ListDataset(final List<TrainingInstance> instances, 
+      final int inputs, final int outputs) {
+    this.instances = instances;
+    this.nInputs = inputs;
+    this.nOutputs = outputs;
+  }
+
+  public int size() {
+    return instances.size();
+  }
+
+  public int inputs() {
+    return nInputs;
+  }
+
+  public int outputs() {
+    return nOutputs;
+  }
+
+  public void copyInput(final int row, final double[] dst, final int off) {
+    System.arraycopy(instances.get(row).getInputVector(), 0, dst, off, 
+        nInputs);
+  }
+
+  public void copyOutput(final int row, final double[] dst, final int off) {
+    System.arraycopy(instances.get(row).getOutputVector(), 0, dst, off, 
+        nOutputs);
+  }
+
+  /**
+   * copy every row of a dataset into a list of training instances.
+   */
+  public static List<TrainingInstance> instances(final Dataset dataset) {
+    final int len = dataset.size();
+    final List<TrainingInstance> instances 
+        = new ArrayList<TrainingInstance>(len);
+    for(int i = 0; i < len; i++) {
+      final double[] in = new double[dataset.inputs()];
+      final double[] out = new double[dataset.outputs()];
+      dataset.copyInput(i, in, 0);
+      dataset.copyOutput(i, out, 0);
+      instances.add(new TrainingInstance(in, out));
+    }
+    return instances;
+  }
+}
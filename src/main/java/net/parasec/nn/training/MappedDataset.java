@@ -0,0 +1,143 @@
+package net.parasec.nn.training;
+
+import net.parasec.nn.logging.Logger;
+
+import java.io.DataInputStream;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * read-only, memory-mapped binary dataset.
+ *
+ * file format (little-endian):
+ *
+ *   int    magic   "NNDS"
+ *   int    version 1
+ *   long   rows
+ *   int    inputs
+ *   int    outputs
+ *   double [rows][inputs+outputs] row-major data.
+ *
+ * the file is mapped, not read: opening a dataset takes the same time
+ * regardless of its size, the data lives in the os page cache (shared with
+ * any other process using the same file) rather than on the heap, and rows
+ * are copied straight from the mapping into the trainer's buffers. see
+ * DatasetConverter for creating a dataset from a csv.
+ */
+public final class MappedDataset implements Dataset {
+  private static final Logger LOG = Logger.getLogger(MappedDataset.class);
+
+  static final int MAGIC = 0x4E4E4453;
+  static final int VERSION = 1;
+  static final int HEADER = 24;
+
+  // a mapping is limited to 2GB, so the file is mapped in chunks of whole
+  // rows of at most this many bytes.
+  private static final long CHUNK = 1 << 30;
+
+  private final DoubleBuffer[] chunks;
+  private final int rowsPerChunk;
+  private final int rows, nInputs, nOutputs, width;
+
+
+  private MappedDataset(final FileChannel channel, final int rows, 
+      final int inputs, final int outputs) throws IOException {
+    this.rows = rows;
+    this.nInputs = inputs;
+    this.nOutputs = outputs;
+    width = inputs+outputs;
+    final long rowBytes = 8L*width;
+    rowsPerChunk = (int) Math.max(1, CHUNK/rowBytes);
+    chunks = new DoubleBuffer[(int) ((rows+(long) rowsPerChunk-1)/
+        rowsPerChunk)];
+    for(int i = 0; i < chunks.length; i++) {
+      final long first = (long) i*rowsPerChunk;
+      final long n = Math.min(rowsPerChunk, rows-first);
+      chunks[i] = channel.map(FileChannel.MapMode.READ_ONLY,
+          HEADER+first*rowBytes, n*rowBytes)
+              .order(ByteOrder.LITTLE_ENDIAN).asDoubleBuffer();
+    }
+  }
+
+  /**
+   * map a dataset file.
+   */
+  public static MappedDataset open(final String file) throws IOException {
+    final long l = System.currentTimeMillis();
+    final RandomAccessFile raf = new RandomAccessFile(file, "r");
+    try {
+      final FileChannel channel = raf.getChannel();
+      final ByteBuffer header 
+          = ByteBuffer.allocate(HEADER).order(ByteOrder.LITTLE_ENDIAN);
+      while(header.hasRemaining())
+        if(channel.read(header) < 0)
+          throw new IOException("truncated dataset header: " + file);
+      header.flip();
+      if(header.getInt() != MAGIC)
+        throw new IOException("not a dataset: " + file);
+      final int version = header.getInt();
+      if(version != VERSION)
+        throw new IOException("unsupported dataset version " + version + 
+            ": " + file);
+      final long rows = header.getLong();
+      final int inputs = header.getInt();
+      final int outputs = header.getInt();
+      if(rows > Integer.MAX_VALUE)
+        throw new IOException(rows + " rows > " + Integer.MAX_VALUE);
+      if(channel.size() < HEADER+8L*(inputs+outputs)*rows)
+        throw new IOException("truncated dataset: " + file);
+      // the mappings stay valid after the channel is closed.
+      final MappedDataset dataset 
+          = new MappedDataset(channel, (int) rows, inputs, outputs);
+      LOG.info("mapped " + rows + " rows (" + inputs + " inputs, " + 
+          outputs + " outputs) in " + (System.currentTimeMillis()-l) + "ms.");
+      return dataset;
+    } finally {
+      raf.close();
+    }
+  }
+
+  /**
+   * true if file starts with the dataset magic number.
+   */
+  public static boolean isDataset(final String file) {
+    try {
+      final DataInputStream in 
+          = new DataInputStream(new FileInputStream(file));
+      try {
+        return Integer.reverseBytes(in.readInt()) == MAGIC;
+      } finally {
+        in.close();
+      }
+    } catch(final IOException e) {
+      return false;
+    }
+  }
+
+  public int size() {
+    return rows;
+  }
+
+  public int inputs() {
+    return nInputs;
+  }
+
+  public int outputs() {
+    return nOutputs;
+  }
+
+  public void copyInput(final int row, final double[] dst, final int off) {
+    chunks[row/rowsPerChunk].get((row%rowsPerChunk)*width, dst, off, 
+        nInputs);
+  }
+
+  public void copyOutput(final int row, final double[] dst, final int off) {
+    chunks[row/rowsPerChunk].get((row%rowsPerChunk)*width+nInputs, dst, off,
+        nOutputs);
+  }
+}
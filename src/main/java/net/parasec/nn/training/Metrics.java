@@ -0,0 +1,104 @@
+package net.parasec.nn.training;
+
+import net.parasec.nn.logging.Logger;
+
+import java.lang.management.ManagementFactory;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * registry of training metrics, published as mxbeans on the platform mbean
+ * server:
+ *
+ *   net.parasec.nn:type=Training,name=<run>   (see TrainingMetricsMXBean)
+ *   net.parasec.nn:type=KFold,name=<run>      (see KFoldMetricsMXBean)
+ *   net.parasec.nn:type=DataLoader            (see DataLoaderMetricsMXBean)
+ *
+ * a run is published when its TrainingParameters are given a metrics name
+ * (the folds of k-fold run "x" are "x_fold_01".. ). a run's mxbean stays
+ * registered after training, with its final values, until another run of
+ * the same name replaces it or it is unregistered. a failure to register
+ * is logged: it never stops training.
+ */
+public final class Metrics {
+  private static final Logger LOG = Logger.getLogger(Metrics.class);
+
+  public static final String DOMAIN = "net.parasec.nn";
+
+  private static DataLoaderMetrics dataLoader;
+
+
+  private Metrics() {
+  }
+
+  /**
+   * publish the metrics of a training run.
+   */
+  static TrainingMetrics training(final String run, final int maxEpochs) {
+    final TrainingMetrics metrics = new TrainingMetrics(run, maxEpochs);
+    register(name("Training", run), metrics);
+    return metrics;
+  }
+
+  /**
+   * publish the worker pool metrics of a k-fold run.
+   */
+  static KFoldMetrics kfold(final String run, final int folds, 
+      final int workers) {
+    final KFoldMetrics metrics = new KFoldMetrics(folds, workers);
+    register(name("KFold", run), metrics);
+    return metrics;
+  }
+
+  /**
+   * the data loader metrics, published on first use.
+   */
+  static synchronized DataLoaderMetrics dataLoader() {
+    if(dataLoader == null) {
+      dataLoader = new DataLoaderMetrics();
+      register(name("DataLoader", null), dataLoader);
+    }
+    return dataLoader;
+  }
+
+  /**
+   * the name of an mxbean of type (Training, KFold, DataLoader) and run.
+   */
+  public static ObjectName name(final String type, final String run) {
+    try {
+      return new ObjectName(DOMAIN + ":type=" + type + (run == null ? "" 
+          : ",name=" + (run.matches("[^,=:\"*?\\n]+") ? run 
+              : ObjectName.quote(run))));
+    } catch(final JMException e) {
+      throw new IllegalArgumentException("bad metrics name: " + run, e);
+    }
+  }
+
+  /**
+   * remove the mxbean of type and run, if registered.
+   */
+  public static synchronized void unregister(final String type, 
+      final String run) {
+    final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+    try {
+      final ObjectName name = name(type, run);
+      if(server.isRegistered(name))
+        server.unregisterMBean(name);
+    } catch(final JMException e) {
+      LOG.error(e, e);
+    }
+  }
+
+  private static synchronized void register(final ObjectName name, 
+      final Object mxbean) {
+    final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+    try {
+      if(server.isRegistered(name))
+        server.unregisterMBean(name);
+      server.registerMBean(mxbean, name);
+    } catch(final JMException e) {
+      LOG.error(e, e);
+    }
+  }
+}
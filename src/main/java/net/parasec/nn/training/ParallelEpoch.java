@@ -0,0 +1,39 @@
+package net.parasec.nn.training;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+
+/**
+ * a multi-threaded strategy for training a network over one epoch.
+ */
+interface ParallelEpoch {
+
+  /**
+   * one epoch over the given instances.
+   * returns the sum of squares over the epoch (measured before each update).
+   */
+  double epoch(Dataset instances, double learningRate, double momentum);
+
+  /**
+   * release the worker threads.
+   */
+  void shutdown();
+
+  /**
+   * a pool of worker threads, whose allocation is counted by metrics (if
+   * not null).
+   */
+  static ForkJoinPool pool(final int threads, final TrainingMetrics metrics) {
+    if(metrics == null)
+      return new ForkJoinPool(threads);
+    return new ForkJoinPool(threads, 
+        new ForkJoinPool.ForkJoinWorkerThreadFactory() {
+          public ForkJoinWorkerThread newThread(final ForkJoinPool pool) {
+            final ForkJoinWorkerThread thread = ForkJoinPool
+                .defaultForkJoinWorkerThreadFactory.newThread(pool);
+            metrics.track(thread);
+            return thread;
+          }
+        }, null, false);
+  }
+}
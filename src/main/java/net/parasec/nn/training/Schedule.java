@@ -0,0 +1,113 @@
+package net.parasec.nn.training;
+
+/**
+ * learning rate schedule: the learning rate of each epoch, given the base
+ * learning rate.
+ *
+ *   constant          the base rate every epoch (the default).
+ *   step:<n>:<f>      multiplied by f every n epochs.
+ *   exp:<g>           multiplied by g every epoch.
+ *   cosine[:<min>]    cosine annealed from the base rate down to min (default
+ *                     0) over the run.
+ */
+public abstract class Schedule {
+
+  public static final Schedule CONSTANT = new Schedule("constant") {
+    public double rate(final double base, final int epoch, final int epochs) {
+      return base;
+    }
+  };
+
+  private final String spec;
+
+
+  private Schedule(final String spec) {
+    this.spec = spec;
+  }
+
+  /**
+   * learning rate of epoch (0 based) of epochs.
+   */
+  public abstract double rate(double base, int epoch, int epochs);
+
+  /**
+   * base rate * factor^(epoch/every).
+   */
+  public static Schedule step(final int every, final double factor) {
+    if(every < 1)
+      throw new IllegalArgumentException("step interval must be >= 1");
+    return new Schedule("step:" + every + ":" + factor) {
+      public double rate(final double base, final int epoch,
+          final int epochs) {
+        return base*Math.pow(factor, epoch/every);
+      }
+    };
+  }
+
+  /**
+   * base rate * gamma^epoch.
+   */
+  public static Schedule exponential(final double gamma) {
+    return new Schedule("exp:" + gamma) {
+      public double rate(final double base, final int epoch,
+          final int epochs) {
+        return base*Math.pow(gamma, epoch);
+      }
+    };
+  }
+
+  /**
+   * min + (base rate-min)*(1+cos(pi*epoch/epochs))/2.
+   */
+  public static Schedule cosine(final double min) {
+    return new Schedule("cosine:" + min) {
+      public double rate(final double base, final int epoch,
+          final int epochs) {
+        return min+(base-min)*(1+Math.cos(Math.PI*epoch/epochs))/2;
+      }
+    };
+  }
+
+  /**
+   * a schedule from its specification (see class comment). null or empty is
+   * constant.
+   */
+  public static Schedule parse(final String spec) {
+    if(spec == null || spec.trim().isEmpty())
+      return CONSTANT;
+    final String[] s = spec.trim().toLowerCase().split(":");
+    try {
+      if(s[0].equals("constant") && s.length == 1)
+        return CONSTANT;
+      if(s[0].equals("step") && s.length == 3)
+        return step(Integer.parseInt(s[1]), Double.parseDouble(s[2]));
+      if(s[0].equals("exp") && s.length == 2)
+        return exponential(Double.parseDouble(s[1]));
+      if(s[0].equals("cosine") && s.length <= 2)
+        return cosine(s.length == 2 ? Double.parseDouble(s[1]) : 0);
+    } catch(final NumberFormatException e) {
+      throw new IllegalArgumentException("bad learning rate schedule: " +
+          spec, e);
+    }
+    throw new IllegalArgumentException("bad learning rate schedule: " + spec);
+  }
+
+  /**
+   * this schedule for a run continued from epoch start of total epochs
+   * (e.g., a search trial trained in rounds): epoch i of the run is epoch
+   * start+i of the schedule.
+   */
+  public Schedule from(final int start, final int total) {
+    final Schedule schedule = this;
+    return new Schedule(spec) {
+      public double rate(final double base, final int epoch,
+          final int epochs) {
+        return schedule.rate(base, start+epoch, total);
+      }
+    };
+  }
+
+  public String toString() {
+    return spec;
+  }
+}
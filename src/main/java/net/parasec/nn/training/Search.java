@@ -0,0 +1,159 @@
+package net.parasec.nn.training;
+
+import net.parasec.nn.logging.Level;
+import net.parasec.nn.logging.Logger;
+import net.parasec.nn.network.Activation;
+import net.parasec.nn.util.Options;
+
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * hyperparameter search (see HyperSearch): the dataset is loaded and split
+ * once and every trial is trained in this process.
+ */
+public final class Search {
+  private final static Logger LOG = Logger.getLogger(Search.class);
+
+  public static void main(String[] args) {
+    final Options options = new Options(args).accept("file", 
+        "output_nodes", "holdback", "hidden_nodes", "learning_rate",
+        "momentum", "weight_range", "activation", "output_activation",
+        "optimizer", "lr_schedule", "batch_size", "reshuffle", "patience",
+        "min_delta", "plateau", "trials", "min_epochs", "epochs", "eta",
+        "threads", "seed", "load_threads", "output", "log_level");
+    if(options.has("log_level"))
+      Logger.setLevel(Level.parse(options.getString("log_level")));
+
+    final String file = options.getString("file");
+    final int outputLength = options.getInt("output_nodes");
+    final double holdbackRatio = options.getDouble("holdback", 0.2);
+    if(holdbackRatio <= 0)
+      throw new IllegalArgumentException("a search needs a holdback set");
+
+    final Random prng = options.has("seed")
+        ? new Random(Long.parseLong(options.getString("seed"))) : new Random();
+
+    // a binary dataset is mapped rather than loaded (as Train).
+    final Dataset dataset = MappedDataset.isDataset(file)
+        ? DataLoader.map(file, outputLength)
+        : new DataLoader(options.getInt("load_threads",
+            Runtime.getRuntime().availableProcessors()))
+                .loadDataset(file, outputLength);
+    if(dataset == null)
+      throw new IllegalArgumentException("could not load " + file);
+    final Data data = new Data(prng, dataset);
+    data.split(holdbackRatio);
+
+    final double[] lr = range(options.getString("learning_rate", "0.1"));
+    final double[] mo = range(options.getString("momentum", "0"));
+    final double[] w = range(options.getString("weight_range", "0.5"));
+    final HyperSearch search = new HyperSearch(data.getTrainingSet(),
+        data.getTestSet(), prng)
+            .setHidden(hidden(options.getString("hidden_nodes", "")))
+            .setLearningRate(lr[0], lr[1])
+            .setMomentum(mo[0], mo[1])
+            .setWeightRange(w[0], w[1])
+            .setActivations(
+                Activation.parse(options.getString("activation", "sigmoid")),
+                Activation.parse(options.getString("output_activation",
+                    "sigmoid")))
+            .setTrials(options.getInt("trials", 27))
+            .setEpochs(options.getInt("min_epochs", 10),
+                options.getInt("epochs", 270))
+            .setEta(options.getInt("eta", 3))
+            .setThreads(options.getInt("threads",
+                Runtime.getRuntime().availableProcessors()))
+            .setParameters(new TrainingParameters(0, 0, 0)
+                .setOptimizer(options.getString("optimizer", "momentum"))
+                .setSchedule(Schedule.parse(options.getString("lr_schedule",
+                    "constant")))
+                .setBatchSize(options.getInt("batch_size", 1))
+                .setShuffle(options.getBoolean("reshuffle", false)
+                    ? prng : null)
+                .setPatience(options.getInt("patience", 0))
+                .setMinDelta(options.getDouble("min_delta", 0))
+                .setPlateau(options.getDouble("plateau", 0)));
+
+    final long l = System.currentTimeMillis();
+    final List<HyperSearch.Trial> ranked = search.search();
+    LOG.info("search took " + (System.currentTimeMillis()-l) + "ms.");
+    for(final HyperSearch.Trial trial : ranked)
+      LOG.info(trial);
+    if(options.has("output"))
+      dump(ranked, options.getString("output"));
+  }
+
+  /**
+   * "lo:hi", or a single value.
+   */
+  private static double[] range(final String s) {
+    final String[] r = s.split(":");
+    final double lo = Double.parseDouble(r[0]);
+    return new double[] { lo, r.length > 1 ? Double.parseDouble(r[1]) : lo };
+  }
+
+  /**
+   * candidate hidden layers separated by '/', each a comma separated number
+   * of nodes per layer, where a layer may be a range a..b. e.g. "2..4,2/8":
+   * [2,2], [3,2], [4,2] and [8]. empty: no hidden layers.
+   */
+  private static List<int[]> hidden(final String s) {
+    final List<int[]> hidden = new ArrayList<int[]>();
+    for(final String structure : s.split("/")) {
+      List<int[]> expanded = new ArrayList<int[]>();
+      expanded.add(new int[0]);
+      if(!structure.trim().isEmpty()) {
+        for(final String layer : structure.split(",")) {
+          final String[] r = layer.trim().split("\\.\\.");
+          final int lo = Integer.parseInt(r[0]);
+          final int hi = r.length > 1 ? Integer.parseInt(r[1]) : lo;
+          final List<int[]> next = new ArrayList<int[]>();
+          for(final int[] prefix : expanded) {
+            for(int n = lo; n <= hi; n++) {
+              final int[] layers = new int[prefix.length+1];
+              System.arraycopy(prefix, 0, layers, 0, prefix.length);
+              layers[prefix.length] = n;
+              next.add(layers);
+            }
+          }
+          expanded = next;
+        }
+      }
+      hidden.addAll(expanded);
+    }
+    return hidden;
+  }
+
+  /**
+   * csv of the ranked trials.
+   */
+  private static void dump(final List<HyperSearch.Trial> ranked,
+      final String file) {
+    PrintWriter out = null;
+    try {
+      out = new PrintWriter(new FileWriter(file));
+      out.println("rank,trial,hidden,learning_rate,momentum,weight_range," +
+          "epochs,best_epoch,testing_rmse");
+      int rank = 1;
+      for(final HyperSearch.Trial t : ranked) {
+        final StringBuilder hidden = new StringBuilder();
+        for(final int n : t.getHidden())
+          hidden.append(hidden.length() > 0 ? "-" : "").append(n);
+        out.println(rank++ + "," + t.getId() + "," + hidden + "," +
+            t.getLearningRate() + "," + t.getMomentum() + "," +
+            t.getWeightRange() + "," + t.getEpochs() + "," +
+            t.getBestEpoch() + "," + t.getBestError());
+      }
+    } catch(final IOException e) {
+      LOG.error(e, e);
+    } finally {
+      if(out != null)
+        out.close();
+    }
+  }
+}
@@ -0,0 +1,421 @@
+package net.parasec.nn.training;
+
+import net.parasec.nn.logging.Logger;
+import net.parasec.nn.util.CsvParser;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+
+/**
+ * out-of-core dataset: a csv, binary dataset or directory of either (see
+ * DataLoader) which is streamed from disk on every pass instead of loaded.
+ *
+ * a background thread parses rows into fixed size chunks up to readAhead
+ * chunks ahead of the trainer, so reading overlaps training. training rows
+ * are shuffled within a bounded buffer: each row read replaces a random row
+ * of the buffer, which is emitted in its place. the holdback (test) rows are
+ * chosen by a hash of the row's values rather than a split of a list, so the
+ * same rows are held back on every pass (and in every run) without
+ * remembering which.
+ *
+ * memory use is (readAhead+2)*chunkSize + shuffleBuffer rows, whatever the
+ * size of the dataset.
+ */
+public final class StreamingDataset {
+  private static final Logger LOG = Logger.getLogger(StreamingDataset.class);
+
+  private final File[] files;
+  private final int nInputs, nOutputs, width;
+
+  private int chunkSize = 1 << 14;
+  private int readAhead = 4;
+  private int shuffleBuffer = 1 << 16;
+  private double holdback = 0;
+
+
+  /**
+   * @param file csv, binary dataset or directory.
+   * @param outputLength output vector length (see DataLoader).
+   */
+  public StreamingDataset(final String file, final int outputLength)
+      throws IOException {
+    files = DataLoader.files(file);
+    if(files.length == 0)
+      throw new IllegalArgumentException("no files in " + file);
+    final RowReader rows = new RowReader(files, -1);
+    try {
+      width = rows.width();
+    } finally {
+      rows.close();
+    }
+    if(width <= outputLength)
+      throw new IllegalArgumentException(file + ": " + width + " values, " +
+          outputLength + " outputs");
+    nInputs = width-outputLength;
+    nOutputs = outputLength;
+  }
+
+  /**
+   * rows per chunk.
+   */
+  public StreamingDataset setChunkSize(final int chunkSize) {
+    if(chunkSize < 1)
+      throw new IllegalArgumentException("chunk size must be >= 1");
+    this.chunkSize = chunkSize;
+    return this;
+  }
+
+  /**
+   * number of chunks read ahead of the trainer.
+   */
+  public StreamingDataset setReadAhead(final int readAhead) {
+    if(readAhead < 1)
+      throw new IllegalArgumentException("read ahead must be >= 1");
+    this.readAhead = readAhead;
+    return this;
+  }
+
+  /**
+   * rows in the shuffle buffer. 0 disables shuffling.
+   */
+  public StreamingDataset setShuffleBuffer(final int shuffleBuffer) {
+    if(shuffleBuffer < 0)
+      throw new IllegalArgumentException("shuffle buffer must be >= 0");
+    this.shuffleBuffer = shuffleBuffer;
+    return this;
+  }
+
+  /**
+   * approximate ratio of rows held back for the test set.
+   */
+  public StreamingDataset setHoldback(final double holdback) {
+    if(holdback < 0 || holdback >= 1)
+      throw new IllegalArgumentException("holdback must be in [0, 1)");
+    this.holdback = holdback;
+    return this;
+  }
+
+  public int inputs() {
+    return nInputs;
+  }
+
+  public int outputs() {
+    return nOutputs;
+  }
+
+  /**
+   * the training rows, shuffled differently on each pass.
+   */
+  public ChunkedDataset training(final Random prng) {
+    return new Rows(false, prng);
+  }
+
+  /**
+   * the held back rows, in file order.
+   */
+  public ChunkedDataset testing() {
+    return new Rows(true, null);
+  }
+
+  // hash split: a row (and any duplicate of it) is always on the same side.
+  private boolean heldBack(final double[] row) {
+    long h = 0x9e3779b97f4a7c15L;
+    for(int i = 0; i < width; i++)
+      h = (h^Double.doubleToLongBits(row[i]))*0xff51afd7ed558ccdL;
+    h ^= h >>> 33;
+    h *= 0xc4ceb9fe1a85ec53L;
+    h ^= h >>> 33;
+    return (h >>> 11)*0x1.0p-53 < holdback;
+  }
+
+  /**
+   * the training or test side of the dataset.
+   */
+  private final class Rows implements ChunkedDataset {
+    private final boolean test;
+    private final Random prng;
+
+    Rows(final boolean test, final Random prng) {
+      this.test = test;
+      this.prng = prng;
+    }
+
+    public int inputs() {
+      return nInputs;
+    }
+
+    public int outputs() {
+      return nOutputs;
+    }
+
+    public Pass pass() {
+      if(test && holdback == 0)
+        return new StreamPass(null, null);
+      // the pass' shuffle is seeded here, so runs with the same prng see the
+      // same order whatever the timing of the reader thread.
+      return new StreamPass(this, prng != null && shuffleBuffer > 0
+          ? new Random(prng.nextLong()) : null);
+    }
+  }
+
+  // end of pass marker.
+  private static final Chunk END = new Chunk(0, 0, 0);
+
+  /**
+   * one pass: a reader thread filling chunks from a fixed pool.
+   */
+  private final class StreamPass implements ChunkedDataset.Pass, Runnable {
+    private final Rows rows;
+    private final Random shuffle;
+    private final BlockingQueue<Chunk> free;
+    private final BlockingQueue<Chunk> full
+        = new LinkedBlockingQueue<Chunk>();
+    private final Thread reader;
+    private volatile Throwable error;
+    private Chunk current;
+
+    StreamPass(final Rows rows, final Random shuffle) {
+      this.rows = rows;
+      this.shuffle = shuffle;
+      if(rows == null) {
+        free = null;
+        reader = null;
+        full.add(END);
+        return;
+      }
+      free = new ArrayBlockingQueue<Chunk>(readAhead+2);
+      for(int i = readAhead+2; --i >= 0; )
+        free.add(new Chunk(chunkSize, nInputs, nOutputs));
+      reader = new Thread(this, "stream-reader");
+      reader.setDaemon(true);
+      reader.start();
+    }
+
+    public Dataset next() {
+      if(current != null) {
+        current.clear();
+        free.add(current);
+        current = null;
+      }
+      final Chunk chunk;
+      try {
+        chunk = full.take();
+      } catch(final InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new IllegalStateException("interrupted", e);
+      }
+      if(chunk == END) {
+        join();
+        if(error != null)
+          throw new IllegalStateException("could not stream dataset", error);
+        return null;
+      }
+      return current = chunk;
+    }
+
+    public void close() {
+      if(reader != null) {
+        reader.interrupt();
+        join();
+      }
+    }
+
+    private void join() {
+      if(reader == null)
+        return;
+      try {
+        reader.join();
+      } catch(final InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    }
+
+    public void run() {
+      RowReader in = null;
+      try {
+        in = new RowReader(files, width);
+        final double[] row = new double[width];
+        final double[] buffer
+            = shuffle != null ? new double[shuffleBuffer*width] : null;
+        int buffered = 0;
+        Chunk chunk = free.take();
+        while(in.next(row)) {
+          if(holdback > 0 && heldBack(row) != rows.test)
+            continue;
+          if(buffer == null) {
+            chunk.add(row, 0);
+          } else if(buffered < shuffleBuffer) {
+            System.arraycopy(row, 0, buffer, buffered++*width, width);
+            continue;
+          } else {
+            // emit a random buffered row and take its place.
+            final int j = shuffle.nextInt(shuffleBuffer)*width;
+            chunk.add(buffer, j);
+            System.arraycopy(row, 0, buffer, j, width);
+          }
+          if(chunk.full()) {
+            full.put(chunk);
+            chunk = free.take();
+          }
+        }
+        // drain the buffer in random order.
+        while(buffered > 0) {
+          final int j = shuffle.nextInt(buffered)*width;
+          chunk.add(buffer, j);
+          System.arraycopy(buffer, --buffered*width, buffer, j, width);
+          if(chunk.full()) {
+            full.put(chunk);
+            chunk = free.take();
+          }
+        }
+        if(chunk.size() > 0)
+          full.put(chunk);
+      } catch(final InterruptedException e) {
+        // closed.
+      } catch(final Throwable t) {
+        error = t;
+      } finally {
+        if(in != null)
+          in.close();
+        full.add(END);
+      }
+    }
+  }
+
+  /**
+   * up to capacity rows, packed.
+   */
+  private static final class Chunk implements Dataset {
+    private final double[] rows;
+    private final int capacity, nInputs, nOutputs, width;
+    private int size;
+
+    Chunk(final int capacity, final int inputs, final int outputs) {
+      this.capacity = capacity;
+      this.nInputs = inputs;
+      this.nOutputs = outputs;
+      width = inputs+outputs;
+      rows = new double[capacity*width];
+    }
+
+    void add(final double[] src, final int off) {
+      System.arraycopy(src, off, rows, size++*width, width);
+    }
+
+    void clear() {
+      size = 0;
+    }
+
+    boolean full() {
+      return size == capacity;
+    }
+
+    public int size() {
+      return size;
+    }
+
+    public int inputs() {
+      return nInputs;
+    }
+
+    public int outputs() {
+      return nOutputs;
+    }
+
+    public void copyInput(final int row, final double[] dst, final int off) {
+      System.arraycopy(rows, row*width, dst, off, nInputs);
+    }
+
+    public void copyOutput(final int row, final double[] dst,
+        final int off) {
+      System.arraycopy(rows, row*width+nInputs, dst, off, nOutputs);
+    }
+  }
+
+  /**
+   * sequential rows of each file in turn.
+   */
+  private static final class RowReader {
+    private final File[] files;
+    private final int width;
+    private int file = -1;
+    private CsvParser csv;
+    private Dataset mapped;
+    private int mappedRow;
+
+    // width -1: any (see width()).
+    RowReader(final File[] files, final int width) {
+      this.files = files;
+      this.width = width;
+    }
+
+    // width of the first row.
+    int width() throws IOException {
+      if(!open(0))
+        throw new IllegalArgumentException(files[0] + " is empty");
+      if(mapped != null)
+        return mapped.inputs()+mapped.outputs();
+      final int n = csv.next();
+      if(n < 0)
+        throw new IllegalArgumentException(files[0] + " is empty");
+      return n;
+    }
+
+    boolean next(final double[] row) throws IOException {
+      for(;;) {
+        if(csv != null) {
+          final int n = csv.next();
+          if(n >= 0) {
+            if(n != width)
+              throw new IllegalArgumentException(files[file] + " line " +
+                  csv.lines() + ": " + n + " values, expected " + width);
+            System.arraycopy(csv.row(), 0, row, 0, width);
+            return true;
+          }
+        } else if(mapped != null && mappedRow < mapped.size()) {
+          mapped.copyInput(mappedRow, row, 0);
+          mapped.copyOutput(mappedRow++, row, mapped.inputs());
+          return true;
+        }
+        if(!open(file+1))
+          return false;
+      }
+    }
+
+    private boolean open(final int i) throws IOException {
+      close();
+      file = i;
+      if(i >= files.length)
+        return false;
+      final String path = files[i].getPath();
+      if(MappedDataset.isDataset(path)) {
+        mapped = MappedDataset.open(path);
+        mappedRow = 0;
+        if(width >= 0 && mapped.inputs()+mapped.outputs() != width)
+          throw new IllegalArgumentException(path + " rows have " +
+              (mapped.inputs()+mapped.outputs()) + " values, expected " +
+              width);
+      } else {
+        csv = new CsvParser(new FileInputStream(files[i]));
+      }
+      return true;
+    }
+
+    void close() {
+      mapped = null;
+      if(csv == null)
+        return;
+      try {
+        csv.close();
+      } catch(final IOException e) {
+        LOG.error(e, e);
+      }
+      csv = null;
+    }
+  }
+}
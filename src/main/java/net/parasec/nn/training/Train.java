@@ -1,11 +1,19 @@
 package net.parasec.nn.training;
 
+import net.parasec.nn.logging.Level;
 import net.parasec.nn.logging.Logger;
 import net.parasec.nn.logging.Report;
 import net.parasec.nn.network.ANN;
+import net.parasec.nn.network.Activation;
+import net.parasec.nn.network.FloatANN;
 import net.parasec.nn.util.IO;
+import net.parasec.nn.util.Options;
 
-import java.util.List;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
 import java.util.Random;
 
 /**
@@ -14,87 +22,304 @@ import java.util.Random;
 public final class Train {
   private final static Logger LOG = Logger.getLogger(Train.class);
 
+  // argument order when called without --name=value options (old train.sh).
+  private static final String[] POSITIONAL = { "file", "output_nodes",
+      "holdback", "k", "min_weight", "max_weight", "learning_rate",
+      "momentum", "epochs", "model_output", "hidden_nodes" };
+
+  // --name=value only options.
+  private static final String[] OPTIONS = { "activation", 
+      "output_activation", "batch_size", "threads", "hogwild", "precision",
+      "stream", "chunk_size", "read_ahead", "shuffle_buffer", "load_threads",
+      "seed", "reshuffle", "patience", "min_delta", "plateau", 
+      "checkpoint_every", "resume", "log_level", "metrics", "optimizer",
+      "lr_schedule" };
+
   public static void main(String[] args) {
+    final Options options = new Options(args, POSITIONAL).accept(OPTIONS);
+    if(options.has("log_level"))
+      Logger.setLevel(Level.parse(options.getString("log_level")));
 
     // dataset args.
-    final String file = args[0];
-    final int outputLength = Integer.parseInt(args[1]);
-    final double holdbackRatio = Double.parseDouble(args[2]);
-    final int k = Integer.parseInt(args[3]);
+    final String file = options.getString("file");
+    final int outputLength = options.getInt("output_nodes");
+    final double holdbackRatio = options.getDouble("holdback");
+    final int k = options.getInt("k");
 
     // training args.
-    final double minRandomWeight = Double.parseDouble(args[4]);
-    final double maxRandomWeight = Double.parseDouble(args[5]); 
-    final double learningRate = Double.parseDouble(args[6]);
-    final double momentum = Double.parseDouble(args[7]);
-    final int maxEpochs = Integer.parseInt(args[8]);
+    final double minRandomWeight = options.getDouble("min_weight");
+    final double maxRandomWeight = options.getDouble("max_weight"); 
+    final double learningRate = options.getDouble("learning_rate");
+    final double momentum = options.getDouble("momentum");
+    final int maxEpochs = options.getInt("epochs");
+    final int batchSize = options.getInt("batch_size", 1);
+    final int threads = options.getInt("threads", 1);
+    final boolean hogwild = options.getBoolean("hogwild", false);
+    final boolean single = "float".equals(options.getString("precision", 
+        "double"));
 
     // post processing
-    final String modelOutput = args[9];
+    final String modelOutput = options.getString("model_output");
+
+    // prng used throughout training. a seed makes a run reproducible.
+    final Random prng = random(options, modelOutput);
+
+    if(single) {
+      // see FloatTrainer for the training parameters it rejects.
+      if(k > 1 || options.getBoolean("stream", false) ||
+          options.has("metrics"))
+        throw new IllegalArgumentException("k-fold, streaming and metrics " +
+            "are not available in single precision");
+      trainFloat(options, file, outputLength, holdbackRatio, prng);
+      return;
+    }
 
-    // prng used throughout training
-    final Random prng = new Random();
+    // datasets which do not fit in memory are streamed from disk.
+    if(options.getBoolean("stream", false)) {
+      if(k > 1)
+        LOG.warn("k-fold training is not available when streaming. " +
+            "training a single network.");
+      trainStreaming(options, file, outputLength, holdbackRatio, prng);
+      return;
+    }
 
-    // load the data from specified csv.   
-    final DataLoader dl = new DataLoader();
-    final List<TrainingInstance> tiList = dl.loadCsv(file, outputLength);
+    // a binary dataset (see DatasetConverter) is mapped rather than loaded,
+    // anything else is loaded into a columnar dataset. either way, the
+    // holdback split and k-fold partitions are views of the rows.
+    final Dataset dataset = MappedDataset.isDataset(file)
+        ? DataLoader.map(file, outputLength)
+        : loader(options).loadDataset(file, outputLength);
 
     // construct dataset.
     // dataset will be split into a training and test validation subset.
     // the test validation subset size is holdbackRatio*total_data_size.
-    final Data data = new Data(prng);
+    final Data data = new Data(prng, dataset);
 
-    data.getTrainingData().addAll(tiList);
     if(holdbackRatio > 0)
       data.split(holdbackRatio);
 
-    // network hidden layer structure args.
-    // (number of input and output nodes determined from dataset outputLength).
-    // remaining args are the number of hidden nodes in each layer of the
-    // network.
-    final int inputNodes = tiList.get(0).getInputVector().length;
-    final int hiddenLayers = args.length-10;
-    final int outputNodes = outputLength;
-    final int[] structure = new int[2+hiddenLayers]; 
-    structure[0] = inputNodes;
-    for(int i = 10, len = args.length; i < len; i++)
-      structure[i-9] = Integer.parseInt(args[i]);
-    structure[structure.length-1] = outputNodes;
+    final int[] structure = structure(options, dataset.inputs(), 
+        outputLength);
+
+    final Activation[] activations = activations(options, structure);
+
+    final TrainingParameters params = parameters(options, prng);
+    if(!hogwild && threads > batchSize)
+      LOG.warn("threads (" + threads + ") > batch size (" + batchSize + 
+          "). at most " + batchSize + " threads will be used.");
 
     LOG.info("min_rw = " + minRandomWeight +
              " max_rw = " + maxRandomWeight +
              " lr = " + learningRate +
-             " mo = " + momentum);       
+             " mo = " + momentum +
+             " optimizer = " + params.getOptimizer() +
+             " schedule = " + params.getSchedule() +
+             " bs = " + batchSize +
+             " threads = " + threads +
+             " hogwild = " + hogwild +
+             " activations = " + Arrays.toString(activations));       
 
     // train the network.
     // results in dumping network weights and training errors to disk.  
  
     // if no k-folding, train as normal
     if(k <= 1) {
-      final ANN ann = new ANN(minRandomWeight, maxRandomWeight, structure, prng);
+      final ANN ann = new ANN(minRandomWeight, maxRandomWeight, structure, 
+          activations, prng);
       final long l = System.currentTimeMillis();      
-      final TrainingReport report = Trainer.train(ann, data, maxEpochs, 
-          learningRate, momentum);
+      final TrainingReport report = Trainer.train(ann, data, params);
       LOG.info("training complete. " + report);
       LOG.info("training took " + (System.currentTimeMillis()-l) + "ms.");
       Report.dump(report, modelOutput);
-      IO.dumpWeights(ann.getWeights(), modelOutput + "/weights.bin");
+      IO.dumpWeights(ann.getWeights(), Activation.names(activations), 
+          modelOutput + "/weights.bin");
     } else {
       // use the k-fold-trainer.
       final KFoldTrainer kft = new KFoldTrainer(prng, minRandomWeight, 
-          maxRandomWeight, structure, maxEpochs, k);
+          maxRandomWeight, structure, activations, maxEpochs, k);
       //ann = kft.train(data, learningRate, momentum);
-      final KFoldResults[] kfr = kft.train(data, learningRate, momentum);
+      final KFoldResults[] kfr = kft.train(data, params);
       for(int i = 1, len = kfr.length; i <= len; i++) {
         final KFoldResults _kfr = kfr[i-1];
         final TrainingReport tr = _kfr.getTrainingReport(); 
         LOG.info("K-Fold " + String.format("%02d", i) + " " + tr);
         Report.dump(tr, modelOutput, "errors_" +
             String.format("%02d", i) + ".csv");
-        IO.dumpWeights(_kfr.getANN().getWeights(), modelOutput + "/weights_" + 
+        IO.dumpWeights(_kfr.getANN().getWeights(), 
+            Activation.names(activations), modelOutput + "/weights_" + 
             String.format("%02d", i) + ".bin");
       }
     }
   }
+
+  /**
+   * the prng used throughout training. when checkpointing or resuming, the
+   * seed (given, or that of the run being resumed, or random) is written to
+   * model_output/seed, so that a resumed run has the same holdback split,
+   * k-fold partitions and initial weights as the original.
+   */
+  private static Random random(final Options options, 
+      final String modelOutput) {
+    if(!options.has("checkpoint_every") && !options.has("resume"))
+      return options.has("seed") 
+          ? new Random(Long.parseLong(options.getString("seed"))) 
+          : new Random();
+    try {
+      final File resumed = options.has("resume") 
+          ? new File(options.getString("resume"), "seed") : null;
+      final long seed = options.has("seed") 
+          ? Long.parseLong(options.getString("seed"))
+          : resumed != null && resumed.exists()
+              ? Long.parseLong(new String(Files.readAllBytes(
+                  resumed.toPath()), StandardCharsets.US_ASCII).trim())
+              : new Random().nextLong();
+      Files.write(new File(modelOutput, "seed").toPath(), 
+          (seed + "\n").getBytes(StandardCharsets.US_ASCII));
+      LOG.info("seed = " + seed);
+      return new Random(seed);
+    } catch(final IOException e) {
+      throw new IllegalArgumentException("could not read or write seed", e);
+    }
+  }
+
+  /**
+   * out-of-core training: the dataset is re-read from disk in chunks on
+   * every epoch, shuffled within a bounded buffer, and the holdback set is
+   * chosen by hashing each row (see StreamingDataset).
+   */
+  private static void trainStreaming(final Options options, 
+      final String file, final int outputLength, final double holdbackRatio,
+      final Random prng) {
+    final String modelOutput = options.getString("model_output");
+    final TrainingParameters params = parameters(options, prng);
+    // whole batches per chunk.
+    final int batchSize = params.getBatchSize();
+    final int chunkSize = (options.getInt("chunk_size", 1 << 14)+
+        batchSize-1)/batchSize*batchSize;
+    final StreamingDataset dataset;
+    try {
+      dataset = new StreamingDataset(file, outputLength)
+          .setChunkSize(chunkSize)
+          .setReadAhead(options.getInt("read_ahead", 4))
+          .setShuffleBuffer(options.getInt("shuffle_buffer", 1 << 16))
+          .setHoldback(holdbackRatio);
+    } catch(final IOException e) {
+      throw new IllegalArgumentException("could not stream dataset: " + 
+          file, e);
+    }
+    final int[] structure 
+        = structure(options, dataset.inputs(), dataset.outputs());
+    final Activation[] activations = activations(options, structure);
+    final ANN ann = new ANN(options.getDouble("min_weight"), 
+        options.getDouble("max_weight"), structure, activations, prng);
+    final TrainingReport report = Trainer.train(ann, 
+        dataset.training(prng), dataset.testing(), params);
+    LOG.info("training complete. " + report);
+    Report.dump(report, modelOutput);
+    IO.dumpWeights(ann.getWeights(), Activation.names(activations), 
+        modelOutput + "/weights.bin");
+  }
+
+  /**
+   * single precision training: float dataset, network and weights file.
+   * stochastic backpropagation with an optional holdback set.
+   */
+  private static void trainFloat(final Options options, final String file,
+      final int outputLength, final double holdbackRatio, 
+      final Random prng) {
+    final String modelOutput = options.getString("model_output");
+    final FloatDataset dataset 
+        = loader(options).loadFloatDataset(file, outputLength);
+    if(dataset == null)
+      throw new IllegalArgumentException("could not load " + file);
+    // the last rows (in reverse, as the lists) become the test set.
+    dataset.shuffle(prng);
+    final int n = dataset.size()-(int) Math.round(holdbackRatio*
+        dataset.size());
+    final FloatDataset training = dataset.range(0, n);
+    final FloatDataset testing = dataset.range(n, dataset.size());
+    testing.reverse();
+
+    final int[] structure = structure(options, dataset.inputs(), 
+        outputLength);
+    final Activation[] activations = activations(options, structure);
+    final FloatANN ann = new FloatANN(options.getDouble("min_weight"), 
+        options.getDouble("max_weight"), structure, activations, prng);
+    final TrainingReport report 
+        = FloatTrainer.train(ann, training, testing, parameters(options, prng));
+    LOG.info("training complete. " + report);
+    Report.dump(report, modelOutput);
+    IO.dumpWeights(ann.getWeights(), Activation.names(activations), 
+        modelOutput + "/weights.bin");
+  }
+
+  /**
+   * csv loader. files are parsed in load_threads chunks (default: 1 per
+   * core).
+   */
+  private static DataLoader loader(final Options options) {
+    return new DataLoader(options.getInt("load_threads", 
+        Runtime.getRuntime().availableProcessors()));
+  }
+
+  /**
+   * network structure.
+   * number of input and output nodes determined from the dataset.
+   * hidden_nodes is the number of hidden nodes in each layer of the network.
+   */
+  private static int[] structure(final Options options, final int inputNodes,
+      final int outputNodes) {
+    final int[] hidden = options.has("hidden_nodes") 
+        ? options.getInts("hidden_nodes") : new int[0];
+    final int[] structure = new int[2+hidden.length]; 
+    structure[0] = inputNodes;
+    System.arraycopy(hidden, 0, structure, 1, hidden.length);
+    structure[structure.length-1] = outputNodes;
+    return structure;
+  }
+
+  /**
+   * activation of each layer. activation is either a single activation for
+   * every hidden layer or one per hidden layer. output_activation is the
+   * activation of the output layer. both default to sigmoid.
+   */
+  private static Activation[] activations(final Options options, 
+      final int[] structure) {
+    final Activation output 
+        = Activation.parse(options.getString("output_activation", "sigmoid"));
+    final String[] hidden 
+        = options.getString("activation", "sigmoid").split(",");
+    final int hiddenLayers = structure.length-2;
+    if(hidden.length != 1 && hidden.length != hiddenLayers)
+      throw new IllegalArgumentException(hidden.length + 
+          " activations for " + hiddenLayers + " hidden layers");
+    final Activation[] activations 
+        = Activation.layers(structure, Activation.parse(hidden[0]), output);
+    for(int i = 1; i < hidden.length; i++)
+      activations[i] = Activation.parse(hidden[i]);
+    return activations;
+  }
+
+  private static TrainingParameters parameters(final Options options, 
+      final Random prng) {
+    return new TrainingParameters(options.getInt("epochs"), 
+        options.getDouble("learning_rate"), options.getDouble("momentum"))
+            .setOptimizer(options.getString("optimizer", "momentum"))
+            .setSchedule(Schedule.parse(options.getString("lr_schedule",
+                "constant")))
+            .setBatchSize(options.getInt("batch_size", 1))
+            .setThreads(options.getInt("threads", 1))
+            .setHogwild(options.getBoolean("hogwild", false))
+            .setShuffle(options.getBoolean("reshuffle", false) ? prng : null)
+            .setPatience(options.getInt("patience", 0))
+            .setMinDelta(options.getDouble("min_delta", 0))
+            .setPlateau(options.getDouble("plateau", 0))
+            .setCheckpoint(options.has("checkpoint_every") 
+                ? options.getString("model_output") + "/checkpoint.bin" 
+                : null, options.getInt("checkpoint_every", 0))
+            .setResume(options.has("resume") 
+                ? options.getString("resume") + "/checkpoint.bin" : null)
+            .setMetrics(options.getString("metrics", "train"));
+  }
 }
 
@@ -1,14 +1,26 @@
 package net.parasec.nn.training;
 
+import net.parasec.nn.logging.Level;
 import net.parasec.nn.logging.Logger;
+import net.parasec.nn.logging.RateLimiter;
 import net.parasec.nn.network.ANN;
+import net.parasec.nn.network.Batch;
 import net.parasec.nn.util.MathUtil;
 
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.CancellationException;
+
 /**
  * train the network.
  */
 public final class Trainer {
   private static final Logger LOG = Logger.getLogger(Trainer.class);
+
+  // 1 in SAMPLE instances has its forward and backward pass timed when
+  // publishing metrics.
+  private static final int SAMPLE = 64;
  
   /**
    * stochastic backpropagation with test/holdback set.
@@ -19,116 +31,472 @@ public final class Trainer {
    */  
   public static TrainingReport train(final ANN ann, final Data data, 
       final int epochs, final double learningRate, final double momentum) {
-    int bestEpoch = 0;
-    double testingAverageError = 0;
-    double testingMinError = 0;
-    double testingMaxError = 0;
-    
-    final int datasetLen = data.trainingSize();
-    double lowestError = Double.MAX_VALUE;
-    double[][][] bestNetwork = null;
-
-    final double[] trainingError = new double[epochs];
-    final double[] testingError = new double[epochs];
+    return train(ann, data, 
+        new TrainingParameters(epochs, learningRate, momentum));
+  }
 
+  /**
+   * backpropagation with test/holdback set.
+   *
+   * with a batch size of 1 the weights are updated after each instance
+   * (stochastic backpropagation). otherwise, the gradients of each batch of
+   * instances are summed and applied with a single momentum update. with more
+   * than 1 thread, each batch is divided between the threads (see
+   * DataParallel), or, if asynchronous training is enabled, each thread
+   * performs lock-free stochastic backpropagation on its own shard of the
+   * training data (see Hogwild).
+   */
+  public static TrainingReport train(final ANN ann, final Data data,
+      final TrainingParameters params) {
     // good practice to randomise the training data. -- neural network should 
     // generalise, not remember.
     // note that this step was performed before each epoch. moved it here since
     // it is probably ok to do this step once. otherwise the training mse 
     // oscillates quite wildly which is amplified in the test subset. 
     data.randomise();
+    // columnar copies (if not already), so each epoch is a sequential scan.
+    return train(ann, data.getTrainingSet(), data.getTestSet(), params);
+  }
 
-    for(int i = 0; i < epochs; i++) {
-      double trainingSum = 0;
+  /**
+   * backpropagation over any dataset (e.g., a MappedDataset), with an
+   * optional (possibly empty) test/holdback set. the training rows are
+   * presented in dataset order: use a shuffled DatasetView to randomise
+   * them.
+   */
+  public static TrainingReport train(final ANN ann, final Dataset training,
+      final Dataset testing, final TrainingParameters params) {
+    final Checkpoint resume = resume(params);
+    final Random shuffle = params.getShuffle();
+    return train(ann, shuffle != null ? reshuffled(training, shuffle, resume)
+        : chunked(training), chunked(testing), params, resume);
+  }
+
+  /**
+   * backpropagation over datasets read a chunk at a time (e.g., a
+   * StreamingDataset). each chunk is trained on as soon as it arrives, so
+   * that reading the next chunk overlaps training on this one. (the
+   * reshuffle parameter is ignored: the order is up to the dataset, and is
+   * not restored when resuming from a checkpoint.)
+   */
+  public static TrainingReport train(final ANN ann, 
+      final ChunkedDataset training, final ChunkedDataset testing, 
+      final TrainingParameters params) {
+    return train(ann, training, testing, params, resume(params));
+  }
+
+  private static TrainingReport train(final ANN ann, 
+      final ChunkedDataset training, final ChunkedDataset testing, 
+      final TrainingParameters params, final Checkpoint resume) {
+    // before anything (e.g., the checkpointer) sizes itself to its state.
+    if(!params.getOptimizer().equals(ann.getOptimizer().getName()))
+      ann.setOptimizer(params.getOptimizer());
+    final int batchSize = params.getBatchSize();
+    final int threads = params.getThreads();
+    final boolean hogwild = params.isHogwild() && threads > 1;
+    // adam's bias correction needs a step per update, which hogwild
+    // workers do not keep (see Hogwild.epoch).
+    if(hogwild && params.getOptimizer().equals("adam"))
+      throw new IllegalArgumentException("the adam optimizer can not be " +
+          "used with hogwild training");
+    final Checkpointer checkpointer = params.getCheckpoint() != null
+        ? new Checkpointer(params.getCheckpoint(), 
+            params.getCheckpointInterval(), ann, params.getEpochs()) : null;
+    // before the worker pools, which count their allocation in it.
+    final TrainingMetrics metrics = params.getMetrics() != null
+        ? Metrics.training(params.getMetrics(), params.getEpochs()) : null;
+    final ParallelEpoch parallel;
+    if(hogwild)
+      parallel = new Hogwild(ann, threads, metrics);
+    else if(batchSize > 1 && Math.min(threads, batchSize) > 1)
+      parallel = new DataParallel(ann, batchSize, 
+          Math.min(threads, batchSize), metrics);
+    else
+      parallel = null;
+    final Batch batch = batchSize > 1 && parallel == null
+        ? new Batch(ann.getStructure(), batchSize) : null;
+    final long l = System.currentTimeMillis();
+    try {
+      return train(ann, training, testing, params, batch, parallel, 
+          checkpointer, metrics, resume, l);
+    } finally {
+      if(parallel != null)
+        parallel.shutdown();
+      if(checkpointer != null)
+        checkpointer.close();
+      if(metrics != null)
+        metrics.finish();
+    }
+  }
 
-      // for each training instance
-      for(final TrainingInstance trainingInstance : data.getTrainingData()) {
-        final double[] inputVector = trainingInstance.getInputVector();
-        final double[] outputVector = trainingInstance.getOutputVector();
+  // the checkpoint to resume from, null if none.
+  private static Checkpoint resume(final TrainingParameters params) {
+    final String file = params.getResume();
+    if(file == null)
+      return null;
+    try {
+      final Checkpoint checkpoint = Checkpoint.read(file);
+      LOG.info(checkpoint != null ? "resuming from " + checkpoint 
+          : "no checkpoint " + file + ". starting afresh.");
+      return checkpoint;
+    } catch(final IOException e) {
+      throw new IllegalArgumentException("could not read checkpoint: " + 
+          file, e);
+    }
+  }
+
+  private static TrainingReport train(final ANN ann, 
+      final ChunkedDataset training, final ChunkedDataset testing, 
+      final TrainingParameters params, final Batch batch, 
+      final ParallelEpoch parallel, final Checkpointer checkpointer,
+      final TrainingMetrics metrics, final Checkpoint resume, 
+      final long start) {
+    final int epochs = params.getEpochs();
+    final double baseRate = params.getLearningRate();
+    final Schedule schedule = params.getSchedule();
+    final double momentum = params.getMomentum();
+    int bestEpoch = 0;
+    double testingAverageError = 0;
+    double testingMinError = 0;
+    double testingMaxError = 0;
+    
+    long testLen = 0;
+    double lowestError = Double.MAX_VALUE;
+    // best weights so far, copied into the same buffer on each improvement.
+    double[] bestNetwork = null;
+
+    double[] trainingError = new double[epochs];
+    double[] testingError = new double[epochs];
+    final EarlyStopping stopping = new EarlyStopping(params);
+    int trained = epochs;
+
+    // row buffers.
+    final double[] inputVector = new double[training.inputs()];
+    final double[] outputVector = new double[training.outputs()];
 
-        // feed-forward.
-        final double[] networkOutput = ann.feedForward(inputVector);
+    // carry on from a checkpoint.
+    int first = 0;
+    if(resume != null) {
+      resume.restore(ann);
+      first = Math.min(resume.getEpochs(), epochs);
+      System.arraycopy(resume.getTrainingError(), 0, trainingError, 0, first);
+      System.arraycopy(resume.getTestingError(), 0, testingError, 0, first);
+      bestEpoch = resume.getBestEpoch();
+      lowestError = resume.getLowestError();
+      testLen = resume.getTestSize();
+      if(resume.getBest() != null)
+        bestNetwork = resume.getBest().clone();
+      for(int i = 0; i < first; i++)
+        stopping.stop(i, trainingError[i], 
+            testLen > 0 ? testingError[i] : Double.NaN);
+    }
+    final Reshuffled reshuffled 
+        = training instanceof Reshuffled ? (Reshuffled) training : null;
+
+    final RateLimiter limiter = new RateLimiter();
+    for(int i = first; i < epochs; i++) {
+      // cancelled (e.g., another k-fold task failed).
+      if(Thread.currentThread().isInterrupted())
+        throw new CancellationException("training interrupted at epoch " + 
+            i);
 
-        // backpropagate.
-        ann.backPropagateError(outputVector, learningRate, momentum);
+      final long epochStart = System.nanoTime();
+      final double learningRate = schedule.rate(baseRate, i, epochs);
+      double trainingSum = 0;
+      long datasetLen = 0;
 
-	// sum of squares (could be any metric.)
-        trainingSum += networkError(networkOutput, outputVector);
+      final ChunkedDataset.Pass pass = training.pass();
+      try {
+        Dataset chunk;
+        while((chunk = pass.next()) != null) {
+          datasetLen += chunk.size();
+          if(parallel != null) {
+            trainingSum += parallel.epoch(chunk, learningRate, momentum);
+          } else if(batch != null) {
+            trainingSum += batchEpoch(ann, batch, chunk, learningRate, 
+                momentum, metrics);
+          } else {
+            trainingSum += sgdEpoch(ann, chunk, learningRate, momentum, 
+                inputVector, outputVector, metrics);
+          }
+        }
+      } finally {
+        pass.close();
       }
 
       // training root mean square error for this epoch. 
       final double trainingMse = MathUtil.fastSqrt(trainingSum/datasetLen);
       trainingError[i] = trainingMse;
 
-      if(data.testSize() > 0) {
-        double testingSum = 0;
-        for(final TrainingInstance testingInstance: data.getTestData()) {
-          final double[] networkOutput 
-              = ann.feedForward(testingInstance.getInputVector());
-          testingSum 
-              += networkError(networkOutput, testingInstance.getOutputVector());
+      final long evaluationStart = System.nanoTime();
+      double testingSum = 0;
+      testLen = 0;
+      final ChunkedDataset.Pass test = testing.pass();
+      try {
+        Dataset chunk;
+        while((chunk = test.next()) != null) {
+          testLen += chunk.size();
+          for(int r = 0, len = chunk.size(); r < len; r++) {
+            chunk.copyInput(r, inputVector, 0);
+            chunk.copyOutput(r, outputVector, 0);
+            testingSum 
+                += networkError(ann.feedForward(inputVector), outputVector);
+          }
         }
+      } finally {
+        test.close();
+      }
 
+      // a progress line at most once a second (see RateLimiter), the rest
+      // at debug level.
+      final Level progress = limiter.ready() ? Level.INFO : Level.DEBUG;
+      if(testLen > 0) {
 	// testing root mean square error for this epoch
         // if an improvement, save epoch# and network weights.
-        //
-        // note: could implement early stopping here.
-        //
-        final double testingMse = MathUtil.fastSqrt(testingSum/data.testSize());
+        final double testingMse = MathUtil.fastSqrt(testingSum/testLen);
         if(testingMse < lowestError) {
           bestEpoch = i;
           lowestError = testingMse;
-          bestNetwork = ann.cloneWeights();
+          if(bestNetwork == null)
+            bestNetwork = new double[ann.getPackedWeights().length];
+          ann.snapshotWeights(bestNetwork);
         }
         testingError[i] = testingMse;
 
-        LOG.info("epoch = " + i + " training rmse = " + 
-            String.format("%.10f", trainingMse) + " testing rmse = " +
-            String.format("%.10f", testingMse));
+        if(LOG.isEnabled(progress))
+          LOG.log(progress, "epoch = %d training rmse = %.10f " +
+              "testing rmse = %.10f", i, trainingMse, testingMse);
       } else {
-        LOG.info("epoch = " + i + " rmse = " + 
-            String.format("%.10f", trainingMse));
+        if(LOG.isEnabled(progress))
+          LOG.log(progress, "epoch = %d rmse = %.10f", i, trainingMse);
+      }
+      if(metrics != null)
+        metrics.epoch(i, datasetLen, evaluationStart-epochStart, 
+            System.nanoTime()-evaluationStart, trainingMse, 
+            testLen > 0 ? testingError[i] : Double.NaN);
+
+      // stop once the test (or training) error stops improving.
+      if(stopping.isEnabled() && stopping.stop(i, trainingMse, 
+          testLen > 0 ? testingError[i] : Double.NaN)) {
+        LOG.info("stopping early at epoch = " + i + " (" + stopping + ")");
+        trained = i+1;
+        trainingError = Arrays.copyOf(trainingError, trained);
+        testingError = Arrays.copyOf(testingError, trained);
+        break;
+      }
+
+      // copy the state for the checkpoint writer (unless it is busy).
+      if(checkpointer != null && checkpointer.isDue(i)) {
+        final Checkpoint checkpoint = checkpointer.acquire();
+        if(checkpoint != null) {
+          checkpoint.save(i+1, ann, bestNetwork, bestEpoch, lowestError, 
+              testLen, trainingError, testingError, 
+              reshuffled != null ? reshuffled.prng : null,
+              reshuffled != null ? reshuffled.order : null);
+          checkpointer.submit(checkpoint);
+        }
       }
     } // end epochs.
 
     // if training with validation set.
-    if(data.testSize() > 0 && bestNetwork != null) {
+    if(testLen > 0 && bestNetwork != null) {
 
       // initialise the NN with the weights yielding the best score on the
       // validation set (best generalisation)
-      ann.initialiseWeights(bestNetwork);
+      ann.restoreWeights(bestNetwork);
 
       // some validation stats.
       double sum = 0;
       double min = 1;
       double max = 0;
-      int i = 0;
-      for(final TrainingInstance testingInstance: data.getTestData()) {
-        final double[] networkOutput 
-            = ann.feedForward(testingInstance.getInputVector());
-        final double[] desiredOutput 
-            = testingInstance.getOutputVector();
-        final int len = networkOutput.length;
-        i += len;
-        for(int j = 0; j < len; j++) {
-          final double diff = Math.abs(networkOutput[j]-desiredOutput[j]);
-          sum += diff;
-          if(diff < min)
-            min = diff;
-          if(diff > max)
-            max = diff;
+      long i = 0;
+      final ChunkedDataset.Pass test = testing.pass();
+      try {
+        Dataset chunk;
+        while((chunk = test.next()) != null) {
+          for(int r = 0, rows = chunk.size(); r < rows; r++) {
+            chunk.copyInput(r, inputVector, 0);
+            chunk.copyOutput(r, outputVector, 0);
+            final double[] networkOutput = ann.feedForward(inputVector);
+            final double[] desiredOutput = outputVector;
+            final int len = networkOutput.length;
+            i += len;
+            for(int j = 0; j < len; j++) {
+              final double diff 
+                  = Math.abs(networkOutput[j]-desiredOutput[j]);
+              sum += diff;
+              if(diff < min)
+                min = diff;
+              if(diff > max)
+                max = diff;
+            }
+          }
         }
+      } finally {
+        test.close();
       }
       testingAverageError = sum/i;
       testingMinError = min;
       testingMaxError = max;
     } else {
-      bestEpoch = epochs-1;
+      bestEpoch = trained-1;
     }
     return new TrainingReport(bestEpoch+1, 
         trainingError[trainingError.length-1], 
         lowestError, testingAverageError, testingMinError, testingMaxError, 
-        trainingError, testingError);
+        trainingError, testingError, System.currentTimeMillis()-start, 
+        trained, epochs, first);
+  }
+
+  /**
+   * an in-memory dataset as a single chunk.
+   */
+  private static ChunkedDataset chunked(final Dataset dataset) {
+    return new ChunkedDataset() {
+      public int inputs() {
+        return dataset.inputs();
+      }
+
+      public int outputs() {
+        return dataset.outputs();
+      }
+
+      public Pass pass() {
+        return new Pass() {
+          private boolean done = dataset.size() == 0;
+
+          public Dataset next() {
+            if(done)
+              return null;
+            done = true;
+            return dataset;
+          }
+
+          public void close() {
+          }
+        };
+      }
+    };
+  }
+
+  /**
+   * an in-memory dataset as a single chunk, in a new random order on every
+   * pass. only the index permutation of a view is shuffled. when resuming,
+   * the permutation and prng are those of the checkpoint.
+   */
+  private static ChunkedDataset reshuffled(final Dataset dataset, 
+      final Random prng, final Checkpoint resume) {
+    if(resume == null || resume.getOrder() == null)
+      return new Reshuffled(DatasetView.all(dataset), prng);
+    if(resume.getOrder().length != dataset.size())
+      throw new IllegalArgumentException("checkpoint of " + 
+          resume.getOrder().length + " training rows, not " + 
+          dataset.size());
+    return new Reshuffled(new DatasetView(dataset, resume.getOrder()), 
+        resume.getRandom());
+  }
+
+  private static final class Reshuffled implements ChunkedDataset {
+    private final DatasetView order;
+    private final Random prng;
+    private final ChunkedDataset chunks;
+
+    Reshuffled(final DatasetView order, final Random prng) {
+      this.order = order;
+      this.prng = prng;
+      chunks = chunked(order);
+    }
+
+    public int inputs() {
+      return chunks.inputs();
+    }
+
+    public int outputs() {
+      return chunks.outputs();
+    }
+
+    public Pass pass() {
+      order.shuffle(prng);
+      return chunks.pass();
+    }
+  }
+
+  /**
+   * one epoch of stochastic backpropagation.
+   * returns the sum of squares over the epoch (measured before each update).
+   */
+  private static double sgdEpoch(final ANN ann, final Dataset instances,
+      final double learningRate, final double momentum, 
+      final double[] inputVector, final double[] outputVector,
+      final TrainingMetrics metrics) {
+    double sum = 0;
+    // for each training instance
+    for(int r = 0, len = instances.size(); r < len; r++) {
+      instances.copyInput(r, inputVector, 0);
+      instances.copyOutput(r, outputVector, 0);
+
+      // time 1 in SAMPLE instances.
+      final boolean timed = metrics != null && (r & SAMPLE-1) == 0;
+      final long t0 = timed ? System.nanoTime() : 0;
+
+      // feed-forward.
+      final double[] networkOutput = ann.feedForward(inputVector);
+      final long t1 = timed ? System.nanoTime() : 0;
+
+      // backpropagate.
+      ann.backPropagateError(outputVector, learningRate, momentum);
+      if(timed)
+        metrics.sample(t1-t0, System.nanoTime()-t1);
+
+      // sum of squares (could be any metric.)
+      sum += networkError(networkOutput, outputVector);
+    }
+    return sum;
+  }
+
+  /**
+   * one epoch of mini-batch backpropagation.
+   * returns the sum of squares over the epoch (measured before each update).
+   */
+  private static double batchEpoch(final ANN ann, final Batch batch,
+      final Dataset instances, final double learningRate,
+      final double momentum, final TrainingMetrics metrics) {
+    final int capacity = batch.capacity();
+    final double[] inputs = batch.getInputs();
+    final double[] targets = batch.getTargets();
+    final int[] structure = ann.getStructure();
+    final int nInputs = structure[0];
+    final int nOutputs = structure[structure.length-1];
+    double sum = 0;
+    int count = 0;
+    for(int r = 0, len = instances.size(); r < len; r++) {
+      instances.copyInput(r, inputs, count*nInputs);
+      instances.copyOutput(r, targets, count*nOutputs);
+      if(++count == capacity) {
+        sum += batchUpdate(ann, batch, count, learningRate, momentum, 
+            metrics);
+        count = 0;
+      }
+    }
+    if(count > 0)
+      sum += batchUpdate(ann, batch, count, learningRate, momentum, metrics);
+    return sum;
+  }
+
+  private static double batchUpdate(final ANN ann, final Batch batch, 
+      final int count, final double learningRate, final double momentum,
+      final TrainingMetrics metrics) {
+    final long t0 = metrics != null ? System.nanoTime() : 0;
+    ann.feedForward(batch, count);
+    final long t1 = metrics != null ? System.nanoTime() : 0;
+    batch.clearGradient();
+    ann.backPropagateError(batch, count);
+    ann.applyGradient(batch.getGradient(), learningRate, momentum);
+    if(metrics != null)
+      metrics.sample(t1-t0, System.nanoTime()-t1);
+    final int[] structure = batch.getStructure();
+    return networkError(batch.getNetworkOutputs(), batch.getTargets(), 
+        count*structure[structure.length-1]);
   }
 
   /**
@@ -136,8 +504,13 @@ public final class Trainer {
    */ 
   private static double networkError(final double[] output, 
       final double[] desiredOutput) {
+    return networkError(output, desiredOutput, output.length);
+  }
+
+  private static double networkError(final double[] output, 
+      final double[] desiredOutput, final int len) {
     double sum = 0;
-    for(int i = 0, len = output.length; i < len; i++) {
+    for(int i = 0; i < len; i++) {
       final double diff = desiredOutput[i]-output[i];
       sum += diff*diff;
     } 
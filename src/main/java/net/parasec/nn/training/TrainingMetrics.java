@@ -0,0 +1,211 @@
+package net.parasec.nn.training;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * metrics of a training run, written by the training thread once per epoch
+ * (plus a sample of forward/backward pass timings) and read over jmx.
+ * every value is a volatile field, so a reader sees each value as of the
+ * latest epoch, although not necessarily all values of the same epoch.
+ *
+ * allocation is counted for the training thread and the worker threads of
+ * data-parallel or hogwild training (see track).
+ */
+public final class TrainingMetrics implements TrainingMetricsMXBean {
+
+  // thread allocation counter, if there is one.
+  private static final com.sun.management.ThreadMXBean THREADS;
+
+  static {
+    final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+    THREADS = threads instanceof com.sun.management.ThreadMXBean &&
+        ((com.sun.management.ThreadMXBean) threads)
+            .isThreadAllocatedMemorySupported()
+        ? (com.sun.management.ThreadMXBean) threads : null;
+  }
+
+  private final String run;
+  private final int maxEpochs;
+
+  private volatile boolean running = true;
+  private volatile int epoch, bestEpoch;
+  private volatile long last, lastNanos;
+  private volatile double instancesPerSecond, epochsPerSecond;
+  private volatile long trainingNanos, evaluationNanos;
+  private volatile double trainingRmse = Double.NaN;
+  private volatile double testingRmse = Double.NaN;
+  private volatile double bestTrainingRmse = Double.NaN;
+  private volatile double bestTestingRmse = Double.NaN;
+  private volatile double allocationRate = -1;
+  private volatile long allocatedBytes = -1;
+
+  // sampled forward and backward pass times (training thread only).
+  private long forwardSample, backpropSample;
+  private volatile double forwardShare = -1;
+
+  // bytes last read of each tracked thread (by id), and their total
+  // allocation since the start.
+  private final Map<Long, Long> tracked = new ConcurrentHashMap<Long, Long>();
+  private long allocated;
+
+
+  TrainingMetrics(final String run, final int maxEpochs) {
+    this.run = run;
+    this.maxEpochs = maxEpochs;
+    last = System.currentTimeMillis();
+    lastNanos = System.nanoTime();
+    if(THREADS != null)
+      tracked.put(Thread.currentThread().getId(), 
+          THREADS.getThreadAllocatedBytes(Thread.currentThread().getId()));
+  }
+
+  /**
+   * count the allocation of a (new) worker thread from now on.
+   */
+  void track(final Thread thread) {
+    if(THREADS != null)
+      tracked.put(thread.getId(), 0L);
+  }
+
+  // bytes allocated by the tracked threads since the last call. a thread
+  // which has died no longer counts (it allocated up to its last reading).
+  private long allocatedSinceLast() {
+    long sum = 0;
+    for(final Map.Entry<Long, Long> thread : tracked.entrySet()) {
+      final long bytes = THREADS.getThreadAllocatedBytes(thread.getKey());
+      if(bytes < 0)
+        continue;
+      sum += bytes-thread.getValue();
+      thread.setValue(bytes);
+    }
+    return sum;
+  }
+
+  /**
+   * the time of a sampled forward and backward pass.
+   */
+  void sample(final long forward, final long backprop) {
+    forwardSample += forward;
+    backpropSample += backprop;
+  }
+
+  /**
+   * epoch (0 based) completed.
+   * @param testing testing rmse, NaN if there is no test set.
+   */
+  void epoch(final int epoch, final long instances, final long training,
+      final long evaluation, final double trainingRmse, 
+      final double testing) {
+    final long now = System.nanoTime();
+    final double seconds = Math.max(now-lastNanos, 1)/1e9;
+    this.epoch = epoch+1;
+    lastNanos = now;
+    last = System.currentTimeMillis();
+    instancesPerSecond = instances/seconds;
+    epochsPerSecond = 1/seconds;
+    trainingNanos += training;
+    evaluationNanos += evaluation;
+    this.trainingRmse = trainingRmse;
+    if(!(trainingRmse >= bestTrainingRmse))
+      bestTrainingRmse = trainingRmse;
+    testingRmse = testing;
+    if(!Double.isNaN(testing) && !(testing >= bestTestingRmse)) {
+      bestTestingRmse = testing;
+      bestEpoch = epoch+1;
+    }
+    final long sampled = forwardSample+backpropSample;
+    if(sampled > 0)
+      forwardShare = (double) forwardSample/sampled;
+    if(THREADS != null) {
+      final long bytes = allocatedSinceLast();
+      allocated += bytes;
+      allocationRate = bytes/seconds;
+      allocatedBytes = allocated;
+    }
+  }
+
+  void finish() {
+    running = false;
+  }
+
+  public String getRun() {
+    return run;
+  }
+
+  public boolean isRunning() {
+    return running;
+  }
+
+  public int getEpoch() {
+    return epoch;
+  }
+
+  public int getMaxEpochs() {
+    return maxEpochs;
+  }
+
+  public long getTimeSinceLastEpoch() {
+    return System.currentTimeMillis()-last;
+  }
+
+  public double getInstancesPerSecond() {
+    return instancesPerSecond;
+  }
+
+  public double getEpochsPerSecond() {
+    return epochsPerSecond;
+  }
+
+  public long getTrainingTime() {
+    return trainingNanos/1000000;
+  }
+
+  public long getEvaluationTime() {
+    return evaluationNanos/1000000;
+  }
+
+  public long getForwardTime() {
+    final double share = forwardShare;
+    return share < 0 ? -1 : Math.round(share*trainingNanos/1e6);
+  }
+
+  public long getBackpropTime() {
+    final double share = forwardShare;
+    return share < 0 ? -1 : Math.round((1-share)*trainingNanos/1e6);
+  }
+
+  public double getTrainingRmse() {
+    return trainingRmse;
+  }
+
+  public double getTestingRmse() {
+    return testingRmse;
+  }
+
+  public double getBestTrainingRmse() {
+    return bestTrainingRmse;
+  }
+
+  public double getBestTestingRmse() {
+    return bestTestingRmse;
+  }
+
+  public int getBestEpoch() {
+    return bestEpoch;
+  }
+
+  public double getAllocationRate() {
+    return allocationRate;
+  }
+
+  public long getAllocatedBytes() {
+    return allocatedBytes;
+  }
+
+  public String toString() {
+    return run + " epoch = " + epoch + "/" + maxEpochs;
+  }
+}
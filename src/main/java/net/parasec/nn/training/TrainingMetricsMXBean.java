@@ -0,0 +1,76 @@
+package net.parasec.nn.training;
+
+/**
+ * progress of a training run (or k-fold), published over jmx (see Metrics).
+ * times are in milliseconds, rates per second. rmse values are NaN until
+ * measured.
+ */
+public interface TrainingMetricsMXBean {
+
+  String getRun();
+
+  /**
+   * false once training has finished (or failed).
+   */
+  boolean isRunning();
+
+  /**
+   * epochs completed.
+   */
+  int getEpoch();
+
+  int getMaxEpochs();
+
+  /**
+   * time since the last epoch completed (or training started): a stall
+   * shows up as this growing well beyond 1/epochs per second.
+   */
+  long getTimeSinceLastEpoch();
+
+  /**
+   * training instances per second over the last epoch.
+   */
+  double getInstancesPerSecond();
+
+  /**
+   * epochs per second over the last epoch.
+   */
+  double getEpochsPerSecond();
+
+  /**
+   * time spent training (forward + backprop) and evaluating the test set.
+   */
+  long getTrainingTime();
+
+  long getEvaluationTime();
+
+  /**
+   * the training time split into the forward and backward passes, in
+   * proportion to a sample of the instances (batches). -1 if not sampled
+   * (multi-threaded training).
+   */
+  long getForwardTime();
+
+  long getBackpropTime();
+
+  double getTrainingRmse();
+
+  double getTestingRmse();
+
+  double getBestTrainingRmse();
+
+  double getBestTestingRmse();
+
+  /**
+   * epoch (1 based) of the best testing rmse, 0 if there is no test set.
+   */
+  int getBestEpoch();
+
+  /**
+   * bytes allocated by the training thread and its workers over the last
+   * epoch, per second. -1 if the jvm does not measure it.
+   */
+  double getAllocationRate();
+
+  long getAllocatedBytes();
+}
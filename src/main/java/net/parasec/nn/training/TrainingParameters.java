@@ -0,0 +1,273 @@
+package net.parasec.nn.training;
+
+import net.parasec.nn.network.Optimizer;
+
+import java.util.Random;
+
+/**
+ * training hyper-parameters.
+ * epochs, learning rate and momentum are required; everything else has a
+ * default which reproduces plain stochastic backpropagation.
+ */
+public final class TrainingParameters {
+  private final int epochs;
+  private final double learningRate;
+  private final double momentum;
+
+  // weight update rule (see Optimizer) and learning rate schedule.
+  private String optimizer = "momentum";
+  private Schedule schedule = Schedule.CONSTANT;
+
+  // number of instances per weight update. 1 = stochastic backpropagation.
+  private int batchSize = 1;
+
+  // number of threads computing the gradient of each batch.
+  private int threads = 1;
+
+  // asynchronous, lock-free stochastic backpropagation with multiple threads.
+  private boolean hogwild = false;
+
+  // reshuffle the training rows before every epoch. null = never.
+  private Random shuffle = null;
+
+  // early stopping (see EarlyStopping). 0 = never.
+  private int patience = 0;
+  private double minDelta = 0;
+  private double plateau = 0;
+
+  // checkpoint file written every checkpointInterval epochs (null = never),
+  // and the checkpoint to resume from (null = start afresh).
+  private String checkpoint = null;
+  private int checkpointInterval = 0;
+  private String resume = null;
+
+  // name the run's metrics are published under (null = not published).
+  private String metrics = null;
+
+
+  public TrainingParameters(final int epochs, final double learningRate,
+      final double momentum) {
+    this.epochs = epochs;
+    this.learningRate = learningRate;
+    this.momentum = momentum;
+  }
+
+  /**
+   * a copy of these parameters.
+   */
+  public TrainingParameters copy() {
+    return new TrainingParameters(epochs, learningRate, momentum)
+        .setOptimizer(optimizer)
+        .setSchedule(schedule)
+        .setBatchSize(batchSize)
+        .setThreads(threads)
+        .setHogwild(hogwild)
+        .setShuffle(shuffle)
+        .setPatience(patience)
+        .setMinDelta(minDelta)
+        .setPlateau(plateau)
+        .setCheckpoint(checkpoint, checkpointInterval)
+        .setResume(resume)
+        .setMetrics(metrics);
+  }
+
+  public int getEpochs() {
+    return epochs;
+  }
+
+  public double getLearningRate() {
+    return learningRate;
+  }
+
+  public double getMomentum() {
+    return momentum;
+  }
+
+  public String getOptimizer() {
+    return optimizer;
+  }
+
+  /**
+   * weight update rule: momentum (the default), nesterov, rmsprop or adam
+   * (see net.parasec.nn.network.Optimizer). the momentum is only used by
+   * momentum and nesterov.
+   */
+  public TrainingParameters setOptimizer(final String optimizer) {
+    if(optimizer == null)
+      throw new IllegalArgumentException("optimizer must not be null");
+    // fail now rather than at the start of training, and keep the canonical
+    // name (e.g., "sgd" is "momentum").
+    this.optimizer = Optimizer.create(optimizer, 0).getName();
+    return this;
+  }
+
+  public Schedule getSchedule() {
+    return schedule;
+  }
+
+  /**
+   * learning rate of each epoch, from the learning rate (see Schedule).
+   */
+  public TrainingParameters setSchedule(final Schedule schedule) {
+    if(schedule == null)
+      throw new IllegalArgumentException("schedule must not be null");
+    this.schedule = schedule;
+    return this;
+  }
+
+  public int getBatchSize() {
+    return batchSize;
+  }
+
+  public TrainingParameters setBatchSize(final int batchSize) {
+    if(batchSize < 1)
+      throw new IllegalArgumentException("batch size must be >= 1");
+    this.batchSize = batchSize;
+    return this;
+  }
+
+  public int getThreads() {
+    return threads;
+  }
+
+  /**
+   * data-parallel training: each batch is divided between this many threads.
+   * only used with a batch size > 1.
+   */
+  public TrainingParameters setThreads(final int threads) {
+    if(threads < 1)
+      throw new IllegalArgumentException("threads must be >= 1");
+    this.threads = threads;
+    return this;
+  }
+
+  public boolean isHogwild() {
+    return hogwild;
+  }
+
+  /**
+   * asynchronous training: with more than 1 thread, each thread performs
+   * stochastic backpropagation on its own shard of the training data,
+   * updating the shared weights without locking. the batch size is ignored.
+   */
+  public TrainingParameters setHogwild(final boolean hogwild) {
+    this.hogwild = hogwild;
+    return this;
+  }
+
+  public Random getShuffle() {
+    return shuffle;
+  }
+
+  /**
+   * reshuffle the training rows with prng before every epoch, rather than
+   * once before training. only the row order (an index permutation) is
+   * shuffled, never the rows. null disables reshuffling.
+   */
+  public TrainingParameters setShuffle(final Random prng) {
+    this.shuffle = prng;
+    return this;
+  }
+
+  public int getPatience() {
+    return patience;
+  }
+
+  /**
+   * stop training when the testing rmse (or the training rmse, without a
+   * test set) has not improved by more than the minimum delta for this many
+   * epochs. 0 disables.
+   */
+  public TrainingParameters setPatience(final int patience) {
+    if(patience < 0)
+      throw new IllegalArgumentException("patience must be >= 0");
+    this.patience = patience;
+    return this;
+  }
+
+  public double getMinDelta() {
+    return minDelta;
+  }
+
+  /**
+   * smallest fall in rmse counted as an improvement (see setPatience).
+   */
+  public TrainingParameters setMinDelta(final double minDelta) {
+    if(minDelta < 0)
+      throw new IllegalArgumentException("min delta must be >= 0");
+    this.minDelta = minDelta;
+    return this;
+  }
+
+  public double getPlateau() {
+    return plateau;
+  }
+
+  /**
+   * stop training when the training rmse falls by less than this over the
+   * last patience epochs (or the last epoch, if patience is 0). 0 disables.
+   */
+  public TrainingParameters setPlateau(final double plateau) {
+    if(plateau < 0)
+      throw new IllegalArgumentException("plateau must be >= 0");
+    this.plateau = plateau;
+    return this;
+  }
+
+  public String getCheckpoint() {
+    return checkpoint;
+  }
+
+  public int getCheckpointInterval() {
+    return checkpointInterval;
+  }
+
+  /**
+   * write the training state to file every interval epochs (see
+   * Checkpoint), from a background thread. null disables.
+   */
+  public TrainingParameters setCheckpoint(final String file, 
+      final int interval) {
+    if(file != null && interval < 1)
+      throw new IllegalArgumentException("checkpoint interval must be >= 1");
+    this.checkpoint = file;
+    this.checkpointInterval = interval;
+    return this;
+  }
+
+  public String getResume() {
+    return resume;
+  }
+
+  /**
+   * resume training from a checkpoint file, if it exists. the network and
+   * data (including the holdback split) must be the same as when it was
+   * written.
+   */
+  public TrainingParameters setResume(final String file) {
+    this.resume = file;
+    return this;
+  }
+
+  public String getMetrics() {
+    return metrics;
+  }
+
+  /**
+   * publish the progress of training as an mxbean under this name (see
+   * Metrics). null disables.
+   */
+  public TrainingParameters setMetrics(final String name) {
+    this.metrics = name;
+    return this;
+  }
+
+  public String toString() {
+    return "epochs = " + epochs + " lr = " + learningRate + " mo = " +
+        momentum + " optimizer = " + optimizer + " schedule = " + schedule +
+        " bs = " + batchSize + " threads = " + threads + 
+        " hogwild = " + hogwild + " reshuffle = " + (shuffle != null) +
+        " patience = " + patience + " min delta = " + minDelta +
+        " plateau = " + plateau;
+  }
+}
@@ -12,11 +12,52 @@ public final class TrainingReport {
   private final double[] trainingError;
   private final double[] testingError;
 
+  // wall clock training time (ms) of this run.
+  private final long trainingTime;
+
+  // epochs trained (fewer than maxEpochs if stopped early), of which
+  // resumed were trained before the run was resumed from a checkpoint.
+  private final int epochs, maxEpochs, resumed;
+
 
   public TrainingReport(final int bestEpoch, final double trainingMSE, 
       final double testingMSE, final double testingAverageError, 
       final double testingMinError, final double testingMaxError,
       final double[] trainingError, final double[] testingError) {
+    this(bestEpoch, trainingMSE, testingMSE, testingAverageError, 
+        testingMinError, testingMaxError, trainingError, testingError, 0);
+  }
+
+  public TrainingReport(final int bestEpoch, final double trainingMSE, 
+      final double testingMSE, final double testingAverageError, 
+      final double testingMinError, final double testingMaxError,
+      final double[] trainingError, final double[] testingError,
+      final long trainingTime) {
+    this(bestEpoch, trainingMSE, testingMSE, testingAverageError, 
+        testingMinError, testingMaxError, trainingError, testingError, 
+        trainingTime, trainingError.length, trainingError.length);
+  }
+
+  public TrainingReport(final int bestEpoch, final double trainingMSE, 
+      final double testingMSE, final double testingAverageError, 
+      final double testingMinError, final double testingMaxError,
+      final double[] trainingError, final double[] testingError,
+      final long trainingTime, final int epochs, final int maxEpochs) {
+    this(bestEpoch, trainingMSE, testingMSE, testingAverageError, 
+        testingMinError, testingMaxError, trainingError, testingError, 
+        trainingTime, epochs, maxEpochs, 0);
+  }
+
+  /**
+   * @param resumed epochs restored from a checkpoint (not timed by
+   * trainingTime).
+   */
+  public TrainingReport(final int bestEpoch, final double trainingMSE, 
+      final double testingMSE, final double testingAverageError, 
+      final double testingMinError, final double testingMaxError,
+      final double[] trainingError, final double[] testingError,
+      final long trainingTime, final int epochs, final int maxEpochs,
+      final int resumed) {
     this.bestEpoch = bestEpoch;
     this.trainingMSE = trainingMSE;
     this.testingMSE = testingMSE;
@@ -25,6 +66,10 @@ public final class TrainingReport {
     this.testingMaxError = testingMaxError;
     this.trainingError = trainingError;
     this.testingError = testingError;
+    this.trainingTime = trainingTime;
+    this.epochs = epochs;
+    this.maxEpochs = maxEpochs;
+    this.resumed = resumed;
   }
 
   public int getBestEpoch() {
@@ -39,13 +84,60 @@ public final class TrainingReport {
     return testingError;
   }
 
+  public long getTrainingTime() {
+    return trainingTime;
+  }
+
+  /**
+   * number of epochs trained. (the error arrays are this long.)
+   */
+  public int getEpochs() {
+    return epochs;
+  }
+
+  /**
+   * true if training was stopped before the last epoch (see
+   * TrainingParameters.setPatience).
+   */
+  public boolean isStoppedEarly() {
+    return epochs < maxEpochs;
+  }
+
+  /**
+   * number of epochs restored from a checkpoint rather than trained in this
+   * run.
+   */
+  public int getResumedEpochs() {
+    return resumed;
+  }
+
+  /**
+   * estimated wall clock time (ms) saved by stopping early: the remaining
+   * epochs at the average epoch time of this run.
+   */
+  public long getTimeSaved() {
+    final int run = epochs-resumed;
+    return run > 0 ? (maxEpochs-epochs)*trainingTime/run : 0;
+  }
+
+  /**
+   * epochs per second of this run. 0 if the training time is unknown.
+   */
+  public double getEpochsPerSecond() {
+    return trainingTime > 0 
+        ? (epochs-resumed)/(trainingTime/1000d) : 0;
+  }
+
   public String toString() {
     return "best epoch = " + bestEpoch + " training mse = " + 
         String.format("%.5f", trainingMSE) + " testing mse = " + 
         String.format("%.5f", testingMSE) + " testing ae = " + 
         String.format("%.2f", testingAverageError) + " min = " + 
         String.format("%.2f", testingMinError) + " max = " + 
-        String.format("%.2f", testingMaxError);
+        String.format("%.2f", testingMaxError) + " epochs/s = " +
+        String.format("%.1f", getEpochsPerSecond()) + 
+        (isStoppedEarly() ? " stopped at epoch = " + epochs + 
+            " time saved = " + getTimeSaved() + "ms" : "");
   }
 }
 
@@ -0,0 +1,218 @@
+package net.parasec.nn.util;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * streaming parser for numeric csv files.
+ *
+ * bytes are read into a reusable buffer and each field is parsed in place
+ * into a reusable row of doubles: no String, String[] or boxed value is
+ * created per line or field. numbers with at most 15 significant digits and a
+ * small exponent (the common case) are converted exactly with a single
+ * multiplication or division (clinger's fast path), anything else falls back
+ * to Double.parseDouble, so the result is always identical to
+ * Double.parseDouble.
+ *
+ * as with DataLoader's original String.split parsing, lines without a
+ * delimiter (e.g., blank lines) are skipped and trailing empty fields are
+ * ignored.
+ */
+public final class CsvParser {
+  private static final byte DELIMITER = ',';
+
+  // exactly representable powers of 10.
+  private static final double[] POW10 = new double[23];
+  static {
+    POW10[0] = 1;
+    for(int i = 1; i < POW10.length; i++)
+      POW10[i] = POW10[i-1]*10;
+  }
+
+  private final InputStream in;
+  private byte[] buf = new byte[1 << 16];
+  private int pos, limit;
+  private boolean eof;
+
+  private double[] row = new double[16];
+  private long lines;
+
+
+  public CsvParser(final InputStream in) {
+    this.in = in;
+  }
+
+  /**
+   * parse the next row into row(). returns the number of values in the row,
+   * or -1 at the end of the input.
+   */
+  public int next() throws IOException {
+    for(;;) {
+      final int eol = nextLine();
+      if(eol < 0)
+        return -1;
+      int start = pos;
+      int end = eol;
+      pos = eol+1;
+      lines++;
+      if(end > start && buf[end-1] == '\r')
+        end--;
+      if(!contains(start, end, DELIMITER))
+        continue;
+      // trailing empty fields are ignored (as String.split), so a line of
+      // delimiters only is skipped.
+      while(end > start && buf[end-1] == DELIMITER)
+        end--;
+      if(end == start)
+        continue;
+      int n = 0;
+      for(;;) {
+        int d = start;
+        while(d < end && buf[d] != DELIMITER)
+          d++;
+        if(n == row.length)
+          row = Arrays.copyOf(row, 2*n);
+        row[n++] = parse(start, d);
+        if(d == end)
+          return n;
+        start = d+1;
+      }
+    }
+  }
+
+  /**
+   * values of the current row (a reused buffer, valid until the next call to
+   * next). the buffer may be longer than the row.
+   */
+  public double[] row() {
+    return row;
+  }
+
+  /**
+   * number of lines read so far (for error messages).
+   */
+  public long lines() {
+    return lines;
+  }
+
+  public void close() throws IOException {
+    in.close();
+  }
+
+  // index of the end of the next line ('\n', or the end of the input). -1 at
+  // the end of the input.
+  private int nextLine() throws IOException {
+    int scan = pos;
+    for(;;) {
+      for(; scan < limit; scan++)
+        if(buf[scan] == '\n')
+          return scan;
+      if(eof)
+        return pos < limit ? limit : -1;
+      // move the partial line to the start of the buffer (growing it if the
+      // line fills it) and read some more.
+      final int partial = limit-pos;
+      if(partial == buf.length)
+        buf = Arrays.copyOf(buf, 2*buf.length);
+      System.arraycopy(buf, pos, buf, 0, partial);
+      scan -= pos;
+      pos = 0;
+      limit = partial;
+      final int r = in.read(buf, limit, buf.length-limit);
+      if(r < 0)
+        eof = true;
+      else
+        limit += r;
+    }
+  }
+
+  private boolean contains(final int start, final int end, final byte b) {
+    for(int i = start; i < end; i++)
+      if(buf[i] == b)
+        return true;
+    return false;
+  }
+
+  // number in buf[start, end).
+  private double parse(int start, int end) {
+    // trim, as Double.parseDouble.
+    while(start < end && buf[start] <= ' ')
+      start++;
+    while(end > start && buf[end-1] <= ' ')
+      end--;
+    int i = start;
+    boolean negative = false;
+    if(i < end && (buf[i] == '-' || buf[i] == '+'))
+      negative = buf[i++] == '-';
+    long mantissa = 0;
+    int digits = 0, exponent = 0;
+    boolean any = false;
+    for(; i < end; i++) {
+      final int c = buf[i]-'0';
+      if(c < 0 || c > 9)
+        break;
+      any = true;
+      if(mantissa == 0 && c == 0)
+        continue;
+      if(++digits > 15)
+        return slow(start, end);
+      mantissa = mantissa*10+c;
+    }
+    if(i < end && buf[i] == '.') {
+      for(i++; i < end; i++) {
+        final int c = buf[i]-'0';
+        if(c < 0 || c > 9)
+          break;
+        any = true;
+        exponent--;
+        if(mantissa == 0 && c == 0)
+          continue;
+        if(++digits > 15)
+          return slow(start, end);
+        mantissa = mantissa*10+c;
+      }
+    }
+    if(!any)
+      return slow(start, end);
+    if(i < end && (buf[i] == 'e' || buf[i] == 'E')) {
+      i++;
+      boolean negativeExponent = false;
+      if(i < end && (buf[i] == '-' || buf[i] == '+'))
+        negativeExponent = buf[i++] == '-';
+      int e = 0;
+      boolean expDigits = false;
+      for(; i < end; i++) {
+        final int c = buf[i]-'0';
+        if(c < 0 || c > 9)
+          break;
+        expDigits = true;
+        if(e < 1000)
+          e = e*10+c;
+      }
+      if(!expDigits)
+        return slow(start, end);
+      exponent += negativeExponent ? -e : e;
+    }
+    // trailing characters (e.g., a 'd' suffix, or junk): let
+    // Double.parseDouble decide.
+    if(i != end)
+      return slow(start, end);
+    final double d;
+    if(mantissa == 0)
+      d = 0;
+    else if(exponent < 0 && exponent >= -22)
+      d = mantissa/POW10[-exponent];
+    else if(exponent >= 0 && exponent <= 22)
+      d = mantissa*POW10[exponent];
+    else
+      return slow(start, end);
+    return negative ? -d : d;
+  }
+
+  private double slow(final int start, final int end) {
+    return Double.parseDouble(
+        new String(buf, start, end-start, StandardCharsets.US_ASCII));
+  }
+}
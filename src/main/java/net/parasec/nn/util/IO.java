@@ -2,15 +2,22 @@ package net.parasec.nn.util;
 
 import net.parasec.nn.logging.Logger;
 
-import java.io.ObjectOutputStream;
-import java.io.FileOutputStream;
 import java.io.ObjectInputStream;
 import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.EOFException;
+import java.util.Arrays;
 
 /**
  * save and load weights. 
- * just serialise weight matrix.
+ * weights are saved as a model file (see ModelFile): structure, activation
+ * of each layer and packed weights in double or, for single precision
+ * networks, float precision. either precision can be loaded at either
+ * precision.
+ *
+ * the old format, a serialised weight matrix (double[][][] or float[][][])
+ * optionally followed by the activation function name of each layer
+ * (String[]), can still be loaded. files without names are sigmoid networks.
  */
 public final class IO {
 
@@ -18,34 +25,89 @@ public final class IO {
 
   public static void dumpWeights(final double[][][] weights, 
       final String filename) {
-/*
-for(int i = 0; i < weights.length; i++)
-  for(int j = 0; j < weights[i].length; j++)
-    for(int k = 0; k < weights[i][j].length; k++)
-      System.out.println(i+"|"+j+"|"+k+" "+weights[i][j][k]);
-*/
-    try {
-      ObjectOutputStream out = null;
-      try {
-        LOG.info("saving weights to " + filename);
-        out = new ObjectOutputStream(new FileOutputStream(filename));
-        out.writeObject(weights); 
-      } finally {
-        if(out != null)
-          out.close();
-      }
-    } catch(IOException e) {
-      LOG.error(e, e);
-    } 
+    dump(weights, null, filename);
   }
 
-  public static double[][][] loadWeights(final String filename) {
+  public static void dumpWeights(final double[][][] weights, 
+      final String[] activations, final String filename) {
+    dump(weights, activations, filename);
+  }
+
+  public static void dumpWeights(final float[][][] weights, 
+      final String filename) {
+    dump(weights, null, filename);
+  }
+
+  public static void dumpWeights(final float[][][] weights, 
+      final String[] activations, final String filename) {
+    dump(weights, activations, filename);
+  }
+
+  /**
+   * weights and activation names of a weights file, read with a single open
+   * (see loadModel).
+   */
+  public static final class Weights {
+    // double[][][] or float[][][], as stored.
+    private final Object weights;
+    private final String[] activations;
+
+    private Weights(final Object weights, final String[] activations) {
+      this.weights = weights;
+      this.activations = activations;
+    }
+
+    /**
+     * the weights (widened if stored in single precision).
+     */
+    public double[][][] getWeights() {
+      return weights instanceof float[][][] 
+          ? widen((float[][][]) weights) : (double[][][]) weights;
+    }
+
+    /**
+     * the weights (narrowed if stored in double precision).
+     */
+    public float[][][] getFloatWeights() {
+      return weights instanceof double[][][] 
+          ? narrow((double[][][]) weights) : (float[][][]) weights;
+    }
+
+    /**
+     * activation function name of each layer, or null if the file does not
+     * name them.
+     */
+    public String[] getActivations() {
+      return activations;
+    }
+  }
+
+  /**
+   * weights and activation names of a file, or null if it can not be read.
+   */
+  public static Weights loadModel(final String filename) {
+    if(ModelFile.isModel(filename)) {
+      final ModelFile model = open(filename);
+      if(model == null)
+        return null;
+      final int[] structure = model.getStructure();
+      return new Weights(model.isFloat() 
+          ? unpack(model.getFloatWeights(), structure) 
+          : unpack(model.getWeights(), structure), model.getActivations());
+    }
     try {
       ObjectInputStream in = null;
       try {
         LOG.info("loading weights from " + filename); 
         in = new ObjectInputStream(new FileInputStream(filename));
-        return (double[][][]) in.readObject();
+        final Object weights = in.readObject();
+        String[] activations = null;
+        try {
+          activations = (String[]) in.readObject();
+        } catch(EOFException e) {
+          // weights only.
+        }
+        return new Weights(weights, activations);
       } finally {
         if(in != null)
           in.close();
@@ -57,5 +119,143 @@ for(int i = 0; i < weights.length; i++)
     }
     return null;
   }
-}
 
+  /**
+   * activation function name of each layer, or null if the file does not
+   * name them.
+   */
+  public static String[] loadActivations(final String filename) {
+    final Weights model = loadModel(filename);
+    return model == null ? null : model.getActivations();
+  }
+
+  public static double[][][] loadWeights(final String filename) {
+    final Weights model = loadModel(filename);
+    return model == null ? null : model.getWeights();
+  }
+
+  public static float[][][] loadFloatWeights(final String filename) {
+    final Weights model = loadModel(filename);
+    return model == null ? null : model.getFloatWeights();
+  }
+
+  public static float[][][] narrow(final double[][][] weights) {
+    final float[][][] f = new float[weights.length][][];
+    for(int i = weights.length; --i >= 0; ) {
+      f[i] = new float[weights[i].length][];
+      for(int j = weights[i].length; --j >= 0; ) {
+        final double[] w = weights[i][j];
+        final float[] row = f[i][j] = new float[w.length];
+        for(int k = w.length; --k >= 0; )
+          row[k] = (float) w[k];
+      }
+    }
+    return f;
+  }
+
+  public static double[][][] widen(final float[][][] weights) {
+    final double[][][] d = new double[weights.length][][];
+    for(int i = weights.length; --i >= 0; ) {
+      d[i] = new double[weights[i].length][];
+      for(int j = weights[i].length; --j >= 0; ) {
+        final float[] w = weights[i][j];
+        final double[] row = d[i][j] = new double[w.length];
+        for(int k = w.length; --k >= 0; )
+          row[k] = w[k];
+      }
+    }
+    return d;
+  }
+
+  private static void dump(final double[][][] weights, 
+      final String[] activations, final String filename) {
+    final int[] structure = structure(weights, weights[0][0].length-1);
+    final double[] packed = new double[count(structure)];
+    int off = 0;
+    for(int i = 0; i < weights.length; i++) {
+      for(final double[] row : weights[i]) {
+        System.arraycopy(row, 0, packed, off, row.length);
+        off += row.length;
+      }
+    }
+    try {
+      LOG.info("saving weights to " + filename);
+      ModelFile.write(filename, structure, activations, packed);
+    } catch(IOException e) {
+      LOG.error(e, e);
+    } 
+  }
+
+  private static void dump(final float[][][] weights, 
+      final String[] activations, final String filename) {
+    final int[] structure = structure(weights, weights[0][0].length-1);
+    final float[] packed = new float[count(structure)];
+    int off = 0;
+    for(int i = 0; i < weights.length; i++) {
+      for(final float[] row : weights[i]) {
+        System.arraycopy(row, 0, packed, off, row.length);
+        off += row.length;
+      }
+    }
+    try {
+      LOG.info("saving weights to " + filename);
+      ModelFile.write(filename, structure, activations, packed);
+    } catch(IOException e) {
+      LOG.error(e, e);
+    } 
+  }
+
+  // nodes in each layer of a [layer][neuron][weight] matrix.
+  private static int[] structure(final Object[][] weights, final int inputs) {
+    final int[] structure = new int[weights.length+1];
+    structure[0] = inputs;
+    for(int i = weights.length; --i >= 0; )
+      structure[i+1] = weights[i].length;
+    return structure;
+  }
+
+  private static int count(final int[] structure) {
+    int n = 0;
+    for(int i = structure.length; --i > 0; )
+      n += structure[i]*(structure[i-1]+1);
+    return n;
+  }
+
+  private static double[][][] unpack(final double[] packed, 
+      final int[] structure) {
+    final double[][][] weights = new double[structure.length-1][][];
+    int off = 0;
+    for(int i = 0; i < weights.length; i++) {
+      weights[i] = new double[structure[i+1]][];
+      for(int j = 0; j < weights[i].length; j++) {
+        weights[i][j] = Arrays.copyOfRange(packed, off, off+structure[i]+1);
+        off += structure[i]+1;
+      }
+    }
+    return weights;
+  }
+
+  private static float[][][] unpack(final float[] packed, 
+      final int[] structure) {
+    final float[][][] weights = new float[structure.length-1][][];
+    int off = 0;
+    for(int i = 0; i < weights.length; i++) {
+      weights[i] = new float[structure[i+1]][];
+      for(int j = 0; j < weights[i].length; j++) {
+        weights[i][j] = Arrays.copyOfRange(packed, off, off+structure[i]+1);
+        off += structure[i]+1;
+      }
+    }
+    return weights;
+  }
+
+  private static ModelFile open(final String filename) {
+    try {
+      LOG.info("loading weights from " + filename); 
+      return ModelFile.open(filename);
+    } catch(IOException e) {
+      LOG.error(e, e);
+    }
+    return null;
+  }
+}
@@ -0,0 +1,21 @@
+package net.parasec.nn.util;
+
+/**
+ * the vector kernels behind Kernels. see Kernels for the contract of each.
+ */
+interface Kernel {
+
+  double dot(double[] a, int aOff, double[] b, int bOff, int n);
+
+  void axpy(double alpha, double[] x, int xOff, double[] y, int yOff, int n);
+
+  void update(double learningRate, double scale, double[] x, int xOff,
+      double momentum, double[] preDW, double[] w, int wOff, int n);
+
+  float dot(float[] a, int aOff, float[] b, int bOff, int n);
+
+  void axpy(float alpha, float[] x, int xOff, float[] y, int yOff, int n);
+
+  void update(float learningRate, float scale, float[] x, int xOff,
+      float momentum, float[] preDW, float[] w, int wOff, int n);
+}
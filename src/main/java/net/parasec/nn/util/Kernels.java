@@ -0,0 +1,92 @@
+package net.parasec.nn.util;
+
+import net.parasec.nn.logging.Logger;
+
+/**
+ * vector kernels used by the network hot loops.
+ *
+ * if the jdk.incubator.vector module is available (run with
+ * --add-modules jdk.incubator.vector) explicit simd implementations are
+ * used, otherwise portable scalar loops. -Dnn.simd=false forces the scalar
+ * kernels (whose dot product sums sequentially, so results are exactly
+ * reproducible across machines).
+ */
+public final class Kernels {
+  private static final Logger LOG = Logger.getLogger(Kernels.class);
+
+  // constant after class initialisation, so calls are inlined by the jit.
+  private static final Kernel K = load();
+
+
+  private static Kernel load() {
+    if(Boolean.parseBoolean(System.getProperty("nn.simd", "true"))
+        && ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent()) {
+      try {
+        final Kernel k = (Kernel) Class.forName(
+            "net.parasec.nn.util.VectorKernel").getDeclaredConstructor()
+            .newInstance();
+        LOG.info("using simd kernels");
+        return k;
+      } catch(final ReflectiveOperationException | LinkageError e) {
+        LOG.info("simd kernels unavailable (" + e + "). using scalar kernels");
+      }
+    }
+    return new ScalarKernel();
+  }
+
+  /**
+   * sum of a[aOff+i]*b[bOff+i] for i in [0, n).
+   */
+  public static double dot(final double[] a, final int aOff, 
+      final double[] b, final int bOff, final int n) {
+    return K.dot(a, aOff, b, bOff, n);
+  }
+
+  /**
+   * y[yOff+i] += x[xOff+i]*alpha for i in [0, n).
+   */
+  public static void axpy(final double alpha, final double[] x, 
+      final int xOff, final double[] y, final int yOff, final int n) {
+    K.axpy(alpha, x, xOff, y, yOff, n);
+  }
+
+  /**
+   * momentum weight update for i in [0, n):
+   * dw = learningRate*(scale*x[xOff+i]) + momentum*preDW[wOff+i],
+   * w[wOff+i] += dw, preDW[wOff+i] = dw.
+   *
+   * with scale = a neuron error and x = the neuron inputs, this is one row of
+   * the outer product update of a layer. with scale = 1 and x = a gradient,
+   * it is a plain momentum step.
+   */
+  public static void update(final double learningRate, final double scale,
+      final double[] x, final int xOff, final double momentum,
+      final double[] preDW, final double[] w, final int wOff, final int n) {
+    K.update(learningRate, scale, x, xOff, momentum, preDW, w, wOff, n);
+  }
+
+  /**
+   * single precision dot.
+   */
+  public static float dot(final float[] a, final int aOff, final float[] b,
+      final int bOff, final int n) {
+    return K.dot(a, aOff, b, bOff, n);
+  }
+
+  /**
+   * single precision axpy.
+   */
+  public static void axpy(final float alpha, final float[] x, 
+      final int xOff, final float[] y, final int yOff, final int n) {
+    K.axpy(alpha, x, xOff, y, yOff, n);
+  }
+
+  /**
+   * single precision update.
+   */
+  public static void update(final float learningRate, final float scale,
+      final float[] x, final int xOff, final float momentum,
+      final float[] preDW, final float[] w, final int wOff, final int n) {
+    K.update(learningRate, scale, x, xOff, momentum, preDW, w, wOff, n);
+  }
+}
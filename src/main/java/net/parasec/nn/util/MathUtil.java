@@ -57,6 +57,14 @@ public final class MathUtil {
     return 1/(1+fastExp1(-x));
   }
 
+  /**
+   * single precision fastSigmoid. (the exp approximation is computed in
+   * double precision, which also keeps it well defined for large |x|.)
+   */
+  public static float fastSigmoid(final float x) {
+    return (float) fastSigmoid((double) x);
+  }
+
   public static double tanh(final double x) {
     return Math.tanh(x);
   }
@@ -66,6 +74,10 @@ public final class MathUtil {
     return sOutput*(1-sOutput);
   }
 
+  public static float sigmoidDerivative(final float sOutput) {
+    return sOutput*(1-sOutput);
+  }
+
   public static double tanhDerivative(final double thOutput) {
     return 1-(thOutput*thOutput);
   }
@@ -0,0 +1,319 @@
+package net.parasec.nn.util;
+
+import net.parasec.nn.logging.Logger;
+
+import java.io.DataInputStream;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.CRC32;
+
+/**
+ * versioned binary model (weights) file, memory-mapped when loaded.
+ *
+ * file format (little-endian):
+ *
+ *   int    magic      "NNMF"
+ *   int    version    1
+ *   int    precision  4 (float) or 8 (double)
+ *   int    layers     n, including the input layer
+ *   int    [n] nodes in each layer
+ *   int    number of activation names: n-1, or 0 if unnamed (sigmoid)
+ *   names  [n-1] short length, ascii activation name
+ *          zero padding to a multiple of 8 bytes
+ *   long   number of weights
+ *   int    crc32 of the header before it and the weights
+ *   int    0
+ *   float|double [weights] packed weights (see ANN).
+ *
+ * the weights are one contiguous block in the packed layout the networks
+ * use, so loading is a bulk copy out of the mapping (no per-array
+ * deserialisation) and the file does not depend on the jvm.
+ */
+public final class ModelFile {
+  private static final Logger LOG = Logger.getLogger(ModelFile.class);
+
+  static final int MAGIC = 0x4E4E4D46;
+  static final int VERSION = 1;
+
+  // a mapping is limited to 2GB, so weights are mapped in chunks of at most
+  // this many bytes.
+  private static final long CHUNK = 1 << 30;
+
+  private final int[] structure;
+  private final String[] activations;
+  private final int precision;
+  private final MappedByteBuffer[] chunks;
+  private final long count;
+
+
+  private ModelFile(final int[] structure, final String[] activations,
+      final int precision, final MappedByteBuffer[] chunks,
+      final long count) {
+    this.structure = structure;
+    this.activations = activations;
+    this.precision = precision;
+    this.chunks = chunks;
+    this.count = count;
+  }
+
+  /**
+   * true if file starts with the model magic number.
+   */
+  public static boolean isModel(final String file) {
+    try {
+      final DataInputStream in
+          = new DataInputStream(new FileInputStream(file));
+      try {
+        return Integer.reverseBytes(in.readInt()) == MAGIC;
+      } finally {
+        in.close();
+      }
+    } catch(final IOException e) {
+      return false;
+    }
+  }
+
+  /**
+   * write a double precision model.
+   * @param activations activation name of each layer (excluding the input
+   * layer), or null.
+   */
+  public static void write(final String file, final int[] structure,
+      final String[] activations, final double[] weights) throws IOException {
+    write(file, structure, activations, weights, null);
+  }
+
+  /**
+   * write a single precision model.
+   */
+  public static void write(final String file, final int[] structure,
+      final String[] activations, final float[] weights) throws IOException {
+    write(file, structure, activations, null, weights);
+  }
+
+  private static void write(final String file, final int[] structure,
+      final String[] activations, final double[] d, final float[] f)
+      throws IOException {
+    final long count = d != null ? d.length : f.length;
+    final ByteBuffer header = header(structure, activations,
+        d != null ? 8 : 4, count);
+    final CRC32 crc = new CRC32();
+    crc.update(header.array(), 0, header.limit()-8);
+    final RandomAccessFile raf = new RandomAccessFile(file, "rw");
+    try {
+      raf.setLength(0);
+      final FileChannel channel = raf.getChannel();
+      while(header.hasRemaining())
+        channel.write(header);
+      final ByteBuffer block
+          = ByteBuffer.allocate(1 << 16).order(ByteOrder.LITTLE_ENDIAN);
+      final int per = block.capacity()/(d != null ? 8 : 4);
+      for(int i = 0; i < count; i += per) {
+        final int n = (int) Math.min(per, count-i);
+        block.clear();
+        if(d != null)
+          block.asDoubleBuffer().put(d, i, n);
+        else
+          block.asFloatBuffer().put(f, i, n);
+        block.limit(n*(d != null ? 8 : 4));
+        crc.update(block.array(), 0, block.limit());
+        while(block.hasRemaining())
+          channel.write(block);
+      }
+      // patch the checksum.
+      final ByteBuffer sum
+          = ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN);
+      sum.putInt(0, (int) crc.getValue());
+      channel.write(sum, header.limit()-8);
+    } finally {
+      raf.close();
+    }
+  }
+
+  private static ByteBuffer header(final int[] structure,
+      final String[] activations, final int precision, final long count) {
+    int len = 16+4*structure.length+4;
+    if(activations != null)
+      for(final String name : activations)
+        len += 2+name.length();
+    len = (len+7)/8*8+16;
+    final ByteBuffer header
+        = ByteBuffer.allocate(len).order(ByteOrder.LITTLE_ENDIAN);
+    header.putInt(MAGIC).putInt(VERSION).putInt(precision)
+        .putInt(structure.length);
+    for(final int n : structure)
+      header.putInt(n);
+    header.putInt(activations != null ? activations.length : 0);
+    if(activations != null) {
+      for(final String name : activations) {
+        final byte[] b = name.getBytes(StandardCharsets.US_ASCII);
+        header.putShort((short) b.length).put(b);
+      }
+    }
+    header.position(len-16);
+    header.putLong(count).putInt(0).putInt(0);
+    header.flip();
+    return header;
+  }
+
+  /**
+   * map a model file and verify its checksum.
+   */
+  public static ModelFile open(final String file) throws IOException {
+    final long l = System.currentTimeMillis();
+    final RandomAccessFile raf = new RandomAccessFile(file, "r");
+    try {
+      final FileChannel channel = raf.getChannel();
+      final long size = channel.size();
+      final ByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0,
+          Math.min(size, 1 << 16)).order(ByteOrder.LITTLE_ENDIAN);
+      if(header.remaining() < 16 || header.getInt() != MAGIC)
+        throw new IOException("not a model file: " + file);
+      final int version = header.getInt();
+      if(version != VERSION)
+        throw new IOException("unsupported model version " + version +
+            ": " + file);
+      final int precision = header.getInt();
+      if(precision != 4 && precision != 8)
+        throw new IOException("bad precision " + precision + ": " + file);
+      final int layers = header.getInt();
+      if(layers < 2)
+        throw new IOException(layers + " layers: " + file);
+      need(header, 4L*layers+4, file);
+      final int[] structure = new int[layers];
+      long expected = 0;
+      for(int i = 0; i < structure.length; i++) {
+        structure[i] = header.getInt();
+        if(structure[i] < 1)
+          throw new IOException(structure[i] + " nodes in layer " + i + ": " +
+              file);
+        if(i > 0)
+          expected += (long) structure[i]*(structure[i-1]+1);
+      }
+      final int names = header.getInt();
+      if(names < 0 || names > layers)
+        throw new IOException(names + " activation names: " + file);
+      final String[] activations = names > 0 ? new String[names] : null;
+      for(int i = 0; i < names; i++) {
+        need(header, 2, file);
+        final short len = header.getShort();
+        if(len < 0)
+          throw new IOException("bad activation name length " + len + ": " +
+              file);
+        need(header, len, file);
+        final byte[] b = new byte[len];
+        header.get(b);
+        activations[i] = new String(b, StandardCharsets.US_ASCII);
+      }
+      final int padded = (header.position()+7)/8*8;
+      need(header, padded-header.position()+16, file);
+      header.position(padded);
+      final long count = header.getLong();
+      final int checksum = header.getInt();
+      header.getInt();
+      final int start = header.position();
+      if(count != expected || count > Integer.MAX_VALUE)
+        throw new IOException(count + " weights, expected " + expected +
+            " for the structure: " + file);
+      if(size < start+count*precision)
+        throw new IOException("truncated model: " + file);
+
+      // map the weights in chunks of whole values.
+      final long bytes = count*precision;
+      final MappedByteBuffer[] chunks
+          = new MappedByteBuffer[(int) ((bytes+CHUNK-1)/CHUNK)];
+      final CRC32 crc = new CRC32();
+      crc.update(header.duplicate().position(0).limit(start-8));
+      for(int i = 0; i < chunks.length; i++) {
+        final long from = i*CHUNK;
+        chunks[i] = channel.map(FileChannel.MapMode.READ_ONLY, start+from,
+            Math.min(CHUNK, bytes-from));
+        chunks[i].order(ByteOrder.LITTLE_ENDIAN);
+        crc.update(chunks[i].duplicate());
+      }
+      if((int) crc.getValue() != checksum)
+        throw new IOException("checksum mismatch: " + file);
+      LOG.info("mapped " + count + " weights (" + (precision == 8
+          ? "double" : "float") + ") in " +
+          (System.currentTimeMillis()-l) + "ms.");
+      return new ModelFile(structure, activations, precision, chunks, count);
+    } finally {
+      raf.close();
+    }
+  }
+
+  // the header must have at least bytes left (a truncated or corrupt file
+  // would otherwise fail with a runtime exception).
+  private static void need(final ByteBuffer header, final long bytes,
+      final String file) throws IOException {
+    if(header.remaining() < bytes)
+      throw new IOException("truncated model header: " + file);
+  }
+
+  /**
+   * nodes in each layer, including the input layer.
+   */
+  public int[] getStructure() {
+    return structure.clone();
+  }
+
+  /**
+   * activation name of each layer, or null if the file does not name them.
+   */
+  public String[] getActivations() {
+    return activations == null ? null : activations.clone();
+  }
+
+  /**
+   * true if the weights are stored in single precision.
+   */
+  public boolean isFloat() {
+    return precision == 4;
+  }
+
+  /**
+   * the packed weights (widened if stored in single precision).
+   */
+  public double[] getWeights() {
+    final double[] weights = new double[(int) count];
+    int off = 0;
+    for(final MappedByteBuffer chunk : chunks) {
+      final ByteBuffer b = chunk.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+      final int n = b.remaining()/precision;
+      if(precision == 8) {
+        b.asDoubleBuffer().get(weights, off, n);
+      } else {
+        for(int i = 0; i < n; i++)
+          weights[off+i] = b.getFloat(4*i);
+      }
+      off += n;
+    }
+    return weights;
+  }
+
+  /**
+   * the packed weights (narrowed if stored in double precision).
+   */
+  public float[] getFloatWeights() {
+    final float[] weights = new float[(int) count];
+    int off = 0;
+    for(final MappedByteBuffer chunk : chunks) {
+      final ByteBuffer b = chunk.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+      final int n = b.remaining()/precision;
+      if(precision == 4) {
+        b.asFloatBuffer().get(weights, off, n);
+      } else {
+        for(int i = 0; i < n; i++)
+          weights[off+i] = (float) b.getDouble(8*i);
+      }
+      off += n;
+    }
+    return weights;
+  }
+}
@@ -0,0 +1,109 @@
+package net.parasec.nn.util;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * command line options of the form --name=value.
+ *
+ * for backwards compatibility, bare (positional) arguments are assigned to
+ * the supplied positional names in order. any positional arguments beyond
+ * the last name are appended to the last name's value, separated by commas.
+ *
+ * a tool declares the rest of its option names with accept, so that a
+ * misspelt option is an error rather than silently ignored.
+ */
+public final class Options {
+  private final Map<String, String> options = new HashMap<String, String>();
+  private final String[] positional;
+
+
+  public Options(final String[] args, final String... positional) {
+    this.positional = positional;
+    int p = 0;
+    for(final String arg : args) {
+      if(arg.startsWith("--")) {
+        final int eq = arg.indexOf('=');
+        if(eq < 0)
+          options.put(arg.substring(2), "true");
+        else
+          options.put(arg.substring(2, eq), arg.substring(eq+1));
+      } else if(p < positional.length) {
+        options.put(positional[p++], arg);
+      } else if(positional.length > 0) {
+        final String last = positional[positional.length-1];
+        options.put(last, options.get(last) + "," + arg);
+      } else {
+        throw new IllegalArgumentException("unexpected argument: " + arg);
+      }
+    }
+  }
+
+  /**
+   * fail on any option other than names (or the positional names).
+   */
+  public Options accept(final String... names) {
+    final Set<String> known = new HashSet<String>(Arrays.asList(names));
+    known.addAll(Arrays.asList(positional));
+    for(final String name : options.keySet())
+      if(!known.contains(name))
+        throw new IllegalArgumentException("unknown option: --" + name);
+    return this;
+  }
+
+  public boolean has(final String name) {
+    return options.containsKey(name);
+  }
+
+  public String getString(final String name) {
+    final String value = options.get(name);
+    if(value == null)
+      throw new IllegalArgumentException("missing option: --" + name);
+    return value;
+  }
+
+  public String getString(final String name, final String def) {
+    final String value = options.get(name);
+    return value != null ? value : def;
+  }
+
+  public int getInt(final String name) {
+    return Integer.parseInt(getString(name));
+  }
+
+  public int getInt(final String name, final int def) {
+    final String value = options.get(name);
+    return value != null ? Integer.parseInt(value) : def;
+  }
+
+  public double getDouble(final String name) {
+    return Double.parseDouble(getString(name));
+  }
+
+  public double getDouble(final String name, final double def) {
+    final String value = options.get(name);
+    return value != null ? Double.parseDouble(value) : def;
+  }
+
+  public boolean getBoolean(final String name, final boolean def) {
+    final String value = options.get(name);
+    return value != null ? Boolean.parseBoolean(value) : def;
+  }
+
+  /**
+   * comma separated list of integers. empty string = empty list.
+   */
+  public int[] getInts(final String name) {
+    final String value = getString(name);
+    if(value.isEmpty())
+      return new int[0];
+    final String[] split = value.split(",");
+    final int[] ints = new int[split.length];
+    for(int i = 0, len = split.length; i < len; i++)
+      ints[i] = Integer.parseInt(split[i].trim());
+    return ints;
+  }
+}
@@ -0,0 +1,59 @@
+package net.parasec.nn.util;
+
+/**
+ * portable kernels. plain forward, unit-stride loops which the jit may
+ * auto-vectorise (apart from dot, which is kept as a sequential sum so that
+ * results are reproducible).
+ */
+final class ScalarKernel implements Kernel {
+
+  public double dot(final double[] a, final int aOff, final double[] b,
+      final int bOff, final int n) {
+    double sum = 0;
+    for(int i = 0; i < n; i++)
+      sum += a[aOff+i]*b[bOff+i];
+    return sum;
+  }
+
+  public void axpy(final double alpha, final double[] x, final int xOff,
+      final double[] y, final int yOff, final int n) {
+    for(int i = 0; i < n; i++)
+      y[yOff+i] += x[xOff+i]*alpha;
+  }
+
+  public void update(final double learningRate, final double scale,
+      final double[] x, final int xOff, final double momentum,
+      final double[] preDW, final double[] w, final int wOff, final int n) {
+    for(int i = 0; i < n; i++) {
+      final int k = wOff+i;
+      final double dw = (learningRate*(scale*x[xOff+i]))+(momentum*preDW[k]);
+      w[k] += dw;
+      preDW[k] = dw;
+    }
+  }
+
+  public float dot(final float[] a, final int aOff, final float[] b,
+      final int bOff, final int n) {
+    float sum = 0;
+    for(int i = 0; i < n; i++)
+      sum += a[aOff+i]*b[bOff+i];
+    return sum;
+  }
+
+  public void axpy(final float alpha, final float[] x, final int xOff,
+      final float[] y, final int yOff, final int n) {
+    for(int i = 0; i < n; i++)
+      y[yOff+i] += x[xOff+i]*alpha;
+  }
+
+  public void update(final float learningRate, final float scale,
+      final float[] x, final int xOff, final float momentum,
+      final float[] preDW, final float[] w, final int wOff, final int n) {
+    for(int i = 0; i < n; i++) {
+      final int k = wOff+i;
+      final float dw = (learningRate*(scale*x[xOff+i]))+(momentum*preDW[k]);
+      w[k] += dw;
+      preDW[k] = dw;
+    }
+  }
+}
@@ -2,6 +2,19 @@ package net.parasec.nn.util;
 
 public final class Util {
 
+  // powers of 10 for formatFixed.
+  private static final long[] POW10 = new long[16];
+  static {
+    POW10[0] = 1;
+    for(int i = 1; i < POW10.length; i++)
+      POW10[i] = POW10[i-1]*10;
+  }
+
+  /**
+   * maximum number of bytes written by formatFixed.
+   */
+  public static final int MAX_FIXED_LENGTH = 32;
+
   public static String vectorToString(final double[] vector) {
     final int len = (vector != null) ? vector.length - 1 : -1;
     if(len < 0) 
@@ -12,5 +25,50 @@ public final class Util {
     return sb.append(String.format("%.4f", vector[len])).append(" ]")
         .toString();
   }
-}
 
+  /**
+   * write x with a fixed number of decimal places (0-15) as ascii into buf at
+   * pos, without allocating. equivalent to String.format("%.nf", x) for 
+   * values below 1e15 (up to rounding of the last digit). larger values, nan
+   * and infinity fall back to Double.toString.
+   * returns the position after the last byte written. at most 
+   * MAX_FIXED_LENGTH bytes are written.
+   */
+  public static int formatFixed(final double x, final int decimals,
+      final byte[] buf, int pos) {
+    final long scale = POW10[decimals];
+    final double abs = Math.abs(x);
+    if(!(abs*scale < 1e15)) {
+      final String s = Double.toString(x);
+      for(int i = 0, len = s.length(); i < len; i++)
+        buf[pos++] = (byte) s.charAt(i);
+      return pos;
+    }
+    final long scaled = Math.round(abs*scale);
+    if(x < 0 && scaled != 0)
+      buf[pos++] = '-';
+    pos = formatLong(scaled/scale, buf, pos);
+    if(decimals > 0) {
+      buf[pos++] = '.';
+      long frac = scaled%scale;
+      for(int i = pos+decimals; --i >= pos; ) {
+        buf[i] = (byte) ('0'+frac%10);
+        frac /= 10;
+      }
+      pos += decimals;
+    }
+    return pos;
+  }
+
+  // non-negative long as ascii.
+  private static int formatLong(long x, final byte[] buf, final int pos) {
+    int digits = 1;
+    for(long t = x; t >= 10; t /= 10)
+      digits++;
+    for(int i = pos+digits; --i >= pos; ) {
+      buf[i] = (byte) ('0'+x%10);
+      x /= 10;
+    }
+    return pos+digits;
+  }
+}
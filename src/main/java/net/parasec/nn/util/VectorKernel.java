@@ -0,0 +1,117 @@
+package net.parasec.nn.util;
+
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.FloatVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * explicit simd kernels using the (incubating) vector api, at the widest
+ * vector shape supported by the cpu (e.g. 4 doubles or 8 floats with avx2,
+ * 8 doubles or 16 floats with avx-512). a scalar loop handles the remaining
+ * tail elements.
+ *
+ * only dot changes the order of floating point operations (lane-wise
+ * partial sums); the element-wise kernels give the same results as
+ * ScalarKernel.
+ */
+final class VectorKernel implements Kernel {
+  private static final VectorSpecies<Double> S = DoubleVector.SPECIES_PREFERRED;
+  private static final int L = S.length();
+  private static final VectorSpecies<Float> FS = FloatVector.SPECIES_PREFERRED;
+  private static final int FL = FS.length();
+
+  public double dot(final double[] a, final int aOff, final double[] b,
+      final int bOff, final int n) {
+    final int bound = S.loopBound(n);
+    DoubleVector acc = DoubleVector.zero(S);
+    int i = 0;
+    for(; i < bound; i += L)
+      acc = DoubleVector.fromArray(S, a, aOff+i)
+          .mul(DoubleVector.fromArray(S, b, bOff+i)).add(acc);
+    double sum = acc.reduceLanes(VectorOperators.ADD);
+    for(; i < n; i++)
+      sum += a[aOff+i]*b[bOff+i];
+    return sum;
+  }
+
+  public void axpy(final double alpha, final double[] x, final int xOff,
+      final double[] y, final int yOff, final int n) {
+    final int bound = S.loopBound(n);
+    int i = 0;
+    for(; i < bound; i += L)
+      DoubleVector.fromArray(S, x, xOff+i).mul(alpha)
+          .add(DoubleVector.fromArray(S, y, yOff+i))
+          .intoArray(y, yOff+i);
+    for(; i < n; i++)
+      y[yOff+i] += x[xOff+i]*alpha;
+  }
+
+  public void update(final double learningRate, final double scale,
+      final double[] x, final int xOff, final double momentum,
+      final double[] preDW, final double[] w, final int wOff, final int n) {
+    final int bound = S.loopBound(n);
+    int i = 0;
+    for(; i < bound; i += L) {
+      final int k = wOff+i;
+      final DoubleVector dw = DoubleVector.fromArray(S, x, xOff+i).mul(scale)
+          .mul(learningRate)
+          .add(DoubleVector.fromArray(S, preDW, k).mul(momentum));
+      DoubleVector.fromArray(S, w, k).add(dw).intoArray(w, k);
+      dw.intoArray(preDW, k);
+    }
+    for(; i < n; i++) {
+      final int k = wOff+i;
+      final double dw = (learningRate*(scale*x[xOff+i]))+(momentum*preDW[k]);
+      w[k] += dw;
+      preDW[k] = dw;
+    }
+  }
+
+  public float dot(final float[] a, final int aOff, final float[] b,
+      final int bOff, final int n) {
+    final int bound = FS.loopBound(n);
+    FloatVector acc = FloatVector.zero(FS);
+    int i = 0;
+    for(; i < bound; i += FL)
+      acc = FloatVector.fromArray(FS, a, aOff+i)
+          .mul(FloatVector.fromArray(FS, b, bOff+i)).add(acc);
+    float sum = acc.reduceLanes(VectorOperators.ADD);
+    for(; i < n; i++)
+      sum += a[aOff+i]*b[bOff+i];
+    return sum;
+  }
+
+  public void axpy(final float alpha, final float[] x, final int xOff,
+      final float[] y, final int yOff, final int n) {
+    final int bound = FS.loopBound(n);
+    int i = 0;
+    for(; i < bound; i += FL)
+      FloatVector.fromArray(FS, x, xOff+i).mul(alpha)
+          .add(FloatVector.fromArray(FS, y, yOff+i))
+          .intoArray(y, yOff+i);
+    for(; i < n; i++)
+      y[yOff+i] += x[xOff+i]*alpha;
+  }
+
+  public void update(final float learningRate, final float scale,
+      final float[] x, final int xOff, final float momentum,
+      final float[] preDW, final float[] w, final int wOff, final int n) {
+    final int bound = FS.loopBound(n);
+    int i = 0;
+    for(; i < bound; i += FL) {
+      final int k = wOff+i;
+      final FloatVector dw = FloatVector.fromArray(FS, x, xOff+i).mul(scale)
+          .mul(learningRate)
+          .add(FloatVector.fromArray(FS, preDW, k).mul(momentum));
+      FloatVector.fromArray(FS, w, k).add(dw).intoArray(w, k);
+      dw.intoArray(preDW, k);
+    }
+    for(; i < n; i++) {
+      final int k = wOff+i;
+      final float dw = (learningRate*(scale*x[xOff+i]))+(momentum*preDW[k]);
+      w[k] += dw;
+      preDW[k] = dw;
+    }
+  }
+}
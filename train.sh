@@ -34,7 +34,8 @@
 usage() {
   echo $0
   cat << EOF
-    --file=<dataset.csv>        location of dataset
+    --file=<dataset.csv|dir>    location of dataset (csv, binary dataset or a
+                                directory of them, read in file name order)
     --output_nodes=<#>          number of network output nodes
     --holdback=<0:1>            ratio of data to holdback for test set
     --k=<0:n>                   number of k-folds k<=1 disable. max=dataset_len
@@ -42,9 +43,39 @@ usage() {
     --max_weight=<r>            max weight for random weight initialisation
     --learning_rate=<r>         learning rate
     --momentum=<r>              momentum term
+    --optimizer=<o>             momentum (default), nesterov, rmsprop or adam
+    --lr_schedule=<s>           constant (default), step:<n>:<f>, exp:<g> or
+                                cosine[:<min>]
     --epochs=<n>                number of training epochs
     --model_output=<dir>        save learned weights + reports to dir 
     --hidden_nodes=<n1,n2..,N>  number of _hidden_ nodes in each layer n
+    --batch_size=<n>            instances per weight update (default 1 = sgd)
+    --threads=<n>               threads sharing each batch (default 1)
+    --hogwild=<true|false>      asynchronous lock-free training with --threads
+    --precision=<double|float>  float: single precision sgd only
+    --activation=<f[,f..]>      hidden layer activation(s): sigmoid, tanh,
+                                relu, leaky_relu (default sigmoid)
+    --output_activation=<f>     output layer activation (default sigmoid)
+    --load_threads=<n>          threads parsing the dataset (default #cores)
+    --seed=<n>                  seed the prng (reproducible shuffle/weights)
+    --reshuffle=<true|false>    reshuffle the training rows every epoch
+    --patience=<n>              stop when the testing rmse has not improved
+                                for n epochs (default 0 = never)
+    --min_delta=<r>             smallest improvement counted (default 0)
+    --plateau=<r>               stop when the training rmse falls by less
+                                than r over patience epochs (default 0)
+    --checkpoint_every=<n>      checkpoint to <model_output>/checkpoint.bin
+                                every n epochs (default 0 = never)
+    --resume=<dir>              resume from <dir>/checkpoint.bin
+    --log_level=<l>             debug (every epoch), info, warn, error or off
+                                (default info)
+    --metrics=<name>            jmx name of the run's metrics (default train)
+    --stream=<true|false>       stream the dataset from disk on each epoch
+                                instead of loading it (no k-folding)
+    --chunk_size=<n>            rows per streamed chunk (default 16384)
+    --read_ahead=<n>            chunks read ahead of training (default 4)
+    --shuffle_buffer=<n>        rows in the streaming shuffle buffer
+                                (default 65536, 0 = file order)
 EOF
 }
 
@@ -53,7 +84,5 @@ if [[ $# -lt 10 ]]; then
   exit 0
 fi
 
-args=$(echo $@ |sed 's/--[a-z_]\+=//g; s/,/ /g')
-
-java -cp target/nn-light.jar net.parasec.nn.training.Train $args
+java $JAVA_OPTS --add-modules jdk.incubator.vector -cp target/nn-light.jar net.parasec.nn.training.Train "$@"
 